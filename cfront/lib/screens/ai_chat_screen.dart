@@ -19,59 +19,86 @@ class _AIChatScreenState extends State<AIChatScreen> {
   // Если ты запускаешь на Windows → localhost
   // Эмулятор Android → 10.0.2.2
   // Физический телефон → IP твоего ПК в Wi-Fi (например 192.168.0.105)
-  final String backendUrl = 'http://172.20.10.2:8080/api/ai/chat';
+  final String backendUrl = 'http://172.20.10.2:8080/api/ai/chat/stream';
+
+  // 🔹 Клиент текущего ответа: закрываем его, чтобы сервер перестал генерировать
+  http.Client? _streamClient;
+
+  // 🔹 Id разговора выдаёт сервер; с ним он помнит предыдущие вопросы
+  String? _conversationId;
 
   // 🔹 Отправка сообщения пользователем
   Future<void> _sendMessage() async {
     final text = _controller.text.trim();
     if (text.isEmpty) return;
 
+    late final int replyIndex;
     setState(() {
       _messages.add(_ChatMessage(text: text, isUser: true));
+      _messages.add(_ChatMessage(text: '', isUser: false));
+      replyIndex = _messages.length - 1;
       _controller.clear();
       _isLoading = true;
     });
 
+    void showReply(String reply) {
+      if (!mounted) return;
+      setState(() => _messages[replyIndex] = _ChatMessage(text: reply, isUser: false));
+    }
+
     try {
-      final reply = await _getAiReplyFromBackend(text);
-      setState(() {
-        _messages.add(_ChatMessage(text: reply, isUser: false));
-      });
+      await _streamAiReply(text, showReply);
     } catch (e) {
-      setState(() {
-        _messages.add(_ChatMessage(
-          text: 'Ошибка: не удалось получить ответ от сервера.',
-          isUser: false,
-        ));
-      });
+      showReply('Ошибка соединения с сервером');
     } finally {
-      setState(() => _isLoading = false);
+      if (mounted) setState(() => _isLoading = false);
     }
   }
 
-  // 🔹 Запрос к твоему Java Spring серверу
-  Future<String> _getAiReplyFromBackend(String message) async {
+  // 🔹 Ответ приходит по частям (SSE): delta — новый кусок текста, done / error — конец ответа
+  Future<void> _streamAiReply(String message, void Function(String reply) onReply) async {
+    final client = http.Client();
+    _streamClient = client;
     try {
-      final uri = Uri.parse(backendUrl);
-      final res = await http.post(
-        uri,
-        headers: {'Content-Type': 'application/json'},
-        body: jsonEncode({'message': message}), // должен совпадать с ChatRequest.message
-      );
-
-      if (res.statusCode == 200) {
-        final jsonBody = jsonDecode(res.body);
-        return (jsonBody['reply'] as String?) ?? 'Пустой ответ от ИИ';
-      } else {
-        return 'Ошибка ${res.statusCode}: ${res.reasonPhrase}';
+      final request = http.Request('POST', Uri.parse(backendUrl))
+        ..headers['Content-Type'] = 'application/json'
+        ..headers['Accept'] = 'text/event-stream'
+        // поля должны совпадать с ChatRequest
+        ..body = jsonEncode({'message': message, 'conversationId': _conversationId});
+      final res = await client.send(request);
+
+      if (res.statusCode != 200) {
+        onReply('Ошибка ${res.statusCode}: ${res.reasonPhrase}');
+        return;
       }
-    } catch (e) {
-      return 'Ошибка соединения с сервером';
+
+      final buffer = StringBuffer();
+      var event = 'message';
+      await for (final line in res.stream.transform(utf8.decoder).transform(const LineSplitter())) {
+        if (line.startsWith('event:')) {
+          event = line.substring(6).trim();
+        } else if (line.startsWith('data:')) {
+          final data = jsonDecode(line.substring(5));
+          if (event == 'delta') {
+            buffer.write(data['content'] ?? '');
+            onReply(buffer.toString());
+          } else {
+            _conversationId = (data['conversationId'] as String?) ?? _conversationId;
+            onReply((data['reply'] as String?) ?? buffer.toString());
+          }
+        } else if (line.isEmpty) {
+          event = 'message';
+        }
+      }
+    } finally {
+      client.close();
+      if (identical(_streamClient, client)) _streamClient = null;
     }
   }
 
   @override
   void dispose() {
+    _streamClient?.close();
     _controller.dispose();
     super.dispose();
   }
@@ -61,6 +61,9 @@ class _AuthScreenState extends State<AuthScreen> {
           if (result['role'] != null) {
             await prefs.setString('userRole', result['role']);
           }
+          if (result['token'] != null) {
+            await prefs.setString('authToken', result['token']);
+          }
 
           if (!mounted) return;
           Navigator.pushReplacement(
@@ -65,6 +65,7 @@ class _MapScreenState extends State<MapScreen> {
 
   String? _userEmail;
   String? _userRole;
+  String? _authToken;
   final String backendBase = 'http://172.20.10.2:8080';
 
   @override
@@ -203,11 +204,19 @@ class _MapScreenState extends State<MapScreen> {
     );
   }
 
+  Map<String, String> _authHeaders([Map<String, String> headers = const {}]) {
+    return {
+      ...headers,
+      if (_authToken != null) 'Authorization': 'Bearer $_authToken',
+    };
+  }
+
   Future<void> _loadUserContext() async {
     final prefs = await SharedPreferences.getInstance();
     setState(() {
       _userEmail = prefs.getString('userEmail');
       _userRole = prefs.getString('userRole');
+      _authToken = prefs.getString('authToken');
     });
   }
 
@@ -246,18 +255,16 @@ class _MapScreenState extends State<MapScreen> {
   }
 
   Future<void> _createCoffeeShop(CoffeeShopInfo shop) async {
-    if (_userEmail == null) {
+    if (_authToken == null) {
       _showNotice('Выполните вход в админ-аккаунт', isError: true);
       return;
     }
 
     try {
-      final uri = Uri.parse(
-        '$backendBase/api/coffee-shops?adminEmail=$_userEmail',
-      );
+      final uri = Uri.parse('$backendBase/api/coffee-shops');
       final res = await http.post(
         uri,
-        headers: {'Content-Type': 'application/json'},
+        headers: _authHeaders({'Content-Type': 'application/json'}),
         body: jsonEncode({
           'name': shop.name,
           'address': shop.address,
@@ -289,16 +296,14 @@ class _MapScreenState extends State<MapScreen> {
   }
 
   Future<bool> _deleteCoffeeShop(CoffeeShopInfo shop) async {
-    if (_userEmail == null) {
+    if (_authToken == null) {
       _showNotice('Выполните вход в админ-аккаунт', isError: true);
       return false;
     }
 
     try {
-      final uri = Uri.parse(
-        '$backendBase/api/coffee-shops/${shop.id}?adminEmail=$_userEmail',
-      );
-      final res = await http.delete(uri);
+      final uri = Uri.parse('$backendBase/api/coffee-shops/${shop.id}');
+      final res = await http.delete(uri, headers: _authHeaders());
       final body = jsonDecode(res.body);
       if (res.statusCode == 200 && body['success'] == true) {
         setState(() => coffeeShops.removeWhere((s) => s.id == shop.id));
@@ -321,18 +326,16 @@ class _MapScreenState extends State<MapScreen> {
   }
 
   Future<void> _rateCoffeeShop(CoffeeShopInfo shop, double rating) async {
-    if (_userEmail == null) {
+    if (_authToken == null) {
       _showNotice('Сначала войдите в аккаунт', isError: true);
       return;
     }
 
     try {
-      final uri = Uri.parse(
-        '$backendBase/api/coffee-shops/${shop.id}/rate?userEmail=$_userEmail',
-      );
+      final uri = Uri.parse('$backendBase/api/coffee-shops/${shop.id}/rate');
       final res = await http.post(
         uri,
-        headers: {'Content-Type': 'application/json'},
+        headers: _authHeaders({'Content-Type': 'application/json'}),
         body: jsonEncode({'rating': rating}),
       );
 
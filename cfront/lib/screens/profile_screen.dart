@@ -28,6 +28,7 @@ class _ProfileScreenState extends State<ProfileScreen> {
   String? email;
   String? nickname;
   Uint8List? avatarBytes;
+  String? avatarUrl;
   String? coffeeRecommendation;
   List<AchievementProgress> _achievements = [];
 
@@ -36,6 +37,7 @@ class _ProfileScreenState extends State<ProfileScreen> {
   String _settingsMessage = '';
 
   final String apiBase = "http://172.20.10.2:8080/api/auth";
+  final String serverBase = "http://172.20.10.2:8080";
 
   void _showNotice(String message, {bool isError = false}) {
     if (!mounted) return;
@@ -97,8 +99,8 @@ class _ProfileScreenState extends State<ProfileScreen> {
           setState(() {
             nickname = data['nickname'] ?? email;
             _nicknameController.text = nickname ?? '';
-            if (data['avatar'] != null) {
-              avatarBytes = base64Decode(data['avatar']);
+            if (data['avatarUrl'] != null) {
+              avatarUrl = '$serverBase${data['avatarUrl']}';
             }
           });
         } else {
@@ -221,19 +223,23 @@ class _ProfileScreenState extends State<ProfileScreen> {
     final result = await FilePicker.platform.pickFiles(type: FileType.image);
     if (result != null && result.files.single.bytes != null) {
       final bytes = result.files.single.bytes!;
-      final encoded = base64Encode(bytes);
 
       try {
-        final response = await http.put(
-          Uri.parse('$apiBase/user/$email/avatar'),
-          headers: {'Content-Type': 'application/json'},
-          body: jsonEncode({'avatar': encoded}),
-        );
+        final request = http.MultipartRequest('POST', Uri.parse('$apiBase/user/$email/avatar'))
+          ..files.add(http.MultipartFile.fromBytes(
+            'file',
+            bytes,
+            filename: result.files.single.name,
+          ));
+        final response = await http.Response.fromStream(await request.send());
 
         final data = jsonDecode(response.body);
         if (response.statusCode == 200 && data['success'] == true) {
           setState(() {
             avatarBytes = bytes;
+            if (data['avatarUrl'] != null) {
+              avatarUrl = '$serverBase${data['avatarUrl']}';
+            }
             _settingsMessage = 'Аватар обновлён!';
           });
           _showNotice('Аватар обновлён');
@@ -257,6 +263,7 @@ class _ProfileScreenState extends State<ProfileScreen> {
     final prefs = await SharedPreferences.getInstance();
     await prefs.remove('userEmail');
     await prefs.remove('userRole');
+    await prefs.remove('authToken');
 
     if (!mounted) return;
     Navigator.pushAndRemoveUntil(
@@ -269,7 +276,11 @@ class _ProfileScreenState extends State<ProfileScreen> {
   @override
   Widget build(BuildContext context) {
     ImageProvider? avatarProvider;
-    if (avatarBytes != null) avatarProvider = MemoryImage(avatarBytes!);
+    if (avatarBytes != null) {
+      avatarProvider = MemoryImage(avatarBytes!);
+    } else if (avatarUrl != null) {
+      avatarProvider = NetworkImage(avatarUrl!);
+    }
 
     return Scaffold(
       extendBodyBehindAppBar: true,
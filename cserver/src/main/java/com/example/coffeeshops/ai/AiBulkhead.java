@@ -0,0 +1,97 @@
+package com.example.coffeeshops.ai;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking model calls on a small pool of their own, so that slow answers hold these
+ * threads and not the servlet threads that serve the catalog and auth. At most max-concurrency
+ * calls run and queue-capacity wait; anything beyond that is turned away at once. Streamed
+ * answers hold no thread, but each one is an upstream request too: at most max-concurrency of
+ * them run, and one more is turned away.
+ */
+@Component
+public class AiBulkhead {
+
+    private final int maxConcurrency;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore streams;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AiBulkhead(
+            @Value("${app.ai.bulkhead.max-concurrency:8}") int maxConcurrency,
+            @Value("${app.ai.bulkhead.queue-capacity:32}") int queueCapacity
+    ) {
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "ai-chat-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.streams = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Schedules the call. Returns empty when all slots and the queue are taken.
+     */
+    public <T> Optional<CompletableFuture<T>> submit(Supplier<T> call) {
+        try {
+            return Optional.of(CompletableFuture.supplyAsync(call, executor));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Takes a slot for an upstream stream, to be given back with {@link #releaseStream()} once
+     * the stream has ended. False when all slots are taken.
+     */
+    public boolean tryAcquireStream() {
+        if (streams.tryAcquire()) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public void releaseStream() {
+        streams.release();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("streams", maxConcurrency - streams.availablePermits());
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
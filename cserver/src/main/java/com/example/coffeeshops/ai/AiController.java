@@ -3,7 +3,17 @@ package com.example.coffeeshops.ai;
 import com.example.coffeeshops.ai.AiService;
 import com.example.coffeeshops.ai.ChatRequest;
 import com.example.coffeeshops.ai.ChatResponse;
+import com.example.coffeeshops.user.AuthenticatedUser;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.springframework.http.HttpStatus.FORBIDDEN;
 
 
 @RestController
@@ -16,8 +26,24 @@ public class AiController {
         this.aiService = aiService;
     }
 
+    // Completes asynchronously: the servlet thread is released while the model answers.
     @PostMapping("/chat")
-    public ChatResponse chat(@RequestBody ChatRequest request) {
+    public CompletableFuture<ChatResponse> chat(@RequestBody ChatRequest request) {
         return aiService.getChatResponse(request);
     }
+
+    // delta events with the text as it is generated, then done (whole reply) or error.
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody ChatRequest request) {
+        return aiService.openChatStream(request);
+    }
+
+    // Answer cache hit ratio and saved upstream time, plus the state of each model's breaker.
+    @GetMapping("/stats")
+    public Map<String, Object> stats(@AuthenticationPrincipal AuthenticatedUser principal) {
+        if (principal == null || !principal.isAdmin()) {
+            throw new ResponseStatusException(FORBIDDEN, "Доступ запрещен");
+        }
+        return aiService.getStats();
+    }
 }
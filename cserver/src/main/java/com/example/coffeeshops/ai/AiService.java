@@ -1,127 +1,287 @@
 package com.example.coffeeshops.ai;
 
-import com.example.coffeeshops.coffee.CoffeeShop;
-import com.example.coffeeshops.coffee.CoffeeShopRepository;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import com.fasterxml.jackson.databind.JsonNode;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 
 
 @Service
 public class AiService {
-    private final CoffeeShopRepository coffeeShopRepository;
-
-    public AiService(CoffeeShopRepository coffeeShopRepository) {
-        this.coffeeShopRepository = coffeeShopRepository;
+    private static final String OVERLOADED = "AI перегружен, попробуйте позже";
+
+    private final CatalogPromptIndex promptIndex;
+    private final LlmClient llmClient;
+    private final ChatResponseCache responseCache;
+    private final ModelCircuitBreakers breakers;
+    private final AiBulkhead bulkhead;
+    private final ChatIntentRouter intentRouter;
+    private final ConversationStore conversations;
+    private final ChatPromptBuilder promptBuilder;
+    private final SingleFlight<ChatResponseCache.Key, String> inFlight = new SingleFlight<>();
+    private final SharedStreams<ChatResponseCache.Key> sharedStreams = new SharedStreams<>();
+
+    public AiService(
+            CatalogPromptIndex promptIndex,
+            LlmClient llmClient,
+            ChatResponseCache responseCache,
+            ModelCircuitBreakers breakers,
+            AiBulkhead bulkhead,
+            ChatIntentRouter intentRouter,
+            ConversationStore conversations,
+            ChatPromptBuilder promptBuilder
+    ) {
+        this.promptIndex = promptIndex;
+        this.llmClient = llmClient;
+        this.responseCache = responseCache;
+        this.breakers = breakers;
+        this.bulkhead = bulkhead;
+        this.intentRouter = intentRouter;
+        this.conversations = conversations;
+        this.promptBuilder = promptBuilder;
     }
 
-    @Value("${spring.ai.openai.api-key}")
-    private String apiKey;
-
     @Value("${spring.ai.openai.chat.options.model:gpt-4o-mini}")
     private String primaryModel;
 
     @Value("${app.ai.models:}")
     private String modelsProperty;
 
-    @Value("${app.ai.api-url:https://api.openai.com/v1/chat/completions}")
-    private String apiUrl;
-
-    @Value("${app.ai.openrouter.site-url:http://localhost}")
-    private String openRouterSiteUrl;
-
-    @Value("${app.ai.openrouter.app-title:CoffeeApp}")
-    private String openRouterAppTitle;
-
     @Value("${app.ai.max-output-tokens:120}")
     private int maxOutputTokens;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
-    public ChatResponse getChatResponse(ChatRequest request) {
-        try {
-            if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
-                return new ChatResponse("Ошибка: пустой запрос.");
-            }
-
-            if (apiKey == null || apiKey.isBlank()) {
-                return new ChatResponse("Ошибка: API ключ не настроен");
+    @Value("${app.ai.stream-timeout:60s}")
+    private Duration streamTimeout;
+
+    /**
+     * Errors and cached answers complete on the calling thread; model calls run in the bulkhead,
+     * and identical first questions asked while one is running share its answer. Fails with 503
+     * when the bulkhead is full.
+     */
+    public CompletableFuture<ChatResponse> getChatResponse(ChatRequest request) {
+        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
+            return CompletableFuture.completedFuture(new ChatResponse("Ошибка: пустой запрос."));
+        }
+        String message = request.getMessage();
+        String id = conversations.open(request.getConversationId());
+        List<ConversationStore.Turn> history = conversations.history(id);
+
+        // Simple catalog lookups that open a conversation are answered locally; they do not even
+        // need an API key. A follow-up such as "а адрес?" only makes sense with the earlier turns.
+        if (history.isEmpty()) {
+            Optional<String> local = intentRouter.answer(message);
+            if (local.isPresent()) {
+                return CompletableFuture.completedFuture(remember(id, message, local.get()));
             }
+        }
 
-            List<String> models = buildModelList();
-
-            String lastError = "Не удалось получить ответ от AI";
+        if (!llmClient.isConfigured()) {
+            return CompletableFuture.completedFuture(new ChatResponse("Ошибка: API ключ не настроен", id));
+        }
 
-            for (String model : models) {
-                Map<String, Object> payload = new HashMap<>();
-                payload.put("model", model);
-                payload.put("temperature", 0.2);
-                payload.put("max_tokens", maxOutputTokens);
-                payload.put("messages", List.of(
-                        Map.of("role", "system", "content", buildSystemPrompt()),
-                        Map.of("role", "user", "content", request.getMessage())
-                ));
+        List<String> models = buildModelList();
+        CompletableFuture<String> reply;
+        if (!history.isEmpty()) {
+            // A follow-up depends on the earlier turns, so it is neither cached nor shared.
+            reply = inBulkhead(() -> askModel(models, promptBuilder.build(message, history), null));
+        } else {
+            // Read the version before building the prompt: a concurrent change then only leads to a miss.
+            ChatResponseCache.Key key = ChatResponseCache.key(
+                    message, String.join(",", models), promptIndex.version());
+            Optional<String> cached = responseCache.get(key);
+            if (cached.isPresent()) {
+                return CompletableFuture.completedFuture(remember(id, message, cached.get()));
+            }
+            // The key is the normalized question, the models and the catalog version: same prompt, same answer.
+            reply = inFlight.run(key, () -> inBulkhead(() -> askModel(models, promptBuilder.build(message, history), key)));
+        }
 
-                String json = objectMapper.writeValueAsString(payload);
+        return reply.handle((text, error) -> {
+            if (error == null) {
+                return remember(id, message, text);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof LlmException) {
+                return new ChatResponse("Ошибка: " + cause.getMessage(), id);
+            }
+            throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+        });
+    }
 
-                HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                        .uri(URI.create(apiUrl))
-                        .header("Content-Type", "application/json")
-                        .header("Authorization", "Bearer " + apiKey);
+    private <T> CompletableFuture<T> inBulkhead(Supplier<T> task) {
+        return bulkhead.submit(task).orElseGet(() -> CompletableFuture.failedFuture(
+                new ResponseStatusException(SERVICE_UNAVAILABLE, OVERLOADED)));
+    }
 
-                if (apiUrl.contains("openrouter.ai")) {
-                    requestBuilder
-                            .header("HTTP-Referer", openRouterSiteUrl)
-                            .header("X-Title", openRouterAppTitle);
-                }
+    private String askModel(List<String> models, List<Map<String, String>> messages, ChatResponseCache.Key key) {
+        long started = System.nanoTime();
+        String reply = llmClient.complete(models, messages, maxOutputTokens);
+        if (key != null) {
+            responseCache.put(key, reply, System.nanoTime() - started);
+        }
+        return reply;
+    }
 
-                HttpRequest httpRequest = requestBuilder
-                        .POST(HttpRequest.BodyPublishers.ofString(json))
-                        .build();
+    private ChatResponse remember(String id, String message, String reply) {
+        conversations.append(id, message, reply);
+        return new ChatResponse(reply, id);
+    }
 
-                HttpResponse<String> response = HttpClient.newHttpClient()
-                        .send(httpRequest, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Streams the answer as server-sent events: "delta" with every new piece of text, then "done"
+     * with the whole reply, or "error". A first question already streaming for another client joins
+     * that stream. A client that disconnects cancels the upstream request once nobody else reads it.
+     */
+    public SseEmitter openChatStream(ChatRequest request) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
+            return finish(emitter, "error", "Ошибка: пустой запрос.", null);
+        }
+        String message = request.getMessage();
+        String id = conversations.open(request.getConversationId());
+        List<ConversationStore.Turn> history = conversations.history(id);
+
+        if (history.isEmpty()) {
+            Optional<String> local = intentRouter.answer(message);
+            if (local.isPresent()) {
+                return replay(emitter, remember(id, message, local.get()));
+            }
+        }
 
-                JsonNode root = objectMapper.readTree(response.body());
+        if (!llmClient.isConfigured()) {
+            return finish(emitter, "error", "Ошибка: API ключ не настроен", id);
+        }
 
-                if (response.statusCode() >= 400) {
-                    String errorMessage = root.path("error").path("message").asText();
-                    if (errorMessage == null || errorMessage.isBlank()) {
-                        errorMessage = "Ошибка AI API (HTTP " + response.statusCode() + ")";
-                    }
-                    lastError = errorMessage;
-                    continue;
-                }
+        List<String> models = buildModelList();
+        ChatResponseCache.Key key = null;
+        if (history.isEmpty()) {
+            key = ChatResponseCache.key(message, String.join(",", models), promptIndex.version());
+            Optional<String> cached = responseCache.get(key);
+            if (cached.isPresent()) {
+                return replay(emitter, remember(id, message, cached.get()));
+            }
+        }
 
-                JsonNode choices = root.path("choices");
-                if (!choices.isArray() || choices.isEmpty()) {
-                    String errorMessage = root.path("error").path("message").asText();
-                    lastError = (errorMessage == null || errorMessage.isBlank())
-                            ? "Некорректный ответ AI API"
-                            : errorMessage;
-                    continue;
+        CompletableFuture<String> result;
+        Runnable cancel;
+        if (key == null) {
+            // A follow-up depends on the earlier turns, so it is neither cached nor shared.
+            if (!bulkhead.tryAcquireStream()) {
+                return finish(emitter, "error", "Ошибка: " + OVERLOADED, id);
+            }
+            LlmClient.StreamingReply reply = startStream(models, promptBuilder.build(message, history),
+                    delta -> sendDelta(emitter, delta));
+            result = reply.result();
+            cancel = reply::cancel;
+        } else {
+            // Identical first questions streaming at the same time share one upstream stream.
+            ChatResponseCache.Key cacheKey = key;
+            SharedStreams<ChatResponseCache.Key>.Subscription subscription = sharedStreams.join(key, listener -> {
+                if (!bulkhead.tryAcquireStream()) {
+                    throw new LlmException(OVERLOADED);
                 }
+                long started = System.nanoTime();
+                LlmClient.StreamingReply reply = startStream(models, promptBuilder.build(message, history), listener);
+                reply.result().thenAccept(text -> responseCache.put(cacheKey, text, System.nanoTime() - started));
+                return reply;
+            }, delta -> sendDelta(emitter, delta));
+            result = subscription.result();
+            cancel = subscription::cancel;
+        }
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+        result.whenComplete((text, error) -> {
+            if (error instanceof CancellationException) {
+                return;
+            }
+            if (error == null) {
+                // Stored first: a client that sends its follow-up as soon as it sees done must find this turn.
+                conversations.append(id, message, text);
+                finish(emitter, "done", text, id);
+            } else {
+                finish(emitter, "error", "Ошибка: " + error.getMessage(), id);
+            }
+        });
+        return emitter;
+    }
 
-                String content = extractContent(choices.get(0));
-                if (content == null || content.isBlank()) {
-                    lastError = "AI вернул пустой ответ";
-                    continue;
-                }
+    // Holds a bulkhead stream slot, taken by the caller, until the stream ends.
+    private LlmClient.StreamingReply startStream(List<String> models, List<Map<String, String>> messages,
+                                                 LlmClient.DeltaListener listener) {
+        LlmClient.StreamingReply reply;
+        try {
+            reply = llmClient.stream(models, messages, maxOutputTokens, listener);
+        } catch (RuntimeException e) {
+            bulkhead.releaseStream();
+            throw e;
+        }
+        reply.result().whenComplete((text, error) -> bulkhead.releaseStream());
+        return reply;
+    }
 
-                return new ChatResponse(content.trim());
-            }
+    // A ready answer goes out as one delta followed by done.
+    private static SseEmitter replay(SseEmitter emitter, ChatResponse response) {
+        try {
+            sendDelta(emitter, response.getReply());
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        return finish(emitter, "done", response.getReply(), response.getConversationId());
+    }
 
-            return new ChatResponse("Ошибка: " + lastError);
+    private static void sendDelta(SseEmitter emitter, String delta) throws IOException {
+        emitter.send(SseEmitter.event().name("delta").data(Map.of("content", delta), MediaType.APPLICATION_JSON));
+    }
 
-        } catch (Exception e) {
-            return new ChatResponse("Ошибка: " + e.getMessage());
+    private static SseEmitter finish(SseEmitter emitter, String event, String reply, String conversationId) {
+        try {
+            emitter.send(SseEmitter.event().name(event)
+                    .data(new ChatResponse(reply, conversationId), MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // The client is already gone.
+            emitter.completeWithError(e);
         }
+        return emitter;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("cache", responseCache.stats());
+        stats.put("models", breakers.snapshot());
+        stats.put("bulkhead", bulkhead.stats());
+        stats.put("coalescing", coalescingStats());
+        stats.put("router", intentRouter.stats());
+        stats.put("conversations", conversations.stats());
+        return stats;
+    }
+
+    // Answers and streams together, then each on its own.
+    private Map<String, Object> coalescingStats() {
+        Map<String, Object> answers = inFlight.stats();
+        Map<String, Object> streams = sharedStreams.stats();
+        long leaders = (Long) answers.get("upstreamCalls") + (Long) streams.get("upstreamCalls");
+        long followers = (Long) answers.get("coalesced") + (Long) streams.get("coalesced");
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("upstreamCalls", leaders);
+        stats.put("coalesced", followers);
+        stats.put("coalescingRatio", leaders + followers > 0 ? (double) followers / (leaders + followers) : 0.0);
+        stats.put("answers", answers);
+        stats.put("streams", streams);
+        return stats;
     }
 
     private List<String> buildModelList() {
@@ -136,56 +296,4 @@ public class AiService {
 
         return List.of(primaryModel);
     }
-
-    private String extractContent(JsonNode choice) {
-        JsonNode message = choice.path("message");
-        JsonNode contentNode = message.path("content");
-
-        if (contentNode.isTextual()) {
-            return contentNode.asText();
-        }
-
-        if (contentNode.isArray()) {
-            for (JsonNode part : contentNode) {
-                String text = part.path("text").asText();
-                if (text != null && !text.isBlank()) {
-                    return text;
-                }
-            }
-        }
-
-        String directText = choice.path("text").asText();
-        if (directText != null && !directText.isBlank()) {
-            return directText;
-        }
-
-        return "";
-    }
-
-    private String buildSystemPrompt() {
-        List<CoffeeShop> shops = coffeeShopRepository.findAll();
-        String shopsText;
-
-        if (shops.isEmpty()) {
-            shopsText = "Список кофеен в базе пуст.";
-        } else {
-            shopsText = shops.stream()
-                    .limit(30)
-                    .map(s -> String.format("- %s | %s | рейтинг %.1f", s.getName(), s.getAddress(), s.getRating()))
-                    .reduce((a, b) -> a + "\n" + b)
-                    .orElse("Список кофеен в базе пуст.");
-        }
-
-        return """
-                Ты бариста-ассистент приложения Coffee Radar.
-                Правила:
-                1) Отвечай на любые темы вежливо и по делу.
-                2) Всегда отвечай кратко: 1-3 предложения, без длинных списков.
-                3) В конце каждого ответа добавляй короткое дружелюбное предложение поговорить про кофе.
-                4) Если спрашивают про кофейни, используй только данные из списка ниже.
-
-                Кофейни из базы:
-                %s
-                """.formatted(shopsText);
-    }
 }
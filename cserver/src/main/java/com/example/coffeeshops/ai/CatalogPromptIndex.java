@@ -0,0 +1,240 @@
+package com.example.coffeeshops.ai;
+
+import com.example.coffeeshops.coffee.CatalogText;
+import com.example.coffeeshops.coffee.CoffeeShop;
+import com.example.coffeeshops.coffee.CoffeeShopChangeListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Catalog lines for the AI system prompt, prepared once per shop change. Shops are picked by
+ * BM25 relevance of name and address to the question, nudged by rating; the rest of the slots
+ * go to the best-rated shops so that general questions still get useful context. Ratings are
+ * used as printed, to one decimal, so a vote that does not move a shop to another tenth leaves
+ * every prompt, and the {@link #version()}, unchanged.
+ */
+@Component
+public class CatalogPromptIndex implements CoffeeShopChangeListener {
+
+    static final String EMPTY = "Список кофеен в базе пуст.";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Adds up to half of a typical single-term match for a 5-star shop.
+    private static final double RATING_WEIGHT = 0.5;
+    // Crude stemming: Russian endings vary ("Достык"/"Достыка", "кофейня"/"кофейни"), stems rarely do.
+    private static final int STEM_LENGTH = 6;
+
+    private static final Comparator<Doc> BY_RATING = Comparator
+            .comparingDouble((Doc d) -> d.rating).reversed()
+            .thenComparingLong(d -> d.id);
+
+    private final Map<Long, Doc> docs = new HashMap<>();
+    // term -> shop id -> term frequency
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private final NavigableSet<Doc> byRating = new TreeSet<>(BY_RATING);
+    private long totalLength;
+    private volatile long version;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            postings.clear();
+            byRating.clear();
+            totalLength = 0;
+            shops.forEach(this::add);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        onUpdated(shop);
+    }
+
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        Doc current = doc(shop);
+        lock.writeLock().lock();
+        try {
+            Doc previous = docs.get(current.id);
+            if (previous != null && previous.line.equals(current.line)) {
+                return;
+            }
+            remove(current.id);
+            add(current);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            if (remove(shop.getId())) {
+                version++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes whenever some question could get different context: a shop added or removed,
+     * a name or address edited, or a rating moving to another tenth.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Up to {@code limit} prompt lines, most relevant to the question first, then best-rated.
+     */
+    public String context(String question, int limit) {
+        Set<String> terms = new LinkedHashSet<>(terms(question));
+        lock.readLock().lock();
+        try {
+            if (docs.isEmpty()) {
+                return EMPTY;
+            }
+            List<Doc> picked = relevant(terms, limit);
+            Iterator<Doc> best = byRating.iterator();
+            while (picked.size() < Math.min(limit, docs.size()) && best.hasNext()) {
+                Doc doc = best.next();
+                if (!picked.contains(doc)) {
+                    picked.add(doc);
+                }
+            }
+            StringBuilder sb = new StringBuilder(picked.size() * 64);
+            for (Doc doc : picked) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(doc.line);
+            }
+            return sb.toString();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Doc> relevant(Set<String> terms, int limit) {
+        int n = docs.size();
+        double avgLength = (double) totalLength / n;
+        Map<Long, Double> scores = new HashMap<>();
+        for (String term : terms) {
+            Map<Long, Integer> list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (n - list.size() + 0.5) / (list.size() + 0.5));
+            for (Map.Entry<Long, Integer> e : list.entrySet()) {
+                double tf = e.getValue();
+                double norm = K1 * (1 - B + B * docs.get(e.getKey()).length / avgLength);
+                scores.merge(e.getKey(), idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+            }
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Hit::score));
+        for (Map.Entry<Long, Double> e : scores.entrySet()) {
+            Doc doc = docs.get(e.getKey());
+            best.add(new Hit(doc, e.getValue() + RATING_WEIGHT * doc.rating / 5.0));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Doc> result = new ArrayList<>(limit);
+        best.stream()
+                .sorted(Comparator.comparingDouble(Hit::score).reversed())
+                .forEach(h -> result.add(h.doc()));
+        return result;
+    }
+
+    private static Doc doc(CoffeeShop shop) {
+        List<String> terms = terms(shop.getName() + " " + shop.getAddress());
+        double rating = Math.round(shop.getRating() * 10) / 10.0;
+        return new Doc(shop.getId(), rating, terms,
+                String.format("- %s | %s | рейтинг %.1f", shop.getName(), shop.getAddress(), rating));
+    }
+
+    private void add(CoffeeShop shop) {
+        add(doc(shop));
+    }
+
+    private void add(Doc doc) {
+        docs.put(doc.id, doc);
+        byRating.add(doc);
+        totalLength += doc.length;
+        doc.frequencies.forEach((term, count) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(doc.id, count));
+    }
+
+    private boolean remove(Long id) {
+        Doc doc = docs.remove(id);
+        if (doc == null) {
+            return false;
+        }
+        byRating.remove(doc);
+        totalLength -= doc.length;
+        for (String term : doc.frequencies.keySet()) {
+            Map<Long, Integer> list = postings.get(term);
+            list.remove(id);
+            if (list.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        return true;
+    }
+
+    static List<String> terms(String text) {
+        String normalized = CatalogText.normalize(text);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        for (String word : normalized.split(" ")) {
+            if (word.length() > 1) {
+                terms.add(word.length() > STEM_LENGTH ? word.substring(0, STEM_LENGTH) : word);
+            }
+        }
+        return terms;
+    }
+
+    private static final class Doc {
+        final long id;
+        final double rating;
+        final int length;
+        final String line;
+        final Map<String, Integer> frequencies = new LinkedHashMap<>();
+
+        Doc(long id, double rating, List<String> terms, String line) {
+            this.id = id;
+            this.rating = rating;
+            this.length = terms.size();
+            this.line = line;
+            terms.forEach(term -> frequencies.merge(term, 1, Integer::sum));
+        }
+    }
+
+    private record Hit(Doc doc, double score) {}
+}
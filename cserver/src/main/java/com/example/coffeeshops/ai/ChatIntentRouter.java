@@ -0,0 +1,276 @@
+package com.example.coffeeshops.ai;
+
+import com.example.coffeeshops.coffee.CatalogText;
+import com.example.coffeeshops.coffee.CoffeeShop;
+import com.example.coffeeshops.coffee.CoffeeShopChangeListener;
+import com.example.coffeeshops.coffee.CoffeeShopLeaderboard;
+import com.example.coffeeshops.coffee.CoffeeShopSearchIndex;
+import com.example.coffeeshops.coffee.dto.CoffeeShopSearchResult;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Answers the common catalog questions (best-rated shops, shops on a street, the rating of a
+ * shop) from in-memory data instead of the model. Phrasing is matched on the normalized text;
+ * anything that is not clearly one of these, or has no match in the catalog, goes to the model.
+ */
+@Component
+public class ChatIntentRouter implements CoffeeShopChangeListener {
+
+    enum Intent { STREET, SHOP_RATING, BEST_RATED }
+
+    private static final int LISTED_SHOPS = 5;
+    // Matches within this much of the best search score are listed as alternatives.
+    private static final double SCORE_MARGIN = 0.1;
+    private static final int STEM_LENGTH = 6;
+
+    private static final Pattern STREET = Pattern.compile(
+            "(?:^| )(?:на|по) (?:(?:улице|ул|проспекте|пр|бульваре|мкр|микрорайоне) )?([a-zа-я]{3,})");
+    private static final Pattern SHOP_RATING = Pattern.compile(
+            "(?:рейтинг|оценка|сколько звезд)(?: у| в)?(?: кофейни| кафе)? (.+)");
+    private static final Pattern BEST_RATED = Pattern.compile(
+            "(?:^| )(?:лучш\\S*|топ|самые популярные|самая популярная|самый высокий рейтинг)(?: |$)");
+    private static final Pattern GENERIC_NAME = Pattern.compile("^(?:кофе|кафе)");
+    private static final Pattern ABOUT_SHOPS = Pattern.compile("кофейн|кафе|кофе|где|куда|посовету|подскаж");
+    // Open-ended requests stay with the model even when they mention a street or "лучший".
+    private static final Pattern OPEN_ENDED = Pattern.compile("почему|рецепт|как сварить|как приготовить|чем отлича|сравни");
+    private static final Set<String> ADDRESS_WORDS = Set.of(
+            "ул", "улица", "пр", "проспект", "бульвар", "мкр", "микрорайон", "д", "дом", "г", "город");
+
+    private final CoffeeShopLeaderboard leaderboard;
+    private final CoffeeShopSearchIndex searchIndex;
+
+    private final Map<Long, CoffeeShop> shops = new HashMap<>();
+    // Address word -> shops with that word; sorted for prefix lookups of inflected street names.
+    private final NavigableMap<String, Set<Long>> streets = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Intent, AtomicLong> routed = new EnumMap<>(Intent.class);
+    private final AtomicLong forwarded = new AtomicLong();
+
+    public ChatIntentRouter(CoffeeShopLeaderboard leaderboard, CoffeeShopSearchIndex searchIndex) {
+        this.leaderboard = leaderboard;
+        this.searchIndex = searchIndex;
+        for (Intent intent : Intent.values()) {
+            routed.put(intent, new AtomicLong());
+        }
+    }
+
+    @Override
+    public void onReload(List<CoffeeShop> all) {
+        lock.writeLock().lock();
+        try {
+            shops.clear();
+            streets.clear();
+            all.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        onUpdated(shop);
+    }
+
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+            add(shop);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A ready answer, or empty when the question should go to the model.
+     */
+    public Optional<String> answer(String message) {
+        String text = CatalogText.normalize(message);
+        boolean catalogQuestion = ABOUT_SHOPS.matcher(text).find() || SHOP_RATING.matcher(text).find();
+        Optional<String> answer = catalogQuestion && !OPEN_ENDED.matcher(text).find() ? route(text) : Optional.empty();
+        if (answer.isEmpty()) {
+            forwarded.incrementAndGet();
+        }
+        return answer;
+    }
+
+    private Optional<String> route(String text) {
+        Matcher street = STREET.matcher(text);
+        while (street.find()) {
+            Optional<String> answer = streetAnswer(street.group(1));
+            if (answer.isPresent()) {
+                return counted(Intent.STREET, answer);
+            }
+        }
+
+        Matcher rating = SHOP_RATING.matcher(text);
+        // "рейтинг кофеен" is about the catalog, not about one shop.
+        if (rating.find() && !BEST_RATED.matcher(text).find() && !GENERIC_NAME.matcher(rating.group(1)).find()) {
+            return counted(Intent.SHOP_RATING, ratingAnswer(rating.group(1)));
+        }
+
+        if (BEST_RATED.matcher(text).find()) {
+            return counted(Intent.BEST_RATED, bestRatedAnswer());
+        }
+        return Optional.empty();
+    }
+
+    private Optional<String> counted(Intent intent, Optional<String> answer) {
+        answer.ifPresent(a -> routed.get(intent).incrementAndGet());
+        return answer;
+    }
+
+    private Optional<String> streetAnswer(String word) {
+        String stem = stem(word);
+        List<CoffeeShop> found = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Set<Long> ids = new HashSet<>();
+            for (Set<Long> byWord : streets.subMap(stem, true, stem + Character.MAX_VALUE, false).values()) {
+                ids.addAll(byWord);
+            }
+            for (Long id : ids) {
+                found.add(shops.get(id));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        found.sort(Comparator.comparingDouble(CoffeeShop::getRating).reversed().thenComparing(CoffeeShop::getId));
+
+        StringBuilder sb = new StringBuilder("Кофейни на этой улице, по рейтингу: ");
+        for (int i = 0; i < Math.min(LISTED_SHOPS, found.size()); i++) {
+            CoffeeShop shop = found.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(describe(shop.getName(), shop.getAddress(), shop.getRating()));
+        }
+        if (found.size() > LISTED_SHOPS) {
+            sb.append(" и ещё ").append(found.size() - LISTED_SHOPS);
+        }
+        return Optional.of(sb.append('.').toString());
+    }
+
+    private Optional<String> ratingAnswer(String name) {
+        List<CoffeeShopSearchResult> hits = searchIndex.search(name + " ", LISTED_SHOPS);
+        if (hits.isEmpty()) {
+            return Optional.empty();
+        }
+        double best = hits.get(0).getScore();
+        List<String> described = new ArrayList<>();
+        for (CoffeeShopSearchResult hit : hits) {
+            if (hit.getScore() >= best - SCORE_MARGIN) {
+                described.add(describe(hit.getName(), hit.getAddress(), hit.getRating()));
+            }
+        }
+        if (described.size() == 1) {
+            return Optional.of("Рейтинг " + described.get(0) + " из 5.");
+        }
+        return Optional.of("Нашлось несколько похожих кофеен: " + String.join(", ", described) + ".");
+    }
+
+    private Optional<String> bestRatedAnswer() {
+        List<CoffeeShop> top = leaderboard.top(3);
+        if (top.isEmpty()) {
+            return Optional.empty();
+        }
+        CoffeeShop first = top.get(0);
+        StringBuilder sb = new StringBuilder("Самый высокий рейтинг у ")
+                .append(describe(first.getName(), first.getAddress(), first.getRating()));
+        for (int i = 1; i < top.size(); i++) {
+            CoffeeShop shop = top.get(i);
+            sb.append(i == 1 ? ". Следом идут " : " и ")
+                    .append(describe(shop.getName(), shop.getAddress(), shop.getRating()));
+        }
+        return Optional.of(sb.append('.').toString());
+    }
+
+    private static String describe(String name, String address, double rating) {
+        return String.format(Locale.ROOT, "«%s» (%s) — %.1f", name, address, rating);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> byIntent = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<Intent, AtomicLong> e : routed.entrySet()) {
+            byIntent.put(e.getKey().name().toLowerCase(Locale.ROOT), e.getValue().get());
+            total += e.getValue().get();
+        }
+        long toModel = forwarded.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routed", total);
+        stats.put("routedByIntent", byIntent);
+        stats.put("forwarded", toModel);
+        stats.put("routedShare", total + toModel > 0 ? (double) total / (total + toModel) : 0.0);
+        return stats;
+    }
+
+    private void add(CoffeeShop shop) {
+        shops.put(shop.getId(), shop);
+        for (String word : streetWords(shop.getAddress())) {
+            streets.computeIfAbsent(word, w -> new HashSet<>()).add(shop.getId());
+        }
+    }
+
+    private void remove(Long id) {
+        CoffeeShop shop = shops.remove(id);
+        if (shop == null) {
+            return;
+        }
+        for (String word : streetWords(shop.getAddress())) {
+            Set<Long> ids = streets.get(word);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                streets.remove(word);
+            }
+        }
+    }
+
+    private static Set<String> streetWords(String address) {
+        Set<String> words = new HashSet<>();
+        for (String word : CatalogText.normalize(address).split(" ")) {
+            if (word.length() > 2 && Character.isLetter(word.charAt(0)) && !ADDRESS_WORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    // "Достыке" -> "достык": declined street names share their first letters with the address.
+    private static String stem(String word) {
+        return word.length() > STEM_LENGTH ? word.substring(0, STEM_LENGTH) : word;
+    }
+}
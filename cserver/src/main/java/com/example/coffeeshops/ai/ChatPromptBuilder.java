@@ -0,0 +1,155 @@
+package com.example.coffeeshops.ai;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the messages for one model call within a fixed input budget: the rules, the question,
+ * as many recent turns as fit into half of the rest, a one-line reminder of older questions,
+ * and the shop list in whatever room is left.
+ */
+@Component
+public class ChatPromptBuilder {
+
+    private static final String RULES = """
+            Ты бариста-ассистент приложения Coffee Radar.
+            Правила:
+            1) Отвечай на любые темы вежливо и по делу.
+            2) Всегда отвечай кратко: 1-3 предложения, без длинных списков.
+            3) В конце каждого ответа добавляй короткое дружелюбное предложение поговорить про кофе.
+            4) Если спрашивают про кофейни, используй только данные из списка ниже.""";
+
+    private static final int PROMPT_SHOPS = 15;
+    // Rough average for mixed Russian and English text; the budget is an estimate, not a tokenizer count.
+    static final int CHARS_PER_TOKEN = 3;
+    // Role and separators the API adds around every message.
+    private static final int MESSAGE_OVERHEAD = 4;
+    private static final int SUMMARY_QUESTION_CHARS = 80;
+    private static final String SHOPS_HEADER = "\n\nКофейни из базы:\n";
+    private static final String SUMMARY_PREFIX = "Ранее в разговоре пользователь спрашивал: ";
+
+    private final CatalogPromptIndex catalogPrompt;
+    private final int maxInputTokens;
+
+    public ChatPromptBuilder(
+            CatalogPromptIndex catalogPrompt,
+            @Value("${app.ai.max-input-tokens:1500}") int maxInputTokens
+    ) {
+        this.catalogPrompt = catalogPrompt;
+        this.maxInputTokens = maxInputTokens;
+    }
+
+    public List<Map<String, String>> build(String message, List<ConversationStore.Turn> history) {
+        String question = clip(message, maxInputTokens / 4);
+        // Rules and question always go; with a budget too small even for them nothing else does.
+        int left = Math.max(0, maxInputTokens - tokens(RULES) - tokens(SHOPS_HEADER) - tokens(question) - 2 * MESSAGE_OVERHEAD);
+
+        // Newest turns first, up to half of what is left.
+        int historyBudget = left / 2;
+        Deque<Map<String, String>> recent = new ArrayDeque<>();
+        int used = 0;
+        int kept = history.size();
+        while (kept > 0) {
+            ConversationStore.Turn turn = history.get(kept - 1);
+            int cost = tokens(turn.content()) + MESSAGE_OVERHEAD;
+            if (used + cost > historyBudget) {
+                break;
+            }
+            recent.addFirst(Map.of("role", turn.role(), "content", turn.content()));
+            used += cost;
+            kept--;
+        }
+        String summary = summary(history.subList(0, kept), Math.max(historyBudget - used, left / 10));
+        left = Math.max(0, left - used - tokens(summary));
+
+        // A follow-up ("а там есть десерты?") is matched together with the previous question.
+        String lastQuestion = lastQuestion(history);
+        String shops = fit(catalogPrompt.context(lastQuestion + " " + question, PROMPT_SHOPS), left);
+
+        StringBuilder system = new StringBuilder(RULES);
+        if (!summary.isEmpty()) {
+            system.append('\n').append(summary);
+        }
+        if (!shops.isEmpty()) {
+            system.append(SHOPS_HEADER).append(shops);
+        }
+
+        List<Map<String, String>> messages = new ArrayList<>(recent.size() + 2);
+        messages.add(Map.of("role", "system", "content", system.toString()));
+        messages.addAll(recent);
+        messages.add(Map.of("role", "user", "content", question));
+        return messages;
+    }
+
+    static int tokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    public static int tokens(List<Map<String, String>> messages) {
+        int total = 0;
+        for (Map<String, String> message : messages) {
+            total += tokens(message.get("content")) + MESSAGE_OVERHEAD;
+        }
+        return total;
+    }
+
+    private static String clip(String text, int maxTokens) {
+        int maxChars = maxTokens * CHARS_PER_TOKEN;
+        return text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+
+    // Older questions only, newest kept when they do not all fit: answers can be re-derived, intent cannot.
+    private static String summary(List<ConversationStore.Turn> older, int maxTokens) {
+        Deque<String> questions = new ArrayDeque<>();
+        int length = 0;
+        for (int i = older.size() - 1; i >= 0; i--) {
+            ConversationStore.Turn turn = older.get(i);
+            if (!turn.role().equals("user")) {
+                continue;
+            }
+            String question = turn.content().length() > SUMMARY_QUESTION_CHARS
+                    ? turn.content().substring(0, SUMMARY_QUESTION_CHARS) + "…"
+                    : turn.content();
+            if (tokens(SUMMARY_PREFIX) + (length + question.length() + 2) / CHARS_PER_TOKEN + 1 > maxTokens) {
+                break;
+            }
+            questions.addFirst(question);
+            length += question.length() + 2;
+        }
+        return questions.isEmpty() ? "" : SUMMARY_PREFIX + String.join("; ", questions) + ".";
+    }
+
+    private static String lastQuestion(List<ConversationStore.Turn> history) {
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (history.get(i).role().equals("user")) {
+                return history.get(i).content();
+            }
+        }
+        return "";
+    }
+
+    // Whole lines only, most relevant first; empty when not even the first line fits.
+    private static String fit(String lines, int maxTokens) {
+        int end = 0;
+        int used = 0;
+        while (end < lines.length()) {
+            int next = lines.indexOf('\n', end + 1);
+            if (next < 0) {
+                next = lines.length();
+            }
+            int cost = tokens(lines.substring(end, next));
+            if (used + cost > maxTokens) {
+                break;
+            }
+            used += cost;
+            end = next;
+        }
+        return lines.substring(0, end);
+    }
+}
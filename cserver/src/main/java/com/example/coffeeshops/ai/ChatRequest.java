@@ -2,6 +2,7 @@ package com.example.coffeeshops.ai;
 
 public class ChatRequest {
     private String message;
+    private String conversationId;
 
     public ChatRequest() {}
 
@@ -9,6 +10,11 @@ public class ChatRequest {
         this.message = message;
     }
 
+    public ChatRequest(String message, String conversationId) {
+        this.message = message;
+        this.conversationId = conversationId;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -16,4 +22,12 @@ public class ChatRequest {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
 }
@@ -2,6 +2,7 @@ package com.example.coffeeshops.ai;
 
 public class ChatResponse {
     private String reply;
+    private String conversationId;
 
     public ChatResponse() {}
 
@@ -9,6 +10,11 @@ public class ChatResponse {
         this.reply = reply;
     }
 
+    public ChatResponse(String reply, String conversationId) {
+        this.reply = reply;
+        this.conversationId = conversationId;
+    }
+
     public String getReply() {
         return reply;
     }
@@ -16,4 +22,12 @@ public class ChatResponse {
     public void setReply(String reply) {
         this.reply = reply;
     }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
 }
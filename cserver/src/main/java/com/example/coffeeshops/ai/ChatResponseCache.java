@@ -0,0 +1,95 @@
+package com.example.coffeeshops.ai;
+
+import com.example.coffeeshops.coffee.CatalogText;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * LRU cache of AI answers with a time-to-live. The key includes the prompt version of
+ * {@link CatalogPromptIndex}, so a change to what the model is shown makes older answers
+ * unreachable; they then age out of the LRU. Rating flushes that leave every shop at the same
+ * tenth keep the key. Only successful answers are stored.
+ */
+@Component
+public class ChatResponseCache {
+
+    public record Key(String message, String models, long promptVersion) {}
+
+    private record Entry(String reply, long storedAt, long upstreamNanos) {}
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    // Access order: the eldest entry is the least recently used.
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long savedNanos;
+
+    @Autowired
+    public ChatResponseCache(
+            @Value("${app.ai.cache.max-entries:1000}") int maxEntries,
+            @Value("${app.ai.cache.ttl:30m}") Duration ttl
+    ) {
+        this(maxEntries, ttl, System::nanoTime);
+    }
+
+    ChatResponseCache(int maxEntries, Duration ttl, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+    }
+
+    // Case, ё and punctuation do not make a different question.
+    public static Key key(String message, String models, long promptVersion) {
+        return new Key(CatalogText.normalize(message), models, promptVersion);
+    }
+
+    public synchronized Optional<String> get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && clock.getAsLong() - entry.storedAt() > ttlNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        savedNanos += entry.upstreamNanos();
+        return Optional.of(entry.reply());
+    }
+
+    public synchronized void put(Key key, String reply, long upstreamNanos) {
+        entries.put(key, new Entry(reply, clock.getAsLong(), upstreamNanos));
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        stats.put("evictions", evictions);
+        // Upstream time the hits would have cost, measured when each answer was first fetched.
+        stats.put("savedMs", savedNanos / 1_000_000);
+        return stats;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.coffeeshops.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Recent turns of chat conversations, in memory. Bounded on every axis: the number of
+ * conversations (least recently used ones are dropped), turns per conversation (oldest first),
+ * message length, and idle time.
+ */
+@Component
+public class ConversationStore {
+
+    public record Turn(String role, String content) {}
+
+    // Rough JVM cost of the bookkeeping, for the memory estimate in stats().
+    private static final int CONVERSATION_OVERHEAD_BYTES = 200;
+    private static final int TURN_OVERHEAD_BYTES = 64;
+
+    private static final class Conversation {
+        final ArrayDeque<Turn> turns = new ArrayDeque<>();
+        long chars;
+        long lastUsed;
+    }
+
+    private final int maxConversations;
+    private final int maxTurns;
+    private final int maxMessageChars;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    // Access order: the eldest entry is the least recently used.
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long evicted;
+    private long expired;
+
+    @Autowired
+    public ConversationStore(
+            @Value("${app.ai.conversation.max-sessions:10000}") int maxConversations,
+            @Value("${app.ai.conversation.max-turns:20}") int maxTurns,
+            @Value("${app.ai.conversation.max-message-chars:2000}") int maxMessageChars,
+            @Value("${app.ai.conversation.ttl:30m}") Duration ttl
+    ) {
+        this(maxConversations, maxTurns, maxMessageChars, ttl, System::nanoTime);
+    }
+
+    ConversationStore(int maxConversations, int maxTurns, int maxMessageChars, Duration ttl, LongSupplier clock) {
+        this.maxConversations = maxConversations;
+        this.maxTurns = maxTurns;
+        this.maxMessageChars = maxMessageChars;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the id of the live conversation, or of a new one when the id is missing, unknown
+     * or has expired. Ids are never taken from the client.
+     */
+    public synchronized String open(String id) {
+        long now = clock.getAsLong();
+        expire(now);
+        if (id != null) {
+            Conversation conversation = conversations.get(id);
+            if (conversation != null) {
+                conversation.lastUsed = now;
+                return id;
+            }
+        }
+        String newId = UUID.randomUUID().toString();
+        Conversation conversation = new Conversation();
+        conversation.lastUsed = now;
+        conversations.put(newId, conversation);
+        if (conversations.size() > maxConversations) {
+            Iterator<Conversation> eldest = conversations.values().iterator();
+            eldest.next();
+            eldest.remove();
+            evicted++;
+        }
+        return newId;
+    }
+
+    // Oldest turn first.
+    public synchronized List<Turn> history(String id) {
+        Conversation conversation = conversations.get(id);
+        return conversation == null ? List.of() : List.copyOf(conversation.turns);
+    }
+
+    public synchronized void append(String id, String question, String reply) {
+        Conversation conversation = conversations.get(id);
+        if (conversation == null) {
+            // Evicted while the model was answering.
+            return;
+        }
+        add(conversation, new Turn("user", clip(question)));
+        add(conversation, new Turn("assistant", clip(reply)));
+        while (conversation.turns.size() > maxTurns) {
+            conversation.chars -= conversation.turns.removeFirst().content().length();
+        }
+        conversation.lastUsed = clock.getAsLong();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        expire(clock.getAsLong());
+        long turns = 0;
+        long bytes = 0;
+        long largest = 0;
+        for (Conversation conversation : conversations.values()) {
+            long size = bytes(conversation);
+            turns += conversation.turns.size();
+            bytes += size;
+            largest = Math.max(largest, size);
+        }
+        int count = conversations.size();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", count);
+        stats.put("maxSessions", maxConversations);
+        stats.put("turns", turns);
+        stats.put("bytes", bytes);
+        stats.put("avgBytesPerSession", count > 0 ? bytes / count : 0);
+        stats.put("maxBytesPerSession", largest);
+        stats.put("evicted", evicted);
+        stats.put("expired", expired);
+        return stats;
+    }
+
+    private static void add(Conversation conversation, Turn turn) {
+        conversation.turns.addLast(turn);
+        conversation.chars += turn.content().length();
+    }
+
+    private String clip(String text) {
+        return text.length() > maxMessageChars ? text.substring(0, maxMessageChars) : text;
+    }
+
+    // Least recently used first, so expired conversations sit at the head.
+    private void expire(long now) {
+        Iterator<Conversation> it = conversations.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastUsed <= ttlNanos) {
+                break;
+            }
+            it.remove();
+            expired++;
+        }
+    }
+
+    // Strings are two bytes per char at most.
+    private static long bytes(Conversation conversation) {
+        return CONVERSATION_OVERHEAD_BYTES + conversation.turns.size() * (long) TURN_OVERHEAD_BYTES + conversation.chars * 2;
+    }
+}
@@ -0,0 +1,534 @@
+package com.example.coffeeshops.ai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat-completions client shared by all requests. One pooled HTTP/2 client keeps connections
+ * (and TLS sessions) alive between calls; every request has a deadline. Models are tried in the
+ * order given by {@link ModelCircuitBreakers}, which also learns from each outcome: one after
+ * another in sequential mode, or with hedged requests that start the next model once the current
+ * one is slower than its usual latency percentile. Streamed completions are forwarded delta by
+ * delta and can be cancelled when the reader goes away.
+ */
+@Component
+public class LlmClient {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmClient.class);
+
+    private static final double TEMPERATURE = 0.2;
+    // Hedges a quiet spell may save up for a later burst of slow calls.
+    private static final double MAX_HEDGE_CREDIT = 10;
+
+    public enum Mode { SEQUENTIAL, HEDGED }
+
+    // Receives streamed content; an IOException means the reader is gone and cancels the stream.
+    @FunctionalInterface
+    public interface DeltaListener {
+        void onDelta(String delta) throws IOException;
+    }
+
+    private final URI apiUrl;
+    private final String apiKey;
+    private final String openRouterSiteUrl;
+    private final String openRouterAppTitle;
+    private final Duration requestTimeout;
+    private final Mode mode;
+    private final double hedgePercentile;
+    private final long hedgeInitialDelayMs;
+    private final double hedgeMaxRate;
+    // Every hedged request earns hedgeMaxRate of a hedge and every hedge spends one; guarded by this.
+    private double hedgeCredit;
+    private final ModelCircuitBreakers breakers;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+
+    public LlmClient(
+            @Value("${app.ai.api-url:https://api.openai.com/v1/chat/completions}") String apiUrl,
+            @Value("${spring.ai.openai.api-key:}") String apiKey,
+            @Value("${app.ai.openrouter.site-url:http://localhost}") String openRouterSiteUrl,
+            @Value("${app.ai.openrouter.app-title:CoffeeApp}") String openRouterAppTitle,
+            @Value("${app.ai.connect-timeout:3s}") Duration connectTimeout,
+            @Value("${app.ai.request-timeout:20s}") Duration requestTimeout,
+            @Value("${app.ai.mode:sequential}") Mode mode,
+            @Value("${app.ai.hedge.percentile:95}") double hedgePercentile,
+            @Value("${app.ai.hedge.initial-delay:2s}") Duration hedgeInitialDelay,
+            @Value("${app.ai.hedge.max-rate:0.1}") double hedgeMaxRate,
+            ModelCircuitBreakers breakers,
+            ObjectMapper objectMapper
+    ) {
+        this.apiUrl = URI.create(apiUrl);
+        this.apiKey = apiKey;
+        this.openRouterSiteUrl = openRouterSiteUrl;
+        this.openRouterAppTitle = openRouterAppTitle;
+        this.requestTimeout = requestTimeout;
+        this.mode = mode;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeInitialDelayMs = hedgeInitialDelay.toMillis();
+        this.hedgeMaxRate = hedgeMaxRate;
+        this.breakers = breakers;
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    public boolean isConfigured() {
+        return apiKey != null && !apiKey.isBlank();
+    }
+
+    /**
+     * Returns the first non-empty completion, walking the models healthiest first.
+     *
+     * @throws LlmException with the last upstream error when no model answered
+     */
+    public String complete(List<String> models, List<Map<String, String>> messages, int maxTokens) {
+        List<String> ordered = breakers.order(models);
+        if (ordered.isEmpty()) {
+            throw new LlmException("AI временно недоступен, попробуйте позже");
+        }
+
+        if (mode == Mode.HEDGED && ordered.size() > 1) {
+            return completeHedged(ordered, messages, maxTokens);
+        }
+
+        String lastError = "Не удалось получить ответ от AI";
+        for (String model : ordered) {
+            long started = System.nanoTime();
+            try {
+                String content = call(model, messages, maxTokens);
+                breakers.onSuccess(model, System.nanoTime() - started);
+                return content;
+            } catch (LlmException e) {
+                breakers.onFailure(model);
+                lastError = e.getMessage();
+                log.debug("Model {} failed: {}", model, lastError);
+            }
+        }
+        throw new LlmException(lastError);
+    }
+
+    /**
+     * Streams the completion of the healthiest model, passing every content delta to the listener
+     * as it arrives. The next model is tried only while nothing has been streamed yet. The result
+     * completes with the whole text, or exceptionally with an {@link LlmException}.
+     */
+    public StreamingReply stream(List<String> models, List<Map<String, String>> messages, int maxTokens,
+                                 DeltaListener listener) {
+        List<String> ordered = breakers.order(models);
+        StreamingReply reply = new StreamingReply(ordered, messages, maxTokens, listener);
+        if (ordered.isEmpty()) {
+            reply.result.completeExceptionally(new LlmException("AI временно недоступен, попробуйте позже"));
+        } else {
+            reply.launchNext();
+        }
+        return reply;
+    }
+
+    private String call(String model, List<Map<String, String>> messages, int maxTokens) {
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request(model, messages, maxTokens, false), HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmException("Запрос к AI прерван");
+        } catch (IOException e) {
+            throw failure(e);
+        }
+        return parse(response.statusCode(), response.body());
+    }
+
+    private String completeHedged(List<String> ordered, List<Map<String, String>> messages, int maxTokens) {
+        earnHedgeCredit();
+        Hedge hedge = new Hedge(ordered, messages, maxTokens);
+        hedge.launchNext();
+        try {
+            return hedge.result.join();
+        } catch (CompletionException e) {
+            throw failure(e.getCause());
+        } finally {
+            // Losing attempts are aborted so they stop holding a connection and upstream tokens.
+            hedge.cancelAll();
+        }
+    }
+
+    // How long to wait for the model before starting the next one.
+    private long hedgeDelayMs(String model) {
+        long percentile = breakers.latencyPercentile(model, hedgePercentile);
+        return percentile < 0 ? hedgeInitialDelayMs : Math.min(percentile, requestTimeout.toMillis());
+    }
+
+    private synchronized void earnHedgeCredit() {
+        hedgeCredit = Math.min(MAX_HEDGE_CREDIT, hedgeCredit + hedgeMaxRate);
+    }
+
+    // Caps hedges at hedgeMaxRate of requests, so a slow upstream does not get its load doubled.
+    private synchronized boolean spendHedgeCredit() {
+        if (hedgeCredit < 1) {
+            return false;
+        }
+        hedgeCredit -= 1;
+        return true;
+    }
+
+    private static LlmException failure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof LlmException e) {
+            return e;
+        }
+        if (cause instanceof HttpTimeoutException) {
+            return new LlmException("AI не ответил вовремя");
+        }
+        if (cause instanceof IOException) {
+            return new LlmException("Нет связи с AI API");
+        }
+        return new LlmException("Не удалось получить ответ от AI");
+    }
+
+    // Attempts of one hedged request: the first valid answer wins and the others are cancelled.
+    private final class Hedge {
+        final List<String> models;
+        final List<Map<String, String>> messages;
+        final int maxTokens;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final List<CompletableFuture<?>> attempts = new CopyOnWriteArrayList<>();
+        int launched;
+        int failed;
+
+        Hedge(List<String> models, List<Map<String, String>> messages, int maxTokens) {
+            this.models = models;
+            this.messages = messages;
+            this.maxTokens = maxTokens;
+        }
+
+        synchronized void launchNext() {
+            if (result.isDone() || launched == models.size()) {
+                return;
+            }
+            String model = models.get(launched++);
+            long delayMs = hedgeDelayMs(model);
+            long started = System.nanoTime();
+            CompletableFuture<HttpResponse<String>> attempt =
+                    httpClient.sendAsync(request(model, messages, maxTokens, false), HttpResponse.BodyHandlers.ofString());
+            attempts.add(attempt);
+            attempt.whenComplete((response, error) -> finished(model, started, delayMs, response, error));
+
+            if (launched < models.size()) {
+                CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS).execute(() -> {
+                    if (!attempt.isDone() && spendHedgeCredit()) {
+                        launchNext();
+                    }
+                });
+            }
+        }
+
+        void finished(String model, long started, long delayMs, HttpResponse<String> response, Throwable error) {
+            if (error instanceof CancellationException || error != null && error.getCause() instanceof CancellationException) {
+                // Lost the race; says nothing about the model's health. Having run past its hedge
+                // delay it was slow, and dropping that would bias the percentile towards the winners.
+                long elapsed = System.nanoTime() - started;
+                if (elapsed >= TimeUnit.MILLISECONDS.toNanos(delayMs)) {
+                    breakers.onCancelled(model, elapsed);
+                }
+                return;
+            }
+            try {
+                if (error != null) {
+                    throw failure(error);
+                }
+                String content = parse(response.statusCode(), response.body());
+                breakers.onSuccess(model, System.nanoTime() - started);
+                result.complete(content);
+            } catch (LlmException e) {
+                breakers.onFailure(model);
+                log.debug("Model {} failed: {}", model, e.getMessage());
+                synchronized (this) {
+                    if (++failed == models.size()) {
+                        result.completeExceptionally(e);
+                    }
+                }
+                // A failure starts the next model without waiting for the hedge delay.
+                launchNext();
+            }
+        }
+
+        void cancelAll() {
+            attempts.forEach(a -> a.cancel(true));
+        }
+    }
+
+    /**
+     * One streamed completion. Deltas are delivered on the HTTP client's threads, one at a time.
+     */
+    public final class StreamingReply {
+        private final List<String> models;
+        private final List<Map<String, String>> messages;
+        private final int maxTokens;
+        private final DeltaListener listener;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private int launched;
+        private volatile boolean cancelled;
+        private volatile CompletableFuture<?> attempt;
+        private volatile DeltaParser parser;
+
+        private StreamingReply(List<String> models, List<Map<String, String>> messages, int maxTokens,
+                               DeltaListener listener) {
+            this.models = models;
+            this.messages = messages;
+            this.maxTokens = maxTokens;
+            this.listener = listener;
+        }
+
+        public CompletableFuture<String> result() {
+            return result;
+        }
+
+        // Closes the upstream connection so the model stops generating (and billing) tokens.
+        public void cancel() {
+            cancelled = true;
+            DeltaParser current = parser;
+            if (current != null) {
+                current.cancel();
+            }
+            CompletableFuture<?> running = attempt;
+            if (running != null) {
+                running.cancel(true);
+            }
+            result.cancel(false);
+        }
+
+        private void launchNext() {
+            String model = models.get(launched++);
+            long started = System.nanoTime();
+            DeltaParser deltas = new DeltaParser(this);
+            parser = deltas;
+            // Error responses are plain JSON, everything else is read as server-sent events.
+            CompletableFuture<HttpResponse<String>> running = httpClient.sendAsync(
+                    request(model, messages, maxTokens, true),
+                    info -> info.statusCode() >= 400
+                            ? BodySubscribers.ofString(StandardCharsets.UTF_8)
+                            : BodySubscribers.fromLineSubscriber(deltas, d -> (String) null, StandardCharsets.UTF_8, null));
+            attempt = running;
+            if (cancelled) {
+                running.cancel(true);
+            }
+            running.whenComplete((response, error) -> finished(model, started, deltas, response, error));
+        }
+
+        private void finished(String model, long started, DeltaParser deltas, HttpResponse<String> response,
+                              Throwable error) {
+            if (cancelled) {
+                // The reader left; says nothing about the model's health.
+                return;
+            }
+            try {
+                if (error != null) {
+                    throw failure(error);
+                }
+                if (response.statusCode() >= 400) {
+                    parse(response.statusCode(), response.body());
+                }
+                String content = deltas.text();
+                if (content.isBlank()) {
+                    throw new LlmException(deltas.error.isBlank() ? "AI вернул пустой ответ" : deltas.error);
+                }
+                breakers.onSuccess(model, System.nanoTime() - started);
+                result.complete(content.trim());
+            } catch (LlmException e) {
+                breakers.onFailure(model);
+                log.debug("Model {} failed: {}", model, e.getMessage());
+                // Once text has reached the reader, switching models would produce a mixed answer.
+                if (deltas.streamed || launched == models.size()) {
+                    result.completeExceptionally(e);
+                } else {
+                    launchNext();
+                }
+            }
+        }
+    }
+
+    // Server-sent events of a streamed completion: "data: {json}" lines, a blank line ends an event.
+    private final class DeltaParser implements Flow.Subscriber<String> {
+        private final StreamingReply reply;
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder data = new StringBuilder();
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled;
+        volatile boolean streamed;
+        volatile String error = "";
+
+        DeltaParser(StreamingReply reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.isEmpty()) {
+                dispatch();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            }
+            // Comments (": keep-alive"), event: and id: lines carry nothing we need.
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Reported through the response future.
+        }
+
+        @Override
+        public void onComplete() {
+            dispatch();
+        }
+
+        void cancel() {
+            cancelled = true;
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        String text() {
+            return text.toString();
+        }
+
+        private void dispatch() {
+            String payload = data.toString();
+            data.setLength(0);
+            if (cancelled || payload.isEmpty() || payload.equals("[DONE]")) {
+                return;
+            }
+            JsonNode chunk;
+            try {
+                chunk = objectMapper.readTree(payload);
+            } catch (IOException e) {
+                return;
+            }
+            String message = chunk.path("error").path("message").asText();
+            if (!message.isBlank()) {
+                error = message;
+            }
+            String delta = chunk.path("choices").path(0).path("delta").path("content").asText("");
+            if (delta.isEmpty()) {
+                return;
+            }
+            text.append(delta);
+            streamed = true;
+            try {
+                reply.listener.onDelta(delta);
+            } catch (IOException | RuntimeException e) {
+                reply.cancel();
+            }
+        }
+    }
+
+    private HttpRequest request(String model, List<Map<String, String>> messages, int maxTokens, boolean stream) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", model);
+        payload.put("temperature", TEMPERATURE);
+        payload.put("max_tokens", maxTokens);
+        payload.put("messages", messages);
+        if (stream) {
+            payload.put("stream", true);
+        }
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(apiUrl)
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey);
+        if (apiUrl.getHost() != null && apiUrl.getHost().contains("openrouter.ai")) {
+            builder.header("HTTP-Referer", openRouterSiteUrl)
+                    .header("X-Title", openRouterAppTitle);
+        }
+        return builder.POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    private String parse(int status, String body) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(body);
+        } catch (IOException e) {
+            throw new LlmException(status >= 400 ? "Ошибка AI API (HTTP " + status + ")" : "Некорректный ответ AI API");
+        }
+
+        String errorMessage = root.path("error").path("message").asText();
+        if (status >= 400) {
+            throw new LlmException(errorMessage.isBlank() ? "Ошибка AI API (HTTP " + status + ")" : errorMessage);
+        }
+
+        JsonNode choices = root.path("choices");
+        if (!choices.isArray() || choices.isEmpty()) {
+            throw new LlmException(errorMessage.isBlank() ? "Некорректный ответ AI API" : errorMessage);
+        }
+
+        String content = extractContent(choices.get(0));
+        if (content.isBlank()) {
+            throw new LlmException("AI вернул пустой ответ");
+        }
+        return content.trim();
+    }
+
+    private static String extractContent(JsonNode choice) {
+        JsonNode contentNode = choice.path("message").path("content");
+        if (contentNode.isTextual()) {
+            return contentNode.asText();
+        }
+
+        if (contentNode.isArray()) {
+            for (JsonNode part : contentNode) {
+                String text = part.path("text").asText();
+                if (!text.isBlank()) {
+                    return text;
+                }
+            }
+        }
+
+        return choice.path("text").asText();
+    }
+}
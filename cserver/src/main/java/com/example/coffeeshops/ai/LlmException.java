@@ -0,0 +1,9 @@
+package com.example.coffeeshops.ai;
+
+// Upstream LLM call failed; the message is shown to the user after "Ошибка: ".
+public class LlmException extends RuntimeException {
+
+    public LlmException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.coffeeshops.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-model circuit breaker with a health score. A model that fails several times in a row is
+ * skipped for a cool-down period, then put first for a single probe request: a successful probe
+ * closes the breaker, a failed one opens it for another cool-down. Other models are ordered by
+ * their smoothed success rate; recent latencies feed the hedge delay.
+ */
+@Component
+public class ModelCircuitBreakers {
+
+    // Weight of the newest observation in the moving averages.
+    private static final double ALPHA = 0.2;
+    // Recent latencies kept per model for percentiles: successful calls and censored losers.
+    private static final int LATENCY_WINDOW = 128;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ModelCircuitBreakers(
+            @Value("${app.ai.breaker.failure-threshold:3}") int failureThreshold,
+            @Value("${app.ai.breaker.open-duration:30s}") Duration openDuration
+    ) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    ModelCircuitBreakers(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    // Models that may be called now: due probes first, then healthiest first; ties keep the configured order.
+    public List<String> order(List<String> models) {
+        long now = clock.getAsLong();
+        List<String> probes = new ArrayList<>();
+        List<Breaker> closed = new ArrayList<>(models.size());
+        for (String model : models) {
+            Breaker breaker = breakers.computeIfAbsent(model, Breaker::new);
+            switch (breaker.admit(now)) {
+                case CLOSED -> closed.add(breaker);
+                case PROBE -> probes.add(model);
+                case OPEN -> { }
+            }
+        }
+        closed.sort(Comparator.comparingDouble(Breaker::score).reversed());
+        List<String> ordered = new ArrayList<>(probes);
+        closed.forEach(b -> ordered.add(b.model));
+        return ordered;
+    }
+
+    public void onSuccess(String model, long latencyNanos) {
+        breakers.computeIfAbsent(model, Breaker::new).success(latencyNanos / 1_000_000.0);
+    }
+
+    /**
+     * A hedged attempt cancelled after running this long: its real latency is at least that,
+     * so it joins the percentile window as a lower bound. Health is not affected.
+     */
+    public void onCancelled(String model, long elapsedNanos) {
+        breakers.computeIfAbsent(model, Breaker::new).censored(elapsedNanos / 1_000_000.0);
+    }
+
+    public void onFailure(String model) {
+        breakers.computeIfAbsent(model, Breaker::new).failure(clock.getAsLong());
+    }
+
+    /**
+     * Latency percentile of the model's recent calls, in milliseconds, or -1 while there are
+     * too few samples. Cancelled calls count with the time they had run, so a model that keeps
+     * losing hedges still gets a (conservatively high) percentile instead of none.
+     */
+    public long latencyPercentile(String model, double percentile) {
+        Breaker breaker = breakers.get(model);
+        return breaker == null ? -1 : breaker.percentile(percentile);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        breakers.forEach((model, breaker) -> result.put(model, breaker.describe()));
+        return result;
+    }
+
+    private enum Admission { CLOSED, PROBE, OPEN }
+
+    private final class Breaker {
+        final String model;
+        int consecutiveFailures;
+        // Long.MIN_VALUE while closed.
+        long openUntil = Long.MIN_VALUE;
+        boolean halfOpen;
+        double successRate = 1.0;
+        double latencyMs;
+        final long[] recentMs = new long[LATENCY_WINDOW];
+        long samples;
+
+        Breaker(String model) {
+            this.model = model;
+        }
+
+        synchronized Admission admit(long now) {
+            if (openUntil == Long.MIN_VALUE) {
+                return Admission.CLOSED;
+            }
+            if (now - openUntil < 0) {
+                return Admission.OPEN;
+            }
+            // One probe per cool-down; if its result never arrives, the next cool-down allows another.
+            openUntil = now + openNanos;
+            halfOpen = true;
+            return Admission.PROBE;
+        }
+
+        synchronized void success(double ms) {
+            consecutiveFailures = 0;
+            openUntil = Long.MIN_VALUE;
+            halfOpen = false;
+            successRate += ALPHA * (1 - successRate);
+            latencyMs = latencyMs == 0 ? ms : latencyMs + ALPHA * (ms - latencyMs);
+            recentMs[(int) (samples++ % LATENCY_WINDOW)] = Math.round(ms);
+        }
+
+        synchronized void censored(double ms) {
+            recentMs[(int) (samples++ % LATENCY_WINDOW)] = Math.round(ms);
+        }
+
+        synchronized long percentile(double percentile) {
+            int size = (int) Math.min(samples, LATENCY_WINDOW);
+            if (size < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(recentMs, size);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(size - 1, Math.ceil(percentile / 100 * size) - 1)];
+        }
+
+        synchronized void failure(long now) {
+            consecutiveFailures++;
+            successRate -= ALPHA * successRate;
+            // A failed probe re-opens immediately.
+            if (halfOpen || consecutiveFailures >= failureThreshold) {
+                openUntil = now + openNanos;
+                halfOpen = false;
+            }
+        }
+
+        // In steps of 0.1, so a single slow or odd reply does not reshuffle equally reliable models.
+        synchronized double score() {
+            return Math.round(successRate * 10) / 10.0;
+        }
+
+        synchronized Map<String, Object> describe() {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("state", openUntil == Long.MIN_VALUE ? "closed" : halfOpen ? "half-open" : "open");
+            state.put("consecutiveFailures", consecutiveFailures);
+            state.put("successRate", Math.round(successRate * 1000) / 1000.0);
+            state.put("latencyMs", Math.round(latencyMs));
+            return state;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.coffeeshops.ai;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * {@link SingleFlight} for streamed answers: callers asking with the same key while a stream runs
+ * share its one upstream stream, and every delta is fanned out to all of them. A caller that joins
+ * late first gets the text so far as one delta. A caller whose delta cannot be delivered is
+ * dropped; the upstream stream is cancelled only once every caller has gone.
+ */
+final class SharedStreams<K> {
+
+    private final Map<K, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    /**
+     * Joins the stream running for the key, or starts one with {@code start}, which gets the
+     * listener to pass to the upstream call.
+     */
+    Subscription join(K key, Function<LlmClient.DeltaListener, LlmClient.StreamingReply> start,
+                      LlmClient.DeltaListener listener) {
+        while (true) {
+            Flight flight = new Flight(key);
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                started.incrementAndGet();
+                Subscription subscription = flight.add(listener);
+                flight.launch(start);
+                return subscription;
+            }
+            Subscription subscription = existing.add(listener);
+            if (subscription != null) {
+                joined.incrementAndGet();
+                return subscription;
+            }
+            // Finished or abandoned while we looked it up.
+            flights.remove(key, existing);
+        }
+    }
+
+    Map<String, Object> stats() {
+        long leaders = started.get();
+        long followers = joined.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", flights.size());
+        stats.put("upstreamCalls", leaders);
+        stats.put("coalesced", followers);
+        stats.put("coalescingRatio", leaders + followers > 0 ? (double) followers / (leaders + followers) : 0.0);
+        return stats;
+    }
+
+    /** One caller's view of a shared stream. */
+    final class Subscription {
+        private final Flight flight;
+        private final LlmClient.DeltaListener listener;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private Subscription(Flight flight, LlmClient.DeltaListener listener) {
+            this.flight = flight;
+            this.listener = listener;
+        }
+
+        CompletableFuture<String> result() {
+            return result;
+        }
+
+        // The caller has gone; the last one to go cancels the upstream stream.
+        void cancel() {
+            flight.remove(this);
+        }
+    }
+
+    private final class Flight implements LlmClient.DeltaListener {
+        private final K key;
+        private final StringBuilder text = new StringBuilder();
+        private final List<Subscription> subscriptions = new ArrayList<>();
+        private LlmClient.StreamingReply upstream;
+        private boolean closed;
+
+        Flight(K key) {
+            this.key = key;
+        }
+
+        synchronized Subscription add(LlmClient.DeltaListener listener) {
+            if (closed) {
+                return null;
+            }
+            Subscription subscription = new Subscription(this, listener);
+            if (text.length() > 0 && !deliver(subscription, text.toString())) {
+                return subscription;
+            }
+            subscriptions.add(subscription);
+            return subscription;
+        }
+
+        void launch(Function<LlmClient.DeltaListener, LlmClient.StreamingReply> start) {
+            LlmClient.StreamingReply reply;
+            try {
+                reply = start.apply(this);
+            } catch (RuntimeException e) {
+                finish(null, e);
+                return;
+            }
+            boolean abandoned;
+            synchronized (this) {
+                upstream = reply;
+                abandoned = closed && subscriptions.isEmpty();
+            }
+            if (abandoned) {
+                reply.cancel();
+            }
+            reply.result().whenComplete(this::finish);
+        }
+
+        // Throwing when nobody is left makes the client cancel the upstream stream.
+        @Override
+        public synchronized void onDelta(String delta) throws IOException {
+            text.append(delta);
+            subscriptions.removeIf(subscription -> !deliver(subscription, delta));
+            if (subscriptions.isEmpty() && !closed) {
+                closed = true;
+                flights.remove(key, this);
+                throw new IOException("Все клиенты отключились");
+            }
+        }
+
+        synchronized void remove(Subscription subscription) {
+            if (subscriptions.remove(subscription)) {
+                subscription.result.cancel(false);
+                cancelIfAbandoned();
+            }
+        }
+
+        private void cancelIfAbandoned() {
+            if (subscriptions.isEmpty() && !closed) {
+                closed = true;
+                flights.remove(key, this);
+                if (upstream != null) {
+                    upstream.cancel();
+                }
+            }
+        }
+
+        // Removed before completing, so a caller woken by the result never joins a finished flight.
+        private void finish(String reply, Throwable error) {
+            flights.remove(key, this);
+            List<Subscription> waiting;
+            synchronized (this) {
+                closed = true;
+                waiting = List.copyOf(subscriptions);
+                subscriptions.clear();
+            }
+            for (Subscription subscription : waiting) {
+                if (error == null) {
+                    subscription.result.complete(reply);
+                } else {
+                    subscription.result.completeExceptionally(error);
+                }
+            }
+        }
+
+        private boolean deliver(Subscription subscription, String delta) {
+            try {
+                subscription.listener.onDelta(delta);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                subscription.result.cancel(false);
+                return false;
+            }
+        }
+    }
+}
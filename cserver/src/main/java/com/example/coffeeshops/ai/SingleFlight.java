@@ -0,0 +1,60 @@
+package com.example.coffeeshops.ai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls with the same key into one: the first caller starts the work,
+ * callers arriving while it runs get the same outcome, value or exception. Every caller gets its
+ * own copy of the future, so one giving up does not cancel the shared call. Nothing is kept once
+ * the call has finished; remembering results is the cache's job.
+ */
+final class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            joined.incrementAndGet();
+            return existing.copy();
+        }
+        started.incrementAndGet();
+
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        // Removed before completing, so a caller woken by the result never joins a finished flight.
+        result.whenComplete((value, error) -> {
+            flights.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight.copy();
+    }
+
+    Map<String, Object> stats() {
+        long leaders = started.get();
+        long followers = joined.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", flights.size());
+        stats.put("upstreamCalls", leaders);
+        stats.put("coalesced", followers);
+        // Share of requests that were answered by somebody else's call.
+        stats.put("coalescingRatio", leaders + followers > 0 ? (double) followers / (leaders + followers) : 0.0);
+        return stats;
+    }
+}
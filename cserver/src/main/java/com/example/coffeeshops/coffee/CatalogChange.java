@@ -0,0 +1,43 @@
+package com.example.coffeeshops.coffee;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// One row per catalog mutation; the id doubles as the monotonically increasing sync version.
+@Entity
+@Table(
+        name = "catalog_change",
+        indexes = @Index(name = "idx_change_created", columnList = "created_at")
+)
+public class CatalogChange {
+
+    public static final String UPSERT = "UPSERT";
+    public static final String DELETE = "DELETE";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long version;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    @Column(nullable = false, length = 8)
+    private String type;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public CatalogChange() {}
+
+    public CatalogChange(Long shopId, String type) {
+        this.shopId = shopId;
+        this.type = type;
+        this.createdAt = Instant.now();
+    }
+
+    public Long getVersion() { return version; }
+    public Long getShopId() { return shopId; }
+    public String getType() { return type; }
+    public Instant getCreatedAt() { return createdAt; }
+}
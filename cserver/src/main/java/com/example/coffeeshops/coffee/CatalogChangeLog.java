@@ -0,0 +1,165 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CatalogChanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Versioned log of catalog mutations for delta sync. Every create, rating update and delete
+ * records an entry in the transaction that makes the change, so a change is in the log if and
+ * only if it committed; a client holding version {@code v} asks for everything after it and
+ * gets each changed shop once. Entries older than the retention window are compacted away,
+ * after which clients behind the oldest entry are told to reload the full catalog.
+ */
+// Before CatalogEventHub: the version is current by the time clients are told to reload.
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@Component
+public class CatalogChangeLog implements CoffeeShopChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogChangeLog.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO catalog_change (shop_id, type, created_at) VALUES (?, ?, ?)";
+
+    private final CatalogChangeRepository changeRepository;
+    private final CoffeeShopRepository shopRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration retention;
+    private volatile long latestVersion;
+    // Held from a transaction's insert until it completes, so versions commit in order.
+    private final ReentrantLock commitOrder = new ReentrantLock();
+
+    public CatalogChangeLog(
+            CatalogChangeRepository changeRepository,
+            CoffeeShopRepository shopRepository,
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.changes.retention-days:30}") int retentionDays
+    ) {
+        this.changeRepository = changeRepository;
+        this.shopRepository = shopRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.retention = Duration.ofDays(retentionDays);
+    }
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        latestVersion = changeRepository.findLatestVersion();
+    }
+
+    /**
+     * Writes one entry per shop as a single batch insert in the caller's transaction, which must
+     * be the last statement of that transaction: later writers wait for it to commit, so that a
+     * reader never skips a version that commits late.
+     */
+    public void record(List<CoffeeShop> shops, String type) {
+        if (shops.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Catalog changes are recorded in the transaction that makes them");
+        }
+        long[] version = {0};
+        commitOrder.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED && version[0] > 0) {
+                    latestVersion = version[0];
+                }
+                commitOrder.unlock();
+            }
+        });
+
+        Timestamp now = Timestamp.from(Instant.now());
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_SQL, new String[]{"version"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, shops.get(i).getId());
+                        ps.setString(2, type);
+                        ps.setTimestamp(3, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return shops.size();
+                    }
+                },
+                keys);
+        List<Map<String, Object>> versions = keys.getKeyList();
+        version[0] = ((Number) versions.get(versions.size() - 1).values().iterator().next()).longValue();
+    }
+
+    // Version a full catalog download corresponds to.
+    public long latestVersion() {
+        return latestVersion;
+    }
+
+    public CatalogChanges changesSince(long since, int limit) {
+        long latest = changeRepository.findLatestVersion();
+        long oldest = changeRepository.findOldestVersion();
+        if (since < 0 || since > latest || (oldest > 0 && since < oldest - 1)) {
+            return CatalogChanges.resync(latest);
+        }
+
+        List<CatalogChange> entries = changeRepository.findByVersionGreaterThanOrderByVersionAsc(since, Limit.of(limit + 1));
+        boolean hasMore = entries.size() > limit;
+        if (hasMore) {
+            entries = entries.subList(0, limit);
+        }
+        long version = entries.isEmpty() ? since : entries.get(entries.size() - 1).getVersion();
+
+        // Several changes of one shop collapse into its latest state.
+        Map<Long, String> lastChange = new LinkedHashMap<>();
+        for (CatalogChange entry : entries) {
+            lastChange.put(entry.getShopId(), entry.getType());
+        }
+        List<Long> upsertIds = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        lastChange.forEach((id, type) -> (CatalogChange.DELETE.equals(type) ? deletes : upsertIds).add(id));
+
+        List<CoffeeShop> upserts = shopRepository.findAllById(upsertIds);
+        if (upserts.size() < upsertIds.size()) {
+            // Deleted by a change further down the log than this page reaches.
+            Set<Long> found = new HashSet<>();
+            upserts.forEach(s -> found.add(s.getId()));
+            upsertIds.stream().filter(id -> !found.contains(id)).forEach(deletes::add);
+        }
+        return new CatalogChanges(version, false, hasMore, upserts, deletes);
+    }
+
+    @Scheduled(cron = "${app.changes.compaction-cron:0 30 3 * * *}")
+    public void compact() {
+        int removed = changeRepository.deleteOlderThan(Instant.now().minus(retention), changeRepository.findLatestVersion());
+        if (removed > 0) {
+            log.info("Compacted {} catalog change log entries", removed);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.coffeeshops.coffee;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface CatalogChangeRepository extends JpaRepository<CatalogChange, Long> {
+
+    List<CatalogChange> findByVersionGreaterThanOrderByVersionAsc(Long version, Limit limit);
+
+    @Query("select coalesce(min(c.version), 0) from CatalogChange c")
+    long findOldestVersion();
+
+    @Query("select coalesce(max(c.version), 0) from CatalogChange c")
+    long findLatestVersion();
+
+    // The newest entry is always kept so the log never loses track of the current version.
+    @Transactional
+    @Modifying
+    @Query("delete from CatalogChange c where c.createdAt < :cutoff and c.version < :latest")
+    int deleteOlderThan(Instant cutoff, long latest);
+}
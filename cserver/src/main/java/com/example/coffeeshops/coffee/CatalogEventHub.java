@@ -0,0 +1,286 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CatalogEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Fans catalog changes out to connected clients. Publishing only enqueues: every subscriber
+ * has a small bounded queue that a shared pool drains, so an idle connection costs no thread
+ * and a client that cannot keep up fills its queue and is disconnected instead of slowing
+ * everybody else down. A client whose send has been stuck longer than the send timeout is
+ * disconnected too, so it cannot hold a pool thread. Batches larger than a few events (an
+ * import chunk, a rating flush) go out as a single reload event. Disconnected clients
+ * re-fetch the catalog when they reconnect.
+ */
+// Last of the listeners: a client reacting to an event finds the change in the log and the snapshot.
+@Order(Ordered.LOWEST_PRECEDENCE)
+@Component
+public class CatalogEventHub implements CoffeeShopChangeListener {
+
+    private static final Object HEARTBEAT = new Object();
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Reserved slots, so that concurrent subscribes cannot overshoot the limit.
+    private final AtomicInteger slots = new AtomicInteger();
+    private final int queueCapacity;
+    private final int maxSubscribers;
+    private final int maxBatchEvents;
+    private final long timeoutMs;
+    private final long sendTimeoutNanos;
+    private final ExecutorService executor;
+
+    public CatalogEventHub(
+            @Value("${app.events.queue-capacity:256}") int queueCapacity,
+            @Value("${app.events.max-subscribers:10000}") int maxSubscribers,
+            @Value("${app.events.max-batch-events:20}") int maxBatchEvents,
+            @Value("${app.events.threads:4}") int threads,
+            @Value("${app.events.timeout-ms:1800000}") long timeoutMs,
+            @Value("${app.events.send-timeout-ms:5000}") long sendTimeoutMs
+    ) {
+        this.queueCapacity = queueCapacity;
+        this.maxSubscribers = maxSubscribers;
+        this.maxBatchEvents = maxBatchEvents;
+        this.timeoutMs = timeoutMs;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "catalog-events-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        publish(CatalogEvent.created(shop));
+    }
+
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        publish(CatalogEvent.ratingUpdated(shop));
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        publish(CatalogEvent.deleted(shop.getId()));
+    }
+
+    @Override
+    public void onCreatedAll(List<CoffeeShop> shops) {
+        publishBatch(shops, CatalogEvent::created);
+    }
+
+    @Override
+    public void onUpdatedAll(List<CoffeeShop> shops) {
+        publishBatch(shops, CatalogEvent::ratingUpdated);
+    }
+
+    private void publishBatch(List<CoffeeShop> shops, Function<CoffeeShop, CatalogEvent> event) {
+        if (shops.size() > maxBatchEvents) {
+            publish(CatalogEvent.reload());
+            return;
+        }
+        shops.forEach(shop -> publish(event.apply(shop)));
+    }
+
+    /**
+     * Opens an SSE stream for one client. Returns empty when the node already serves
+     * the configured maximum number of subscribers.
+     */
+    public Optional<SseEmitter> openStream() {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = subscribe(new SseEventSink(emitter));
+        if (subscriber == null) {
+            return Optional.empty();
+        }
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        return Optional.of(emitter);
+    }
+
+    // Returns null when the subscriber limit is reached.
+    Subscriber subscribe(EventSink sink) {
+        if (slots.incrementAndGet() > maxSubscribers) {
+            slots.decrementAndGet();
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(sink);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public void publish(CatalogEvent event) {
+        enqueue(event);
+    }
+
+    private void enqueue(Object message) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(message);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${app.events.heartbeat-ms:25000}")
+    public void heartbeat() {
+        enqueue(HEARTBEAT);
+    }
+
+    // Disconnects clients whose send has not returned within the send timeout.
+    @Scheduled(fixedRateString = "${app.events.send-timeout-ms:5000}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.stalled(now)) {
+                unsubscribe(subscriber);
+                subscriber.interruptSend();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        List.copyOf(subscribers).forEach(this::unsubscribe);
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            slots.decrementAndGet();
+            subscriber.closed = true;
+            subscriber.sink.close();
+        }
+    }
+
+    final class Subscriber implements Runnable {
+        final EventSink sink;
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean closed;
+        // Pool thread and start time of the send in progress; guarded by this.
+        private Thread sender;
+        private long sendStartedAt;
+
+        Subscriber(EventSink sink) {
+            this.sink = sink;
+        }
+
+        void offer(Object message) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(message)) {
+                // Slow consumer: it would miss events anyway, so let it reconnect and resync.
+                unsubscribe(this);
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    unsubscribe(this);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object message;
+                while (!closed && (message = queue.poll()) != null) {
+                    sendStarted();
+                    try {
+                        if (message == HEARTBEAT) {
+                            sink.heartbeat();
+                        } else {
+                            sink.send((CatalogEvent) message);
+                        }
+                    } finally {
+                        sendFinished();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                unsubscribe(this);
+            } finally {
+                scheduled.set(false);
+            }
+            // An event may have arrived after the last poll but before the flag was cleared.
+            if (!closed && !queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private synchronized void sendStarted() {
+            sender = Thread.currentThread();
+            sendStartedAt = System.nanoTime();
+        }
+
+        private synchronized void sendFinished() {
+            sender = null;
+            // An interrupt that raced with the end of the send must not hit the next subscriber.
+            Thread.interrupted();
+        }
+
+        synchronized boolean stalled(long now) {
+            return sender != null && now - sendStartedAt > sendTimeoutNanos;
+        }
+
+        synchronized void interruptSend() {
+            if (sender != null) {
+                sender.interrupt();
+            }
+        }
+    }
+
+    private static final class SseEventSink implements EventSink {
+        private final SseEmitter emitter;
+
+        SseEventSink(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void send(CatalogEvent event) throws IOException {
+            emitter.send(SseEmitter.event().name(event.getType()).data(event, MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            emitter.send(SseEmitter.event().comment("ping"));
+        }
+
+        @Override
+        public void close() {
+            emitter.complete();
+        }
+    }
+}
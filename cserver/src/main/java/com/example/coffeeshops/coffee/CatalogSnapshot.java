@@ -0,0 +1,95 @@
+package com.example.coffeeshops.coffee;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Serialized catalog as served by GET /api/coffee-shops: the JSON bytes, a gzip copy
+ * and a strong validator for each representation.
+ */
+public final class CatalogSnapshot {
+
+    private final byte[] json;
+    private final byte[] gzip;
+    private final String etag;
+    private final String gzipEtag;
+
+    CatalogSnapshot(byte[] json, byte[] gzip, String hash) {
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = "\"" + hash + "\"";
+        this.gzipEtag = "\"" + hash + "-gzip\"";
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getGzipEtag() {
+        return gzipEtag;
+    }
+
+    public String etag(boolean gzip) {
+        return gzip ? gzipEtag : etag;
+    }
+
+    /**
+     * If-None-Match may hold "*" or a comma separated list, possibly with W/ prefixes. Only the
+     * tag of the representation being served counts: a cached identity body must not be
+     * revalidated as the gzip one, or the other way round.
+     */
+    public boolean matches(String ifNoneMatch, boolean gzip) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        String selected = etag(gzip);
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(selected));
+    }
+
+    /**
+     * Whether Accept-Encoding allows gzip: listed with a non-zero q-value, or covered by "*"
+     * when not listed itself. "gzip;q=0" refuses it.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1.0;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip != null) {
+            return gzip > 0;
+        }
+        return any != null && any > 0;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.coffeeshops.coffee;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the last serialized catalog and rebuilds it lazily on the first read after a change,
+ * so a burst of mutations costs a single query and serialization.
+ */
+// Invalidated before the change log records a version, so a body served with that version includes it.
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Component
+public class CatalogSnapshotCache implements CoffeeShopChangeListener {
+
+    private final CoffeeShopRepository repository;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong changes = new AtomicLong();
+    private volatile CatalogSnapshot snapshot;
+    private volatile long snapshotChanges = -1;
+
+    public CatalogSnapshotCache(CoffeeShopRepository repository, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        changes.incrementAndGet();
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        changes.incrementAndGet();
+    }
+
+    public CatalogSnapshot get() {
+        CatalogSnapshot current = snapshot;
+        if (current != null && snapshotChanges == changes.get()) {
+            return current;
+        }
+        synchronized (this) {
+            // Read the counter before querying: a change that lands mid-build forces another rebuild.
+            long seen = changes.get();
+            if (snapshot == null || snapshotChanges != seen) {
+                snapshot = build(repository.findAll());
+                snapshotChanges = seen;
+            }
+            return snapshot;
+        }
+    }
+
+    private CatalogSnapshot build(List<CoffeeShop> shops) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(shops);
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            String hash = HexFormat.of().formatHex(digest, 0, 16);
+            return new CatalogSnapshot(json, compressed.toByteArray(), hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.coffeeshops.coffee;
+
+import java.util.Locale;
+
+/**
+ * Text folding shared by the catalog search structures: lower case (Cyrillic included),
+ * ё -> е, punctuation to spaces.
+ */
+public final class CatalogText {
+
+    private CatalogText() {}
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(lower.length());
+        boolean space = true;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') {
+            sb.setLength(end - 1);
+        }
+        return sb.toString();
+    }
+}
@@ -1,9 +1,16 @@
 package com.example.coffeeshops.coffee;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
+// Rating columns are also written over JDBC; CoffeeShopService evicts those rows after each flush.
 @Entity
 @Table(name = "coffee_shop")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "coffee-shops")
 public class CoffeeShop {
 
     @Id
@@ -16,6 +23,47 @@ public class CoffeeShop {
     private double lng;
     private double rating;
 
+    // Running mean support: rating == ratingSum / ratingCount once the shop has votes.
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "rating_sum", nullable = false)
+    private double ratingSum;
+
+    @ColumnDefault("0")
+    @Column(name = "rating_count", nullable = false)
+    private long ratingCount;
+
+    // The rating the shop was added with; it counts as the shop's first vote.
+    @JsonIgnore
+    @Column(name = "seed_rating")
+    private Double seedRating;
+
+    // Star distribution of the votes (rounded to whole stars).
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "stars_1", nullable = false)
+    private long stars1;
+
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "stars_2", nullable = false)
+    private long stars2;
+
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "stars_3", nullable = false)
+    private long stars3;
+
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "stars_4", nullable = false)
+    private long stars4;
+
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "stars_5", nullable = false)
+    private long stars5;
+
     public CoffeeShop() {}
 
     public CoffeeShop(String name, String address, double lat, double lng, double rating) {
@@ -26,6 +74,13 @@ public class CoffeeShop {
         this.rating = rating;
     }
 
+    @PrePersist
+    void seed() {
+        if (seedRating == null) {
+            seedRating = rating;
+        }
+    }
+
     // ✅ Геттеры и сеттеры
     public Long getId() { return id; }
     public String getName() { return name; }
@@ -33,6 +88,14 @@ public class CoffeeShop {
     public double getLat() { return lat; }
     public double getLng() { return lng; }
     public double getRating() { return rating; }
+    public double getRatingSum() { return ratingSum; }
+    public long getRatingCount() { return ratingCount; }
+
+    @JsonIgnore
+    public Double getSeedRating() { return seedRating; }
+
+    @JsonIgnore
+    public long[] getStars() { return new long[]{stars1, stars2, stars3, stars4, stars5}; }
 
     public void setId(Long id) { this.id = id; }
     public void setName(String name) { this.name = name; }
@@ -40,4 +103,15 @@ public class CoffeeShop {
     public void setLat(double lat) { this.lat = lat; }
     public void setLng(double lng) { this.lng = lng; }
     public void setRating(double rating) { this.rating = rating; }
+    public void setRatingSum(double ratingSum) { this.ratingSum = ratingSum; }
+    public void setRatingCount(long ratingCount) { this.ratingCount = ratingCount; }
+    public void setSeedRating(Double seedRating) { this.seedRating = seedRating; }
+
+    public void setStars(long[] stars) {
+        this.stars1 = stars[0];
+        this.stars2 = stars[1];
+        this.stars3 = stars[2];
+        this.stars4 = stars[3];
+        this.stars5 = stars[4];
+    }
 }
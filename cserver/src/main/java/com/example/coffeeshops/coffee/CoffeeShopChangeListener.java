@@ -0,0 +1,29 @@
+package com.example.coffeeshops.coffee;
+
+import java.util.List;
+
+/**
+ * In-memory views of the catalog (indexes, caches) implement this to stay in sync
+ * with {@link CoffeeShopService} without re-reading the whole table.
+ */
+public interface CoffeeShopChangeListener {
+
+    // Full catalog, called once on startup.
+    default void onReload(List<CoffeeShop> shops) {}
+
+    default void onCreated(CoffeeShop shop) {}
+
+    default void onUpdated(CoffeeShop shop) {}
+
+    default void onDeleted(CoffeeShop shop) {}
+
+    // Shops created together, e.g. one import batch.
+    default void onCreatedAll(List<CoffeeShop> shops) {
+        shops.forEach(this::onCreated);
+    }
+
+    // Shops whose ratings were written by one flush.
+    default void onUpdatedAll(List<CoffeeShop> shops) {
+        shops.forEach(this::onUpdated);
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopCluster;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pyramid of Web Mercator grids, one per map zoom. Every shop contributes to exactly one
+ * cell per level, so create/delete/rate touch a fixed number of cells and a viewport query
+ * only reads the cells it covers.
+ */
+@Component
+public class CoffeeShopClusterIndex implements CoffeeShopChangeListener {
+
+    public static final int MIN_ZOOM = 0;
+    public static final int MAX_ZOOM = 15;
+
+    // 4x4 clusters per 256px map tile, i.e. one cluster per ~64px on screen.
+    private static final int SUBDIVISION_BITS = 2;
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+    // Cell sums are kept in fixed point: integer adds and removes are exact, so a cell never
+    // drifts from the sum of its members however long the index lives.
+    private static final double COORD_SCALE = 1e7;
+    private static final double RATING_SCALE = 1000;
+
+    private final List<Map<Long, Cell>> levels = new ArrayList<>();
+    private final Map<Long, Point> points = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public CoffeeShopClusterIndex() {
+        for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+            levels.add(new HashMap<>());
+        }
+    }
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        lock.writeLock().lock();
+        try {
+            levels.forEach(Map::clear);
+            points.clear();
+            shops.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        onUpdated(shop);
+    }
+
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+            add(shop);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the cells a viewport covers at the given zoom, so callers can reject
+     * requests that would return an unbounded number of clusters.
+     */
+    public long cellsInViewport(double minLng, double minLat, double maxLng, double maxLat, int zoom) {
+        int level = level(zoom);
+        long rows = (long) y(minLat, level) - y(maxLat, level) + 1;
+        long cols = minLng <= maxLng
+                ? (long) x(maxLng, level) - x(minLng, level) + 1
+                : (long) size(level) - x(minLng, level) + x(maxLng, level) + 1;
+        return rows * cols;
+    }
+
+    public List<CoffeeShopCluster> clusters(double minLng, double minLat, double maxLng, double maxLat, int zoom) {
+        int level = level(zoom);
+        int y0 = y(maxLat, level);
+        int y1 = y(minLat, level);
+
+        List<CoffeeShopCluster> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Map<Long, Cell> cells = cellsAt(level);
+            if (minLng <= maxLng) {
+                collect(cells, x(minLng, level), x(maxLng, level), y0, y1, result);
+            } else {
+                // Viewport crosses the antimeridian.
+                collect(cells, x(minLng, level), size(level) - 1, y0, y1, result);
+                collect(cells, 0, x(maxLng, level), y0, y1, result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private void collect(Map<Long, Cell> cells, int x0, int x1, int y0, int y1, List<CoffeeShopCluster> out) {
+        long area = ((long) x1 - x0 + 1) * ((long) y1 - y0 + 1);
+        if (area > cells.size()) {
+            // Zoomed out over a sparse catalog: walking the occupied cells is cheaper.
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                int x = (int) (entry.getKey() >>> 32);
+                int y = (int) (long) entry.getKey();
+                if (x >= x0 && x <= x1 && y >= y0 && y <= y1) {
+                    out.add(entry.getValue().toCluster());
+                }
+            }
+            return;
+        }
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                Cell cell = cells.get(key(x, y));
+                if (cell != null) {
+                    out.add(cell.toCluster());
+                }
+            }
+        }
+    }
+
+    private void add(CoffeeShop shop) {
+        Point point = new Point(shop.getId(), Math.round(shop.getLat() * COORD_SCALE),
+                Math.round(shop.getLng() * COORD_SCALE), Math.round(shop.getRating() * RATING_SCALE));
+        points.put(point.id(), point);
+        for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+            int level = level(zoom);
+            cellsAt(level).computeIfAbsent(cellKey(point, level), k -> new Cell()).add(point, 1);
+        }
+    }
+
+    private void remove(Long id) {
+        Point point = points.remove(id);
+        if (point == null) {
+            return;
+        }
+        for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+            int level = level(zoom);
+            long key = cellKey(point, level);
+            Map<Long, Cell> cells = cellsAt(level);
+            Cell cell = cells.get(key);
+            if (cell != null) {
+                cell.add(point, -1);
+                if (cell.count == 0) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    // From the stored coordinates, so a shop is always removed from the cell it was added to.
+    private static long cellKey(Point point, int level) {
+        return key(x(point.lng() / COORD_SCALE, level), y(point.lat() / COORD_SCALE, level));
+    }
+
+    private Map<Long, Cell> cellsAt(int level) {
+        return levels.get(level - SUBDIVISION_BITS - MIN_ZOOM);
+    }
+
+    private static int level(int zoom) {
+        return Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom)) + SUBDIVISION_BITS;
+    }
+
+    private static int size(int level) {
+        return 1 << level;
+    }
+
+    private static int x(double lng, int level) {
+        double x = (lng + 180.0) / 360.0 * size(level);
+        return clamp((int) Math.floor(x), level);
+    }
+
+    private static int y(double lat, int level) {
+        double clamped = Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, lat));
+        double rad = Math.toRadians(clamped);
+        double y = (1.0 - Math.log(Math.tan(rad) + 1.0 / Math.cos(rad)) / Math.PI) / 2.0 * size(level);
+        return clamp((int) Math.floor(y), level);
+    }
+
+    private static int clamp(int v, int level) {
+        return Math.max(0, Math.min(size(level) - 1, v));
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    // Coordinates in 1e-7 degrees, rating in thousandths.
+    private record Point(long id, long lat, long lng, long rating) {}
+
+    private static final class Cell {
+        int count;
+        long sumLat;
+        long sumLng;
+        long sumRating;
+        // With count == 1 this is exactly the id of the only shop in the cell.
+        long sumIds;
+
+        void add(Point point, int sign) {
+            count += sign;
+            sumLat += sign * point.lat();
+            sumLng += sign * point.lng();
+            sumRating += sign * point.rating();
+            sumIds += sign * point.id();
+        }
+
+        CoffeeShopCluster toCluster() {
+            return new CoffeeShopCluster(
+                    sumLat / COORD_SCALE / count,
+                    sumLng / COORD_SCALE / count,
+                    count,
+                    sumRating / RATING_SCALE / count,
+                    count == 1 ? sumIds : null
+            );
+        }
+    }
+}
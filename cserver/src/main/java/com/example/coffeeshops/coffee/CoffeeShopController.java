@@ -1,20 +1,43 @@
 package com.example.coffeeshops.coffee;
 
+import com.example.coffeeshops.coffee.dto.CatalogChanges;
+import com.example.coffeeshops.coffee.dto.CoffeeShopCluster;
 import com.example.coffeeshops.coffee.dto.CoffeeShopCreateRequest;
+import com.example.coffeeshops.coffee.dto.CoffeeShopImportReport;
 import com.example.coffeeshops.coffee.dto.CoffeeShopRateRequest;
+import com.example.coffeeshops.coffee.dto.CoffeeShopRatingSummary;
+import com.example.coffeeshops.coffee.dto.CoffeeShopSearchResult;
+import com.example.coffeeshops.coffee.dto.CoffeeShopStats;
+import com.example.coffeeshops.coffee.dto.NearbyCoffeeShop;
+import com.example.coffeeshops.user.AuthenticatedUser;
 import com.example.coffeeshops.user.User;
 import com.example.coffeeshops.user.UserRepository;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 
 @RestController
@@ -22,27 +45,227 @@ import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 @CrossOrigin(origins = "*") // ⚠️ Разрешаем Flutter подключаться
 public class CoffeeShopController {
 
+    private static final List<String> PAGE_FIELDS = List.of("id", "name", "address", "lat", "lng", "rating");
+    private static final List<String> PIN_FIELDS = List.of("id", "name", "lat", "lng");
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final long MAX_CLUSTER_CELLS = 20_000;
+    private static final int MAX_CHANGES = 5_000;
+    // Change log version the catalog body is at least as new as; the starting point for /changes.
+    private static final String CATALOG_VERSION_HEADER = "X-Catalog-Version";
+
     private final CoffeeShopService service;
+    private final CoffeeShopImporter importer;
     private final UserRepository userRepository;
+    // Lets clients without a token act by naming an email; off unless an old client still needs it.
+    private final boolean legacyEmailParams;
 
-    public CoffeeShopController(CoffeeShopService service, UserRepository userRepository) {
+    public CoffeeShopController(
+            CoffeeShopService service,
+            CoffeeShopImporter importer,
+            UserRepository userRepository,
+            @Value("${app.auth.legacy-email-params:false}") boolean legacyEmailParams
+    ) {
         this.service = service;
+        this.importer = importer;
         this.userRepository = userRepository;
+        this.legacyEmailParams = legacyEmailParams;
     }
 
+    // Served from a pre-serialized snapshot; clients revalidate with If-None-Match.
     @GetMapping
-    public List<CoffeeShop> getAll() {
-        return service.getAllShops();
+    public ResponseEntity<byte[]> getAll(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        // Read before the snapshot: replaying a change the body already contains is harmless.
+        String version = Long.toString(service.getCatalogVersion());
+        CatalogSnapshot snapshot = service.getCatalogSnapshot();
+        boolean gzip = CatalogSnapshot.acceptsGzip(acceptEncoding);
+        String etag = snapshot.etag(gzip);
+
+        if (snapshot.matches(ifNoneMatch, gzip)) {
+            return ResponseEntity.status(NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(CATALOG_VERSION_HEADER, version)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .header(CATALOG_VERSION_HEADER, version)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+        }
+        return response.body(snapshot.getJson());
+    }
+
+    // One JSON object per line, streamed from a database cursor; gzip when the client accepts it.
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        boolean gzip = CatalogSnapshot.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+                service.exportCatalog(compressed);
+                compressed.finish();
+            } else {
+                service.exportCatalog(out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    // Keyset pagination: ?after=<last id>&limit=&fields=id,name,lat,lng
+    @GetMapping(params = "limit")
+    public Map<String, Object> getPage(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam int limit,
+            @RequestParam(required = false) List<String> fields
+    ) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(BAD_REQUEST, "Лимит должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (fields != null) {
+            for (String field : fields) {
+                if (!PAGE_FIELDS.contains(field)) {
+                    throw new ResponseStatusException(BAD_REQUEST, "Неизвестное поле: " + field);
+                }
+            }
+        }
+
+        // Both projections select only their columns; the pin one is narrower still.
+        List<String> selected = fields == null ? PAGE_FIELDS : fields;
+        // One extra row tells us whether there is a next page.
+        List<?> items;
+        Long lastId;
+        if (PIN_FIELDS.containsAll(selected)) {
+            List<CoffeeShopPin> pins = service.getPinPage(after, limit + 1);
+            items = pins.stream().limit(limit).map(p -> project(selected, pinField(p))).toList();
+            lastId = pins.size() > limit ? pins.get(limit - 1).getId() : null;
+        } else {
+            List<CoffeeShopListItem> rows = service.getPage(after, limit + 1);
+            items = rows.stream().limit(limit).map(r -> project(selected, rowField(r))).toList();
+            lastId = rows.size() > limit ? rows.get(limit - 1).getId() : null;
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("items", items);
+        response.put("nextAfter", lastId);
+        return response;
+    }
+
+    @GetMapping("/nearby")
+    public List<NearbyCoffeeShop> nearby(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(defaultValue = "10") double radiusKm,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180) {
+            throw new ResponseStatusException(BAD_REQUEST, "Некорректные координаты");
+        }
+        if (radiusKm <= 0 || radiusKm > 100) {
+            throw new ResponseStatusException(BAD_REQUEST, "Радиус должен быть в диапазоне (0; 100] км");
+        }
+        if (limit < 1 || limit > 100) {
+            throw new ResponseStatusException(BAD_REQUEST, "Лимит должен быть от 1 до 100");
+        }
+        return service.findNearby(lat, lng, radiusKm, limit);
+    }
+
+    @GetMapping("/search")
+    public List<CoffeeShopSearchResult> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        if (q.length() > 100) {
+            throw new ResponseStatusException(BAD_REQUEST, "Запрос слишком длинный");
+        }
+        if (limit < 1 || limit > 50) {
+            throw new ResponseStatusException(BAD_REQUEST, "Лимит должен быть от 1 до 50");
+        }
+        return service.search(q, limit);
+    }
+
+    // Delta sync: upserts and deletes after the given version; resyncRequired means reload the catalog.
+    @GetMapping("/changes")
+    public CatalogChanges changes(
+            @RequestParam long since,
+            @RequestParam(defaultValue = "1000") int limit
+    ) {
+        if (limit < 1 || limit > MAX_CHANGES) {
+            throw new ResponseStatusException(BAD_REQUEST, "Лимит должен быть от 1 до " + MAX_CHANGES);
+        }
+        return service.getChanges(since, limit);
+    }
+
+    // created / rating-updated / deleted events; a dropped client should reload the catalog.
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events() {
+        return service.openEventStream()
+                .orElseThrow(() -> new ResponseStatusException(SERVICE_UNAVAILABLE, "Слишком много подключений"));
+    }
+
+    @GetMapping("/top")
+    public List<CoffeeShop> top(@RequestParam(defaultValue = "10") int n) {
+        if (n < 1 || n > 100) {
+            throw new ResponseStatusException(BAD_REQUEST, "n должен быть от 1 до 100");
+        }
+        return service.getTopRated(n);
+    }
+
+    @GetMapping("/stats")
+    public CoffeeShopStats stats() {
+        return service.getStats();
+    }
+
+    // bbox=minLng,minLat,maxLng,maxLat; minLng > maxLng means the viewport crosses the antimeridian.
+    @GetMapping("/clusters")
+    public List<CoffeeShopCluster> clusters(
+            @RequestParam List<Double> bbox,
+            @RequestParam int zoom
+    ) {
+        if (bbox.size() != 4 || bbox.contains(null)) {
+            throw new ResponseStatusException(BAD_REQUEST, "bbox должен содержать minLng,minLat,maxLng,maxLat");
+        }
+        double minLng = bbox.get(0);
+        double minLat = bbox.get(1);
+        double maxLng = bbox.get(2);
+        double maxLat = bbox.get(3);
+        if (minLat < -90 || maxLat > 90 || minLat > maxLat
+                || minLng < -180 || minLng > 180 || maxLng < -180 || maxLng > 180) {
+            throw new ResponseStatusException(BAD_REQUEST, "Некорректные координаты bbox");
+        }
+        if (zoom < 0 || zoom > 22) {
+            throw new ResponseStatusException(BAD_REQUEST, "zoom должен быть от 0 до 22");
+        }
+        if (service.countClusterCells(minLng, minLat, maxLng, maxLat, zoom) > MAX_CLUSTER_CELLS) {
+            throw new ResponseStatusException(BAD_REQUEST, "Слишком большая область для этого масштаба");
+        }
+        return service.findClusters(minLng, minLat, maxLng, maxLat, zoom);
     }
 
     @PostMapping
     public Map<String, Object> create(
-            @RequestParam String adminEmail,
+            @AuthenticationPrincipal AuthenticatedUser principal,
+            @RequestParam(required = false) String adminEmail,
             @Valid @RequestBody CoffeeShopCreateRequest request
     ) {
-        if (!isAdmin(adminEmail)) {
-            throw new ResponseStatusException(FORBIDDEN, "Доступ запрещен");
-        }
+        requireAdmin(principal, adminEmail);
 
         CoffeeShop shop = new CoffeeShop(
                 request.getName(),
@@ -59,14 +282,36 @@ public class CoffeeShopController {
         return response;
     }
 
+    // Streams the body: CSV with a name,address,lat,lng,rating header, or one JSON object per line.
+    @PostMapping("/import")
+    public Map<String, Object> importShops(
+            @AuthenticationPrincipal AuthenticatedUser principal,
+            @RequestParam(required = false) String adminEmail,
+            @RequestParam(defaultValue = "csv") String format,
+            InputStream body
+    ) {
+        requireAdmin(principal, adminEmail);
+        CoffeeShopImporter.Format parsed = switch (format.toLowerCase()) {
+            case "csv" -> CoffeeShopImporter.Format.CSV;
+            case "ndjson" -> CoffeeShopImporter.Format.NDJSON;
+            default -> throw new ResponseStatusException(BAD_REQUEST, "Формат должен быть csv или ndjson");
+        };
+
+        CoffeeShopImportReport report = importer.importShops(body, parsed);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("report", report);
+        return response;
+    }
+
     @DeleteMapping("/{id}")
     public Map<String, Object> delete(
+            @AuthenticationPrincipal AuthenticatedUser principal,
             @PathVariable Long id,
-            @RequestParam String adminEmail
+            @RequestParam(required = false) String adminEmail
     ) {
-        if (!isAdmin(adminEmail)) {
-            throw new ResponseStatusException(FORBIDDEN, "Доступ запрещен");
-        }
+        requireAdmin(principal, adminEmail);
 
         boolean deleted = service.deleteShop(id);
         if (!deleted) {
@@ -81,15 +326,14 @@ public class CoffeeShopController {
 
     @PostMapping("/{id}/rate")
     public Map<String, Object> rateCoffeeShop(
+            @AuthenticationPrincipal AuthenticatedUser principal,
             @PathVariable Long id,
-            @RequestParam String userEmail,
+            @RequestParam(required = false) String userEmail,
             @Valid @RequestBody CoffeeShopRateRequest request
     ) {
-        if (!userRepository.existsByEmail(userEmail)) {
-            throw new ResponseStatusException(UNAUTHORIZED, "Пользователь не найден");
-        }
+        Long userId = principal != null ? principal.id() : userIdByEmail(userEmail);
 
-        CoffeeShop updated = service.rateShop(id, request.getRating())
+        CoffeeShop updated = service.rateShop(id, userId, request.getRating())
                 .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Кофейня не найдена"));
 
         Map<String, Object> response = new HashMap<>();
@@ -98,6 +342,60 @@ public class CoffeeShopController {
         return response;
     }
 
+    @GetMapping("/{id}/ratings")
+    public CoffeeShopRatingSummary ratingSummary(@PathVariable Long id) {
+        return service.getRatingSummary(id)
+                .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Кофейня не найдена"));
+    }
+
+    private static Map<String, Object> project(List<String> fields, Function<String, Object> accessor) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String field : PAGE_FIELDS) {
+            if (fields.contains(field)) {
+                row.put(field, accessor.apply(field));
+            }
+        }
+        return row;
+    }
+
+    private static Function<String, Object> pinField(CoffeeShopPin pin) {
+        return field -> switch (field) {
+            case "id" -> pin.getId();
+            case "name" -> pin.getName();
+            case "lat" -> pin.getLat();
+            default -> pin.getLng();
+        };
+    }
+
+    private static Function<String, Object> rowField(CoffeeShopListItem row) {
+        return field -> switch (field) {
+            case "id" -> row.getId();
+            case "name" -> row.getName();
+            case "address" -> row.getAddress();
+            case "lat" -> row.getLat();
+            case "lng" -> row.getLng();
+            default -> row.getRating();
+        };
+    }
+
+    // A bearer token answers from memory; the email parameter counts only with app.auth.legacy-email-params.
+    private void requireAdmin(AuthenticatedUser principal, String adminEmail) {
+        boolean admin = principal != null
+                ? principal.isAdmin()
+                : legacyEmailParams && adminEmail != null && isAdmin(adminEmail);
+        if (!admin) {
+            throw new ResponseStatusException(FORBIDDEN, "Доступ запрещен");
+        }
+    }
+
+    private Long userIdByEmail(String email) {
+        if (!legacyEmailParams || email == null) {
+            throw new ResponseStatusException(UNAUTHORIZED, "Требуется вход");
+        }
+        return userRepository.findIdByEmail(email)
+                .orElseThrow(() -> new ResponseStatusException(UNAUTHORIZED, "Пользователь не найден"));
+    }
+
     private boolean isAdmin(String email) {
         Optional<User> user = userRepository.findByEmail(email);
         return user.map(u -> "ADMIN".equals(u.getRole())).orElse(false);
@@ -0,0 +1,368 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopCreateRequest;
+import com.example.coffeeshops.coffee.dto.CoffeeShopImportReport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CONFLICT;
+
+/**
+ * Streams a CSV or NDJSON file line by line, validates every row with the same constraints
+ * as {@link CoffeeShopCreateRequest}, skips (name, address) pairs that already exist and
+ * inserts the rest with batched JDBC statements, one transaction per batch together with its
+ * change log entries.
+ */
+@Service
+public class CoffeeShopImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(CoffeeShopImporter.class);
+
+    public enum Format { CSV, NDJSON }
+
+    private static final String INSERT_SQL =
+            "INSERT INTO coffee_shop (name, address, lat, lng, rating, seed_rating, rating_sum, rating_count,"
+                    + " stars_1, stars_2, stars_3, stars_4, stars_5) VALUES (?, ?, ?, ?, ?, ?, 0, 0, 0, 0, 0, 0, 0)";
+    private static final List<String> CSV_COLUMNS = List.of("name", "address", "lat", "lng", "rating");
+    private static final int MAX_REPORTED_ERRORS = 100;
+    // A quoted field longer than this is taken for a stray quote rather than a multi-line value.
+    private static final int MAX_RECORD_LINES = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final CatalogChangeLog changeLog;
+    private final List<CoffeeShopChangeListener> listeners;
+    private final int batchSize;
+    // One import at a time, otherwise two files could insert the same pair.
+    private final ReentrantLock importLock = new ReentrantLock();
+
+    public CoffeeShopImporter(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            Validator validator,
+            ObjectMapper objectMapper,
+            CatalogChangeLog changeLog,
+            List<CoffeeShopChangeListener> listeners,
+            @Value("${app.import.batch-size:1000}") int batchSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.changeLog = changeLog;
+        this.listeners = listeners;
+        this.batchSize = batchSize;
+    }
+
+    public CoffeeShopImportReport importShops(InputStream input, Format format) {
+        if (!importLock.tryLock()) {
+            throw new ResponseStatusException(CONFLICT, "Импорт уже выполняется");
+        }
+        try {
+            return run(input, format);
+        } catch (IOException e) {
+            throw new ResponseStatusException(BAD_REQUEST, "Не удалось прочитать файл");
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    private CoffeeShopImportReport run(InputStream input, Format format) throws IOException {
+        long started = System.nanoTime();
+        Import state = new Import(existingKeys());
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        // Lines read ahead for a record whose quote never closed; they are parsed again as rows.
+        Deque<String> replay = new ArrayDeque<>();
+        Map<String, Integer> columns = null;
+        String line;
+        long lineNo = 0;
+        while ((line = replay.isEmpty() ? reader.readLine() : replay.poll()) != null) {
+            lineNo++;
+            long firstLine = lineNo;
+            if (lineNo == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (format == Format.CSV && hasOpenQuote(line)) {
+                // A quoted field may span lines: keep reading until its quote is closed.
+                List<String> record = new ArrayList<>();
+                record.add(line);
+                boolean open = true;
+                while (open && record.size() < MAX_RECORD_LINES) {
+                    String next = replay.isEmpty() ? reader.readLine() : replay.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    record.add(next);
+                    open = hasOpenQuote(next) != open;
+                }
+                if (open) {
+                    // A stray quote: report it and read the lines after it as rows of their own.
+                    for (int i = record.size() - 1; i > 0; i--) {
+                        replay.push(record.get(i));
+                    }
+                    state.fail(firstLine, "Незакрытая кавычка");
+                    continue;
+                }
+                lineNo += record.size() - 1;
+                line = String.join("\n", record);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && columns == null) {
+                columns = csvHeader(line);
+                continue;
+            }
+
+            CoffeeShopCreateRequest row;
+            try {
+                row = format == Format.CSV ? csvRow(line, columns) : objectMapper.readValue(line, CoffeeShopCreateRequest.class);
+            } catch (IllegalArgumentException | JsonProcessingException e) {
+                state.fail(firstLine, format == Format.CSV ? e.getMessage() : "Некорректный JSON");
+                continue;
+            }
+            state.accept(firstLine, row);
+            if (state.batch.size() >= batchSize) {
+                flush(state);
+            }
+        }
+        flush(state);
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        log.info("Imported {} coffee shops ({} duplicates, {} failed) in {} ms",
+                state.imported, state.duplicates, state.failed, elapsedMs);
+        return new CoffeeShopImportReport(state.imported, state.duplicates, state.failed, elapsedMs, state.errors);
+    }
+
+    private void flush(Import state) {
+        List<PendingRow> batch = state.batch;
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<CoffeeShop> created = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                KeyHolder keys = new GeneratedKeyHolder();
+                jdbcTemplate.batchUpdate(
+                        con -> con.prepareStatement(INSERT_SQL, new String[]{"id"}),
+                        new BatchPreparedStatementSetter() {
+                            @Override
+                            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                                CoffeeShop shop = batch.get(i).shop();
+                                ps.setString(1, shop.getName());
+                                ps.setString(2, shop.getAddress());
+                                ps.setDouble(3, shop.getLat());
+                                ps.setDouble(4, shop.getLng());
+                                ps.setDouble(5, shop.getRating());
+                                ps.setDouble(6, shop.getRating());
+                            }
+
+                            @Override
+                            public int getBatchSize() {
+                                return batch.size();
+                            }
+                        },
+                        keys);
+                List<Map<String, Object>> ids = keys.getKeyList();
+                for (int i = 0; i < batch.size(); i++) {
+                    CoffeeShop shop = batch.get(i).shop();
+                    shop.setId(((Number) ids.get(i).values().iterator().next()).longValue());
+                    created.add(shop);
+                }
+                changeLog.record(created, CatalogChange.UPSERT);
+            });
+        } catch (DataAccessException e) {
+            log.warn("Import batch at lines {}-{} failed", batch.get(0).line(), batch.get(batch.size() - 1).line(), e);
+            for (PendingRow row : batch) {
+                state.fail(row.line(), "Не удалось сохранить строку");
+            }
+            // Nothing was stored, so later copies of these rows are not duplicates.
+            state.pending.clear();
+            batch.clear();
+            return;
+        }
+        state.keys.addAll(state.pending);
+        state.pending.clear();
+        listeners.forEach(l -> l.onCreatedAll(created));
+        state.imported += batch.size();
+        batch.clear();
+    }
+
+    private Set<String> existingKeys() {
+        Set<String> keys = new HashSet<>();
+        jdbcTemplate.query("SELECT name, address FROM coffee_shop",
+                rs -> {
+                    keys.add(key(rs.getString(1), rs.getString(2)));
+                });
+        return keys;
+    }
+
+    private static String key(String name, String address) {
+        return CatalogText.normalize(name) + '\n' + CatalogText.normalize(address);
+    }
+
+    private static Map<String, Integer> csvHeader(String line) {
+        List<String> header = csvFields(line);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(), i);
+        }
+        for (String column : CSV_COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new ResponseStatusException(BAD_REQUEST, "В заголовке CSV нет колонки " + column);
+            }
+        }
+        return columns;
+    }
+
+    private static CoffeeShopCreateRequest csvRow(String line, Map<String, Integer> columns) {
+        List<String> fields = csvFields(line);
+        CoffeeShopCreateRequest row = new CoffeeShopCreateRequest();
+        row.setName(field(fields, columns, "name"));
+        row.setAddress(field(fields, columns, "address"));
+        row.setLat(number(fields, columns, "lat"));
+        row.setLng(number(fields, columns, "lng"));
+        row.setRating(number(fields, columns, "rating"));
+        return row;
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String column) {
+        int index = columns.get(column);
+        return index < fields.size() ? fields.get(index).trim() : null;
+    }
+
+    private static Double number(List<String> fields, Map<String, Integer> columns, String column) {
+        String value = field(fields, columns, column);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + ": некорректное число");
+        }
+    }
+
+    // RFC 4180 fields of one record: quoted values may contain commas, line breaks and "" escapes.
+    static List<String> csvFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Незакрытая кавычка");
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private record PendingRow(long line, CoffeeShop shop) {}
+
+    // Odd number of quote characters: "" escapes come in pairs and do not change the parity.
+    // Called once per physical line, so a record's parity is the XOR of its lines.
+    static boolean hasOpenQuote(CharSequence text) {
+        boolean open = false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    private final class Import {
+        // Pairs in the table, committed by this import or before it.
+        final Set<String> keys;
+        // Pairs of the batch being filled; they join keys only once the batch has committed.
+        final Set<String> pending = new HashSet<>();
+        final List<PendingRow> batch = new ArrayList<>();
+        final List<CoffeeShopImportReport.RowError> errors = new ArrayList<>();
+        long imported;
+        long duplicates;
+        long failed;
+
+        Import(Set<String> keys) {
+            this.keys = keys;
+        }
+
+        void accept(long line, CoffeeShopCreateRequest row) {
+            Set<ConstraintViolation<CoffeeShopCreateRequest>> violations = validator.validate(row);
+            if (!violations.isEmpty()) {
+                fail(line, violations.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                return;
+            }
+            String key = key(row.getName(), row.getAddress());
+            if (keys.contains(key) || !pending.add(key)) {
+                duplicates++;
+                return;
+            }
+            batch.add(new PendingRow(line, new CoffeeShop(
+                    row.getName(), row.getAddress(), row.getLat(), row.getLng(), row.getRating())));
+        }
+
+        void fail(long line, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new CoffeeShopImportReport.RowError(line, message));
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopStats;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Shops ordered by rating plus running catalog totals, kept up to date from change
+ * events so that top-N and dashboard reads never sort or scan the catalog.
+ */
+@Component
+public class CoffeeShopLeaderboard implements CoffeeShopChangeListener {
+
+    private static final Comparator<CoffeeShop> BY_RATING = Comparator
+            .comparingDouble(CoffeeShop::getRating).reversed()
+            .thenComparing(CoffeeShop::getId);
+    // Ratings are summed in thousandths, like the cluster index does, so that adding and removing
+    // a shop's rating a million times leaves the sum exactly where it was.
+    private static final double RATING_SCALE = 1000;
+
+    private final NavigableSet<CoffeeShop> ranking = new TreeSet<>(BY_RATING);
+    private final Map<Long, CoffeeShop> byId = new HashMap<>();
+    private long ratingSum;
+    private long votes;
+    // Shops per rounded rating 0..5, where 0 means not rated yet.
+    private final long[] histogram = new long[6];
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        lock.writeLock().lock();
+        try {
+            ranking.clear();
+            byId.clear();
+            ratingSum = 0;
+            votes = 0;
+            Arrays.fill(histogram, 0);
+            shops.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        onUpdated(shop);
+    }
+
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+            add(shop);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<CoffeeShop> top(int n) {
+        lock.readLock().lock();
+        try {
+            List<CoffeeShop> result = new ArrayList<>(Math.min(n, ranking.size()));
+            Iterator<CoffeeShop> it = ranking.iterator();
+            while (result.size() < n && it.hasNext()) {
+                result.add(it.next());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public CoffeeShopStats stats() {
+        lock.readLock().lock();
+        try {
+            int count = byId.size();
+            return new CoffeeShopStats(count, count > 0 ? ratingSum / RATING_SCALE / count : 0, votes, histogram);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(CoffeeShop shop) {
+        byId.put(shop.getId(), shop);
+        ranking.add(shop);
+        ratingSum += Math.round(shop.getRating() * RATING_SCALE);
+        votes += shop.getRatingCount();
+        histogram[bucket(shop.getRating())]++;
+    }
+
+    private void remove(Long id) {
+        CoffeeShop shop = byId.remove(id);
+        if (shop == null) {
+            return;
+        }
+        ranking.remove(shop);
+        ratingSum -= Math.round(shop.getRating() * RATING_SCALE);
+        votes -= shop.getRatingCount();
+        histogram[bucket(shop.getRating())]--;
+    }
+
+    private static int bucket(double rating) {
+        return (int) Math.max(0, Math.min(5, Math.round(rating)));
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.coffeeshops.coffee;
+
+// Closed projection with every listing field, so a page never hydrates CoffeeShop entities.
+public interface CoffeeShopListItem {
+    Long getId();
+    String getName();
+    String getAddress();
+    double getLat();
+    double getLng();
+    double getRating();
+}
@@ -0,0 +1,9 @@
+package com.example.coffeeshops.coffee;
+
+// Closed projection: Spring Data selects only these columns instead of hydrating CoffeeShop.
+public interface CoffeeShopPin {
+    Long getId();
+    String getName();
+    double getLat();
+    double getLng();
+}
@@ -0,0 +1,64 @@
+package com.example.coffeeshops.coffee;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+
+// One vote per user and shop; re-rating replaces the previous value.
+@Entity
+@Table(
+        name = "coffee_shop_rating",
+        uniqueConstraints = @UniqueConstraint(name = "uk_rating_user_shop", columnNames = {"user_id", "shop_id"}),
+        indexes = @Index(name = "idx_rating_shop", columnList = "shop_id")
+)
+public class CoffeeShopRating {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    // Votes go with their shop, and a vote for a shop deleted meanwhile fails to insert.
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "shop_id", insertable = false, updatable = false,
+            foreignKey = @ForeignKey(name = "fk_rating_shop"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private CoffeeShop shop;
+
+    @Column(name = "rating_value", nullable = false)
+    private double value;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    // Two concurrent re-rates by the same user must not both apply their delta.
+    @Version
+    private long version;
+
+    public CoffeeShopRating() {}
+
+    public CoffeeShopRating(Long userId, Long shopId, double value) {
+        this.userId = userId;
+        this.shopId = shopId;
+        this.value = value;
+        this.updatedAt = Instant.now();
+    }
+
+    public Long getId() { return id; }
+    public Long getUserId() { return userId; }
+    public Long getShopId() { return shopId; }
+    public double getValue() { return value; }
+    public Instant getUpdatedAt() { return updatedAt; }
+
+    public void setValue(double value) {
+        this.value = value;
+        this.updatedAt = Instant.now();
+    }
+}
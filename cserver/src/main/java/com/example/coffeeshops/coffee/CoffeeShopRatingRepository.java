@@ -0,0 +1,20 @@
+package com.example.coffeeshops.coffee;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface CoffeeShopRatingRepository extends JpaRepository<CoffeeShopRating, Long> {
+
+    Optional<CoffeeShopRating> findByUserIdAndShopId(Long userId, Long shopId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from CoffeeShopRating r where r.shopId = :shopId")
+    int deleteByShopId(Long shopId);
+}
@@ -1,9 +1,38 @@
 package com.example.coffeeshops.coffee;
 
+import org.springframework.data.domain.Limit;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 
 @Repository
 public interface CoffeeShopRepository extends JpaRepository<CoffeeShop, Long> {
+
+    // Keyset page: rows after the given id, with a dynamic projection type.
+    <T> List<T> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit, Class<T> type);
+
+    // Exclusive row lock for a delete: of two concurrent deletes only one finds the shop. Votes
+    // take no lock on the shop; the foreign key on coffee_shop_rating keeps them consistent.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from CoffeeShop s where s.id = :id")
+    Optional<CoffeeShop> lockForDelete(Long id);
+
+    // Forward-only cursor for exports; must be consumed inside a transaction and closed.
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    Stream<CoffeeShop> streamAllByOrderByIdAsc();
 }
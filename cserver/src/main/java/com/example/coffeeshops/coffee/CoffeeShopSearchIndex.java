@@ -0,0 +1,276 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopSearchResult;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram inverted index over shop name and address. Word-padded trigrams give typo
+ * tolerance; leaving the last query word open at the end turns it into a prefix match
+ * for type-ahead. Deleted shops are tombstoned and the index is compacted lazily.
+ */
+@Component
+public class CoffeeShopSearchIndex implements CoffeeShopChangeListener {
+
+    // A shop matches when it shares at least this share of the query trigrams.
+    private static final double MIN_SIMILARITY = 0.5;
+    private static final double PREFIX_BONUS = 0.3;
+    private static final double RATING_WEIGHT = 0.1;
+    private static final int MAX_PREFIX_SCAN = 5_000;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final List<Doc> docs = new ArrayList<>();
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private final Map<String, IntList> postings = new HashMap<>();
+    private int tombstones;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        lock.writeLock().lock();
+        try {
+            rebuild(shops);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(shop.getId());
+            if (slot != null) {
+                docs.get(slot).shop = shop;
+            } else {
+                add(shop);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Only the rating can change after creation, and it is not indexed text.
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(shop.getId());
+            if (slot != null) {
+                docs.get(slot).shop = shop;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(shop.getId());
+            if (slot == null) {
+                return;
+            }
+            docs.set(slot, null);
+            tombstones++;
+            if (tombstones > 1_000 && tombstones > slots.size() / 4) {
+                rebuild(docs.stream().filter(d -> d != null).map(d -> d.shop).toList());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<CoffeeShopSearchResult> search(String query, int limit) {
+        String normalized = CatalogText.normalize(query);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        // Trailing whitespace means the user finished the last word.
+        boolean typing = !Character.isWhitespace(query.charAt(query.length() - 1));
+        String[] words = normalized.split(" ");
+        String lastWord = words[words.length - 1];
+
+        Set<String> grams = new LinkedHashSet<>();
+        Set<String> lastWordGrams = new LinkedHashSet<>();
+        for (int i = 0; i < words.length; i++) {
+            boolean open = typing && i == words.length - 1;
+            addTrigrams(" " + words[i] + (open ? "" : " "), open ? lastWordGrams : grams);
+        }
+        grams.addAll(lastWordGrams);
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Hit::score));
+        lock.readLock().lock();
+        try {
+            if (grams.isEmpty()) {
+                scanForPrefix(lastWord, limit, best);
+            } else {
+                accumulate(grams, lastWordGrams, limit, best);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<CoffeeShopSearchResult> results = new ArrayList<>(best.size());
+        best.stream()
+                .sorted(Comparator.comparingDouble(Hit::score).reversed())
+                .forEach(h -> results.add(new CoffeeShopSearchResult(h.shop(), h.score())));
+        return results;
+    }
+
+    // Counts, per shop, how many query trigrams its posting lists contain.
+    private void accumulate(Set<String> grams, Set<String> lastWordGrams, int limit, PriorityQueue<Hit> best) {
+        Scratch scratch = SCRATCH.get();
+        scratch.ensure(docs.size());
+        int[] matched = scratch.matched;
+        int[] lastMatched = scratch.lastMatched;
+        int[] touched = scratch.touched;
+        int touchedCount = 0;
+
+        for (String gram : grams) {
+            IntList list = postings.get(gram);
+            if (list == null) {
+                continue;
+            }
+            boolean last = lastWordGrams.contains(gram);
+            for (int j = 0; j < list.size; j++) {
+                int slot = list.values[j];
+                if (matched[slot]++ == 0) {
+                    touched[touchedCount++] = slot;
+                }
+                if (last) {
+                    lastMatched[slot]++;
+                }
+            }
+        }
+
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            double similarity = (double) matched[slot] / grams.size();
+            // Every trigram of the unfinished word is present: treat it as a prefix hit.
+            boolean prefix = !lastWordGrams.isEmpty() && lastMatched[slot] == lastWordGrams.size();
+            matched[slot] = 0;
+            lastMatched[slot] = 0;
+            if (similarity < MIN_SIMILARITY && !prefix) {
+                continue;
+            }
+            double textScore = similarity + (prefix ? PREFIX_BONUS : 0);
+            // Even a 5-star shop with this text score would not make the top list.
+            if (best.size() == limit && textScore + RATING_WEIGHT <= best.peek().score()) {
+                continue;
+            }
+            Doc doc = docs.get(slot);
+            if (doc != null) {
+                offer(best, limit, doc.shop, textScore);
+            }
+        }
+    }
+
+    // One-letter query: no trigrams to look up, so check word starts directly on a bounded scan.
+    private void scanForPrefix(String lastWord, int limit, PriorityQueue<Hit> best) {
+        String start = " " + lastWord;
+        int scanned = 0;
+        for (int slot = 0; slot < docs.size() && scanned < MAX_PREFIX_SCAN; slot++) {
+            Doc doc = docs.get(slot);
+            if (doc == null) {
+                continue;
+            }
+            scanned++;
+            if (doc.text.contains(start)) {
+                offer(best, limit, doc.shop, PREFIX_BONUS);
+            }
+        }
+    }
+
+    private static void offer(PriorityQueue<Hit> best, int limit, CoffeeShop shop, double textScore) {
+        double score = textScore + RATING_WEIGHT * shop.getRating() / 5.0;
+        if (best.size() < limit) {
+            best.add(new Hit(shop, score));
+        } else if (score > best.peek().score()) {
+            best.poll();
+            best.add(new Hit(shop, score));
+        }
+    }
+
+    private void rebuild(List<CoffeeShop> shops) {
+        docs.clear();
+        slots.clear();
+        postings.clear();
+        tombstones = 0;
+        shops.forEach(this::add);
+    }
+
+    private void add(CoffeeShop shop) {
+        String text = " " + (CatalogText.normalize(shop.getName()) + " " + CatalogText.normalize(shop.getAddress()))
+                .trim() + " ";
+        int slot = docs.size();
+        docs.add(new Doc(shop, text));
+        slots.put(shop.getId(), slot);
+
+        Set<String> grams = new LinkedHashSet<>();
+        addTrigrams(text, grams);
+        for (String gram : grams) {
+            postings.computeIfAbsent(gram, g -> new IntList()).add(slot);
+        }
+    }
+
+    private static void addTrigrams(String text, Set<String> out) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            out.add(text.substring(i, i + 3));
+        }
+    }
+
+    private static final class Doc {
+        volatile CoffeeShop shop;
+        // Normalized "name address", padded with spaces on both sides.
+        final String text;
+
+        Doc(CoffeeShop shop, String text) {
+            this.shop = shop;
+            this.text = text;
+        }
+    }
+
+    private record Hit(CoffeeShop shop, double score) {}
+
+    // Per-thread counters indexed by doc slot; entries are reset after every query.
+    private static final class Scratch {
+        int[] matched = new int[0];
+        int[] lastMatched = new int[0];
+        int[] touched = new int[0];
+
+        void ensure(int size) {
+            if (matched.length < size) {
+                int capacity = Math.max(size, matched.length * 2);
+                matched = new int[capacity];
+                lastMatched = new int[capacity];
+                touched = new int[capacity];
+            }
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -1,41 +1,389 @@
 package com.example.coffeeshops.coffee;
 
+import com.example.coffeeshops.coffee.dto.CatalogChanges;
+import com.example.coffeeshops.coffee.dto.CoffeeShopCluster;
+import com.example.coffeeshops.coffee.dto.CoffeeShopRatingSummary;
+import com.example.coffeeshops.coffee.dto.CoffeeShopSearchResult;
+import com.example.coffeeshops.coffee.dto.CoffeeShopStats;
+import com.example.coffeeshops.coffee.dto.NearbyCoffeeShop;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 
 @Service
 public class CoffeeShopService {
 
+    private static final Logger log = LoggerFactory.getLogger(CoffeeShopService.class);
+
+    private static final String UPDATE_RATING_SQL =
+            "UPDATE coffee_shop SET rating = ?, rating_sum = ?, rating_count = ?,"
+                    + " stars_1 = ?, stars_2 = ?, stars_3 = ?, stars_4 = ?, stars_5 = ? WHERE id = ?";
+    private static final String UPDATE_SEED_SQL = "UPDATE coffee_shop SET seed_rating = ? WHERE id = ?";
+    // Per shop and whole star: the votes and their sum in thousandths, rounded like RatingEngine.milli.
+    private static final String VOTE_TOTALS_SQL =
+            "SELECT shop_id, ROUND(rating_value) AS star, COUNT(*) AS votes,"
+                    + " SUM(CAST(ROUND(rating_value * 1000) AS BIGINT)) AS milli"
+                    + " FROM coffee_shop_rating GROUP BY shop_id, ROUND(rating_value)";
+    private static final int VOTE_ATTEMPTS = 3;
+
     private final CoffeeShopRepository repository;
+    private final CoffeeShopRatingRepository ratingRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final RatingEngine ratingEngine;
+    private final CoffeeShopSpatialIndex spatialIndex;
+    private final CoffeeShopClusterIndex clusterIndex;
+    private final CatalogSnapshotCache snapshotCache;
+    private final CoffeeShopSearchIndex searchIndex;
+    private final CoffeeShopLeaderboard leaderboard;
+    private final CatalogEventHub eventHub;
+    private final CatalogChangeLog changeLog;
+    private final List<CoffeeShopChangeListener> listeners;
 
-    public CoffeeShopService(CoffeeShopRepository repository) {
+    public CoffeeShopService(
+            CoffeeShopRepository repository,
+            CoffeeShopRatingRepository ratingRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            EntityManager entityManager,
+            ObjectMapper objectMapper,
+            RatingEngine ratingEngine,
+            CoffeeShopSpatialIndex spatialIndex,
+            CoffeeShopClusterIndex clusterIndex,
+            CatalogSnapshotCache snapshotCache,
+            CoffeeShopSearchIndex searchIndex,
+            CoffeeShopLeaderboard leaderboard,
+            CatalogEventHub eventHub,
+            CatalogChangeLog changeLog,
+            List<CoffeeShopChangeListener> listeners
+    ) {
         this.repository = repository;
+        this.ratingRepository = ratingRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.ratingEngine = ratingEngine;
+        this.spatialIndex = spatialIndex;
+        this.clusterIndex = clusterIndex;
+        this.snapshotCache = snapshotCache;
+        this.searchIndex = searchIndex;
+        this.leaderboard = leaderboard;
+        this.eventHub = eventHub;
+        this.changeLog = changeLog;
+        this.listeners = listeners;
+    }
+
+    // data.sql runs after schema creation, so load the in-memory views once the app is ready.
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadCatalog() {
+        List<CoffeeShop> shops = repository.findAll();
+
+        // Rows from data.sql, or from before the seed column existed: data.sql re-applies the seed
+        // rating on every start, so the rating column is the seed (for older rows, the closest value left).
+        List<CoffeeShop> seeded = new ArrayList<>();
+        for (CoffeeShop shop : shops) {
+            if (shop.getSeedRating() == null) {
+                shop.setSeedRating(shop.getRating());
+                seeded.add(shop);
+            }
+        }
+        if (!seeded.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SEED_SQL, seeded.stream()
+                    .map(shop -> new Object[]{shop.getSeedRating(), shop.getId()})
+                    .toList());
+        }
+
+        // The vote table holds every vote, while the flushed aggregates miss the votes cast since
+        // the last flush before a crash. Rebuild them, and the mean data.sql just overwrote.
+        Map<Long, VoteTotals> votes = voteTotals();
+        List<CoffeeShop> restored = new ArrayList<>();
+        for (CoffeeShop shop : shops) {
+            if (restoreRating(shop, votes.getOrDefault(shop.getId(), new VoteTotals()))) {
+                restored.add(shop);
+            }
+        }
+        writeRatings(restored);
+        Set<CoffeeShop> changed = new LinkedHashSet<>(seeded);
+        changed.addAll(restored);
+        evictRatings(List.copyOf(changed));
+
+        listeners.forEach(l -> l.onReload(shops));
+    }
+
+    // Vote totals of one shop: count and sum in thousandths, and the 1-5 star histogram.
+    private static final class VoteTotals {
+        long count;
+        long milli;
+        final long[] stars = new long[5];
+
+        void add(long votes, long sum, int star) {
+            count += votes;
+            milli += sum;
+            stars[star] += votes;
+        }
+    }
+
+    private Map<Long, VoteTotals> voteTotals() {
+        Map<Long, VoteTotals> totals = new HashMap<>();
+        jdbcTemplate.query(VOTE_TOTALS_SQL, (RowCallbackHandler) rs -> totals
+                .computeIfAbsent(rs.getLong("shop_id"), id -> new VoteTotals())
+                .add(rs.getLong("votes"), rs.getLong("milli"), RatingEngine.star(rs.getDouble("star"))));
+        return totals;
+    }
+
+    // Sets the shop's aggregates to its seed plus its votes; false when they were already right.
+    private static boolean restoreRating(CoffeeShop shop, VoteTotals votes) {
+        double seed = shop.getSeedRating();
+        long count = votes.count;
+        long milli = votes.milli;
+        long[] stars = votes.stars.clone();
+        if (seed > 0) {
+            count++;
+            milli += RatingEngine.milli(seed);
+            stars[RatingEngine.star(seed)]++;
+        }
+        double sum = milli / 1000.0;
+        double mean = count > 0 ? sum / count : shop.getRating();
+        if (count == shop.getRatingCount() && RatingEngine.milli(shop.getRatingSum()) == milli
+                && Arrays.equals(stars, shop.getStars()) && Math.abs(mean - shop.getRating()) <= 1e-9) {
+            return false;
+        }
+        shop.setRating(mean);
+        shop.setRatingSum(sum);
+        shop.setRatingCount(count);
+        shop.setStars(stars);
+        return true;
+    }
+
+    public CatalogSnapshot getCatalogSnapshot() {
+        return snapshotCache.get();
+    }
+
+    /**
+     * Writes the catalog as NDJSON straight from a database cursor. Each row is detached once
+     * written, so memory stays flat regardless of the catalog size.
+     */
+    @Transactional(readOnly = true)
+    public void exportCatalog(OutputStream out) throws IOException {
+        try (Stream<CoffeeShop> shops = repository.streamAllByOrderByIdAsc();
+             SequenceWriter writer = objectMapper.writerFor(CoffeeShop.class)
+                     .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                     .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                     .withRootValueSeparator("\n")
+                     .writeValues(out)) {
+            for (CoffeeShop shop : (Iterable<CoffeeShop>) shops::iterator) {
+                writer.write(shop);
+                entityManager.detach(shop);
+            }
+        }
+        // The writer only separates values; terminate the last line as NDJSON expects.
+        out.write('\n');
+    }
+
+    public List<CoffeeShopListItem> getPage(long afterId, int limit) {
+        return repository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit), CoffeeShopListItem.class);
+    }
+
+    public List<CoffeeShopPin> getPinPage(long afterId, int limit) {
+        return repository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit), CoffeeShopPin.class);
+    }
+
+    public List<NearbyCoffeeShop> findNearby(double lat, double lng, double radiusKm, int limit) {
+        return spatialIndex.nearest(lat, lng, radiusKm, limit);
+    }
+
+    public long countClusterCells(double minLng, double minLat, double maxLng, double maxLat, int zoom) {
+        return clusterIndex.cellsInViewport(minLng, minLat, maxLng, maxLat, zoom);
     }
 
-    public List<CoffeeShop> getAllShops() {
-        return repository.findAll();
+    public List<CoffeeShopCluster> findClusters(double minLng, double minLat, double maxLng, double maxLat, int zoom) {
+        return clusterIndex.clusters(minLng, minLat, maxLng, maxLat, zoom);
+    }
+
+    public List<CoffeeShopSearchResult> search(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    public List<CoffeeShop> getTopRated(int n) {
+        return leaderboard.top(n);
+    }
+
+    public CoffeeShopStats getStats() {
+        return leaderboard.stats();
+    }
+
+    public long getCatalogVersion() {
+        return changeLog.latestVersion();
+    }
+
+    public CatalogChanges getChanges(long since, int limit) {
+        return changeLog.changesSince(since, limit);
+    }
+
+    public Optional<SseEmitter> openEventStream() {
+        return eventHub.openStream();
     }
 
     public CoffeeShop createShop(CoffeeShop shop) {
-        return repository.save(shop);
+        CoffeeShop saved = transactionTemplate.execute(status -> {
+            CoffeeShop created = repository.save(shop);
+            changeLog.record(List.of(created), CatalogChange.UPSERT);
+            return created;
+        });
+        listeners.forEach(l -> l.onCreated(saved));
+        return saved;
     }
 
+    // The shop, its votes and the change log entry go in one transaction; listeners hear about it once it committed.
     public boolean deleteShop(Long id) {
-        if (!repository.existsById(id)) {
+        Optional<CoffeeShop> deleted = transactionTemplate.execute(status -> {
+            Optional<CoffeeShop> existing = repository.lockForDelete(id);
+            existing.ifPresent(shop -> {
+                ratingRepository.deleteByShopId(id);
+                repository.delete(shop);
+                repository.flush();
+                changeLog.record(List.of(shop), CatalogChange.DELETE);
+            });
+            return existing;
+        });
+        if (deleted.isEmpty()) {
             return false;
         }
-        repository.deleteById(id);
+        listeners.forEach(l -> l.onDeleted(deleted.get()));
         return true;
     }
 
-    public Optional<CoffeeShop> rateShop(Long id, double newRating) {
-        return repository.findById(id).map(shop -> {
-            // Minimal averaging strategy without extra schema fields.
-            double updated = (shop.getRating() + newRating) / 2.0;
-            shop.setRating(updated);
-            return repository.save(shop);
-        });
+    /**
+     * Records the user's vote (replacing an earlier one) and applies the difference to the
+     * in-memory aggregate; the new mean reaches the table and the listeners on the next flush.
+     */
+    public Optional<CoffeeShop> rateShop(Long id, Long userId, double newRating) {
+        if (!ratingEngine.contains(id)) {
+            return Optional.empty();
+        }
+        return saveVote(id, userId, newRating).flatMap(vote -> ratingEngine.rate(id, vote.previous(), newRating));
+    }
+
+    public Optional<CoffeeShopRatingSummary> getRatingSummary(Long id) {
+        return ratingEngine.summary(id);
+    }
+
+    // The value a vote replaced; null for a user's first vote on the shop.
+    private record SavedVote(Double previous) {}
+
+    /**
+     * Upsert of the (user, shop) vote. Votes take no lock on the shop, so they do not queue behind
+     * each other; the foreign key to the shop rejects a vote for a shop deleted meanwhile, and the
+     * delete cascades to votes committed before it. Empty when the shop no longer exists. Every
+     * attempt is its own transaction: a failed insert leaves the previous one rollback-only.
+     */
+    private Optional<SavedVote> saveVote(Long shopId, Long userId, double value) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    Optional<CoffeeShopRating> existing = ratingRepository.findByUserIdAndShopId(userId, shopId);
+                    if (existing.isPresent()) {
+                        CoffeeShopRating vote = existing.get();
+                        double previous = vote.getValue();
+                        vote.setValue(value);
+                        ratingRepository.save(vote);
+                        return Optional.of(new SavedVote(previous));
+                    }
+                    ratingRepository.save(new CoffeeShopRating(userId, shopId, value));
+                    return Optional.of(new SavedVote(null));
+                });
+            } catch (DataIntegrityViolationException | OptimisticLockingFailureException e) {
+                // Either the shop was deleted (its votes went with it) or the same user voted
+                // concurrently; in the latter case re-read their vote and apply on top of it.
+                if (!repository.existsById(shopId)) {
+                    return Optional.empty();
+                }
+                if (attempt == VOTE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.ratings.flush-interval-ms:1000}")
+    public void flushRatings() {
+        List<CoffeeShop> updated = ratingEngine.drain();
+        if (updated.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                writeRatings(updated);
+                changeLog.record(updated, CatalogChange.UPSERT);
+            });
+        } catch (DataAccessException e) {
+            log.warn("Failed to flush {} ratings, will retry", updated.size(), e);
+            ratingEngine.retry(updated);
+            return;
+        }
+        evictRatings(updated);
+        listeners.forEach(l -> l.onUpdatedAll(updated));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushRatings();
+    }
+
+    private void writeRatings(List<CoffeeShop> shops) {
+        if (shops.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(shops.size());
+        for (CoffeeShop shop : shops) {
+            long[] stars = shop.getStars();
+            args.add(new Object[]{shop.getRating(), shop.getRatingSum(), shop.getRatingCount(),
+                    stars[0], stars[1], stars[2], stars[3], stars[4], shop.getId()});
+        }
+        jdbcTemplate.batchUpdate(UPDATE_RATING_SQL, args);
+    }
+
+    // The batch bypasses Hibernate, so drop the now stale second-level cache entries once it committed.
+    private void evictRatings(List<CoffeeShop> shops) {
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        for (CoffeeShop shop : shops) {
+            cache.evict(CoffeeShop.class, shop.getId());
+        }
     }
 }
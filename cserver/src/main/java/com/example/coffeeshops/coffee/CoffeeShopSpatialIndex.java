@@ -0,0 +1,219 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.NearbyCoffeeShop;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Uniform lat/lng grid over the catalog, kept as occupied cells per row. A k-nearest query
+ * walks rows outward from the query point and stops as soon as the latitude gap alone rules
+ * out every unvisited row. Within a row only occupied cells in the reachable longitude window
+ * are visited; near a pole that window is the whole row, but empty cells still cost nothing.
+ */
+@Component
+public class CoffeeShopSpatialIndex implements CoffeeShopChangeListener {
+
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180.0;
+
+    // ~1.1 km along a meridian: a handful of shops per cell even in a dense city center.
+    private static final double CELL_DEGREES = 0.01;
+    private static final int ROWS = (int) Math.ceil(180.0 / CELL_DEGREES);
+    private static final int COLS = (int) Math.ceil(360.0 / CELL_DEGREES);
+
+    private final Map<Integer, NavigableMap<Integer, List<CoffeeShop>>> rows = new HashMap<>();
+    private final Map<Long, CoffeeShop> byId = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        lock.writeLock().lock();
+        try {
+            rows.clear();
+            byId.clear();
+            shops.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        onUpdated(shop);
+    }
+
+    @Override
+    public void onUpdated(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+            put(shop);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        lock.writeLock().lock();
+        try {
+            remove(shop.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<NearbyCoffeeShop> nearest(double lat, double lng, double radiusKm, int limit) {
+        // Max-heap on distance: the head is the farthest of the current best `limit` shops.
+        PriorityQueue<NearbyCoffeeShop> best = new PriorityQueue<>(
+                limit, Comparator.comparingDouble(NearbyCoffeeShop::getDistanceKm).reversed());
+
+        int row0 = row(lat);
+        lock.readLock().lock();
+        try {
+            for (int r = 0; row0 + r < ROWS || row0 - r >= 0; r++) {
+                double reach = reach(best, limit, radiusKm);
+                if (latGapKm(lat, row0 + r) > reach && latGapKm(lat, row0 - r) > reach) {
+                    break;
+                }
+                scanRow(row0 + r, lat, lng, radiusKm, limit, best);
+                if (r > 0) {
+                    scanRow(row0 - r, lat, lng, radiusKm, limit, best);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<NearbyCoffeeShop> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(NearbyCoffeeShop::getDistanceKm));
+        return result;
+    }
+
+    static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    private void scanRow(int row, double lat, double lng, double radiusKm, int limit,
+                         PriorityQueue<NearbyCoffeeShop> best) {
+        NavigableMap<Integer, List<CoffeeShop>> cols = rows.get(row);
+        double reach = reach(best, limit, radiusKm);
+        if (cols == null || latGapKm(lat, row) > reach) {
+            return;
+        }
+        double window = lngWindowDegrees(lat, reach);
+        int first = (int) Math.floor((lng - window + 180.0) / CELL_DEGREES);
+        int last = (int) Math.floor((lng + window + 180.0) / CELL_DEGREES);
+        Collection<List<CoffeeShop>> cells;
+        if (last - first + 1 >= COLS) {
+            cells = cols.values();
+        } else if (Math.floorMod(first, COLS) <= Math.floorMod(last, COLS)) {
+            cells = cols.subMap(Math.floorMod(first, COLS), true, Math.floorMod(last, COLS), true).values();
+        } else {
+            // The window crosses the antimeridian.
+            cells = new ArrayList<>(cols.tailMap(Math.floorMod(first, COLS), true).values());
+            cells.addAll(cols.headMap(Math.floorMod(last, COLS), true).values());
+        }
+        for (List<CoffeeShop> cell : cells) {
+            collect(cell, lat, lng, radiusKm, limit, best);
+        }
+    }
+
+    // No shop farther than this can still make it into the result.
+    private static double reach(PriorityQueue<NearbyCoffeeShop> best, int limit, double radiusKm) {
+        return best.size() < limit ? radiusKm : Math.min(radiusKm, best.peek().getDistanceKm());
+    }
+
+    // Lower bound on the distance to any point of the row: the latitude difference alone.
+    private static double latGapKm(double lat, int row) {
+        if (row < 0 || row >= ROWS) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double minLat = row * CELL_DEGREES - 90.0;
+        double maxLat = minLat + CELL_DEGREES;
+        return Math.max(0, Math.max(minLat - lat, lat - maxLat)) * KM_PER_DEGREE;
+    }
+
+    // Largest longitude difference of a point within reachKm: the distance from the query point to
+    // the meridian dLng away is asin(cos(lat) * sin(dLng)), whatever the latitude of the point.
+    private static double lngWindowDegrees(double lat, double reachKm) {
+        double angle = reachKm / EARTH_RADIUS_KM;
+        double sin = angle >= Math.PI / 2 ? 1 : Math.sin(angle) / Math.cos(Math.toRadians(lat));
+        return sin >= 1 ? 180.0 : Math.toDegrees(Math.asin(sin));
+    }
+
+    private void collect(List<CoffeeShop> cell, double lat, double lng, double radiusKm, int limit,
+                         PriorityQueue<NearbyCoffeeShop> best) {
+        for (CoffeeShop shop : cell) {
+            double d = distanceKm(lat, lng, shop.getLat(), shop.getLng());
+            if (d > radiusKm) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(new NearbyCoffeeShop(shop, d));
+            } else if (d < best.peek().getDistanceKm()) {
+                best.poll();
+                best.add(new NearbyCoffeeShop(shop, d));
+            }
+        }
+    }
+
+    private void put(CoffeeShop shop) {
+        byId.put(shop.getId(), shop);
+        rows.computeIfAbsent(row(shop.getLat()), r -> new TreeMap<>())
+                .computeIfAbsent(col(shop.getLng()), c -> new ArrayList<>(4)).add(shop);
+    }
+
+    private void remove(Long id) {
+        CoffeeShop existing = byId.remove(id);
+        if (existing == null) {
+            return;
+        }
+        int row = row(existing.getLat());
+        int col = col(existing.getLng());
+        NavigableMap<Integer, List<CoffeeShop>> cols = rows.get(row);
+        List<CoffeeShop> cell = cols == null ? null : cols.get(col);
+        if (cell != null) {
+            cell.removeIf(s -> id.equals(s.getId()));
+            if (cell.isEmpty()) {
+                cols.remove(col);
+                if (cols.isEmpty()) {
+                    rows.remove(row);
+                }
+            }
+        }
+    }
+
+    private static int row(double lat) {
+        return Math.min(ROWS - 1, Math.max(0, (int) Math.floor((lat + 90.0) / CELL_DEGREES)));
+    }
+
+    private static int col(double lng) {
+        return Math.floorMod((int) Math.floor((lng + 180.0) / CELL_DEGREES), COLS);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CatalogEvent;
+
+import java.io.IOException;
+
+/**
+ * One connected client of {@link CatalogEventHub}. Calls for a given sink never overlap,
+ * but may come from different pool threads.
+ */
+public interface EventSink {
+
+    void send(CatalogEvent event) throws IOException;
+
+    // Keeps idle connections open through proxies and detects clients that went away.
+    void heartbeat() throws IOException;
+
+    void close();
+}
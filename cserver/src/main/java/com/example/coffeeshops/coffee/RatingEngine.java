@@ -0,0 +1,233 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopRatingSummary;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Per-shop rating aggregates: vote count, sum and a 1-5 star histogram. Votes land in
+ * striped {@link LongAdder}s without locking; {@link #drain()} periodically folds them into
+ * the persisted aggregate and returns the shops that changed so they can be written in one batch.
+ */
+@Component
+public class RatingEngine implements CoffeeShopChangeListener {
+
+    // Votes are accumulated in thousandths so the adders stay exact integers.
+    private static final double SCALE = 1000.0;
+
+    private final Map<Long, ShopRating> ratings = new ConcurrentHashMap<>();
+    private final Queue<ShopRating> dirty = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void onReload(List<CoffeeShop> shops) {
+        ratings.clear();
+        dirty.clear();
+        shops.forEach(this::track);
+    }
+
+    @Override
+    public void onCreated(CoffeeShop shop) {
+        track(shop);
+    }
+
+    @Override
+    public void onDeleted(CoffeeShop shop) {
+        ratings.remove(shop.getId());
+    }
+
+    public boolean contains(Long shopId) {
+        return ratings.containsKey(shopId);
+    }
+
+    public Optional<CoffeeShop> rate(Long shopId, double value) {
+        return rate(shopId, null, value);
+    }
+
+    /**
+     * Applies a vote. {@code previous} is the value this user had already given the shop,
+     * in which case the vote is replaced rather than counted again.
+     */
+    public Optional<CoffeeShop> rate(Long shopId, Double previous, double value) {
+        ShopRating rating = ratings.get(shopId);
+        if (rating == null) {
+            return Optional.empty();
+        }
+        rating.pendingStars[star(value)].increment();
+        if (previous == null) {
+            rating.pendingSum.add(milli(value));
+            rating.pendingCount.increment();
+        } else {
+            rating.pendingSum.add(milli(value) - milli(previous));
+            rating.pendingStars[star(previous)].decrement();
+        }
+        // Mark last: a vote that races with drain() always re-queues the shop.
+        if (!rating.dirty.get() && rating.dirty.compareAndSet(false, true)) {
+            dirty.add(rating);
+        }
+        return Optional.of(rating.toShop());
+    }
+
+    public Optional<CoffeeShop> get(Long shopId) {
+        ShopRating rating = ratings.get(shopId);
+        return rating == null ? Optional.empty() : Optional.of(rating.toShop());
+    }
+
+    /**
+     * Moves pending votes into the base aggregates and returns the updated shops: those that
+     * received votes since the previous drain, and those whose last write failed.
+     */
+    public List<CoffeeShop> drain() {
+        List<CoffeeShop> updated = new ArrayList<>();
+        ShopRating rating;
+        while ((rating = dirty.poll()) != null) {
+            rating.dirty.set(false);
+            if (ratings.get(rating.shop.getId()) != rating) {
+                continue; // deleted meanwhile
+            }
+            boolean changed = rating.fold();
+            // Cleared even when there are new votes: this drain's write covers both.
+            if (rating.unpersisted.getAndSet(false) || changed) {
+                updated.add(rating.toShop());
+            }
+        }
+        return updated;
+    }
+
+    // Used when a batch could not be persisted: the next drain returns these shops again.
+    public void retry(Collection<CoffeeShop> shops) {
+        for (CoffeeShop shop : shops) {
+            ShopRating rating = ratings.get(shop.getId());
+            if (rating == null) {
+                continue;
+            }
+            // Flag first: a drain that already cleared dirty sees the flag or lets us re-queue.
+            rating.unpersisted.set(true);
+            if (rating.dirty.compareAndSet(false, true)) {
+                dirty.add(rating);
+            }
+        }
+    }
+
+    public Optional<CoffeeShopRatingSummary> summary(Long shopId) {
+        ShopRating rating = ratings.get(shopId);
+        if (rating == null) {
+            return Optional.empty();
+        }
+        CoffeeShop shop = rating.toShop();
+        return Optional.of(new CoffeeShopRatingSummary(
+                shopId, shop.getRating(), shop.getRatingCount(), shop.getStars()));
+    }
+
+    private void track(CoffeeShop shop) {
+        ratings.put(shop.getId(), new ShopRating(shop));
+    }
+
+    // A vote in thousandths, the unit every rating sum is kept in.
+    static long milli(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    // Index into the 1-5 star histogram.
+    static int star(double value) {
+        return (int) Math.max(1, Math.min(5, Math.round(value))) - 1;
+    }
+
+    private static final class ShopRating {
+        final CoffeeShop shop;
+        final LongAdder pendingSum = new LongAdder();
+        final LongAdder pendingCount = new LongAdder();
+        final LongAdder[] pendingStars = new LongAdder[5];
+        final AtomicBoolean dirty = new AtomicBoolean();
+        // The folded aggregate has not reached the table yet.
+        final AtomicBoolean unpersisted = new AtomicBoolean();
+        final StampedLock baseLock = new StampedLock();
+        // In thousandths, like the pending sum: adding doubles would drift with every fold.
+        long baseSum;
+        long baseCount;
+        final long[] baseStars;
+
+        ShopRating(CoffeeShop shop) {
+            this.shop = shop;
+            for (int i = 0; i < pendingStars.length; i++) {
+                pendingStars[i] = new LongAdder();
+            }
+            baseStars = shop.getStars();
+            if (shop.getRatingCount() > 0) {
+                baseSum = milli(shop.getRatingSum());
+                baseCount = shop.getRatingCount();
+            } else if (shop.getRating() > 0) {
+                // Shops seeded with a rating but no votes: the seed counts as the first vote.
+                baseSum = milli(shop.getRating());
+                baseCount = 1;
+            }
+            // Votes counted before the histogram existed are attributed to the mean's star.
+            long histogramTotal = Arrays.stream(baseStars).sum();
+            if (baseCount > histogramTotal) {
+                baseStars[star(baseSum / SCALE / baseCount)] += baseCount - histogramTotal;
+            }
+        }
+
+        boolean fold() {
+            long stamp = baseLock.writeLock();
+            try {
+                long sum = pendingSum.sumThenReset();
+                long count = pendingCount.sumThenReset();
+                boolean changed = sum != 0 || count != 0;
+                for (int i = 0; i < baseStars.length; i++) {
+                    long stars = pendingStars[i].sumThenReset();
+                    baseStars[i] += stars;
+                    changed |= stars != 0;
+                }
+                baseSum += sum;
+                baseCount += count;
+                return changed;
+            } finally {
+                baseLock.unlockWrite(stamp);
+            }
+        }
+
+        CoffeeShop toShop() {
+            long sum;
+            long count;
+            long[] stars = new long[baseStars.length];
+            long stamp = baseLock.tryOptimisticRead();
+            sum = baseSum + pendingSum.sum();
+            count = baseCount + pendingCount.sum();
+            for (int i = 0; i < stars.length; i++) {
+                stars[i] = baseStars[i] + pendingStars[i].sum();
+            }
+            if (!baseLock.validate(stamp)) {
+                stamp = baseLock.readLock();
+                try {
+                    sum = baseSum + pendingSum.sum();
+                    count = baseCount + pendingCount.sum();
+                    for (int i = 0; i < stars.length; i++) {
+                        stars[i] = baseStars[i] + pendingStars[i].sum();
+                    }
+                } finally {
+                    baseLock.unlockRead(stamp);
+                }
+            }
+
+            CoffeeShop copy = new CoffeeShop(shop.getName(), shop.getAddress(), shop.getLat(), shop.getLng(),
+                    count > 0 ? sum / SCALE / count : shop.getRating());
+            copy.setId(shop.getId());
+            copy.setRatingSum(sum / SCALE);
+            copy.setRatingCount(count);
+            copy.setStars(stars);
+            return copy;
+        }
+    }
+}
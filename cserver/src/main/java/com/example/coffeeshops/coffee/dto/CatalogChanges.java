@@ -0,0 +1,46 @@
+package com.example.coffeeshops.coffee.dto;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+
+import java.util.List;
+
+public class CatalogChanges {
+    private final long version;
+    private final boolean resyncRequired;
+    private final boolean hasMore;
+    private final List<CoffeeShop> upserts;
+    private final List<Long> deletes;
+
+    public CatalogChanges(long version, boolean resyncRequired, boolean hasMore,
+                          List<CoffeeShop> upserts, List<Long> deletes) {
+        this.version = version;
+        this.resyncRequired = resyncRequired;
+        this.hasMore = hasMore;
+        this.upserts = upserts;
+        this.deletes = deletes;
+    }
+
+    public static CatalogChanges resync(long version) {
+        return new CatalogChanges(version, true, false, List.of(), List.of());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public List<CoffeeShop> getUpserts() {
+        return upserts;
+    }
+
+    public List<Long> getDeletes() {
+        return deletes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.coffeeshops.coffee.dto;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CatalogEvent {
+    public static final String CREATED = "created";
+    public static final String RATING_UPDATED = "rating-updated";
+    public static final String DELETED = "deleted";
+    // Too many shops changed at once to send one by one: sync through /changes instead.
+    public static final String RELOAD = "reload";
+
+    private final String type;
+    private final Long id;
+    private final CoffeeShop shop;
+    private final Double rating;
+    private final Long ratingCount;
+
+    private CatalogEvent(String type, Long id, CoffeeShop shop, Double rating, Long ratingCount) {
+        this.type = type;
+        this.id = id;
+        this.shop = shop;
+        this.rating = rating;
+        this.ratingCount = ratingCount;
+    }
+
+    public static CatalogEvent created(CoffeeShop shop) {
+        return new CatalogEvent(CREATED, shop.getId(), shop, null, null);
+    }
+
+    public static CatalogEvent ratingUpdated(CoffeeShop shop) {
+        return new CatalogEvent(RATING_UPDATED, shop.getId(), null, shop.getRating(), shop.getRatingCount());
+    }
+
+    public static CatalogEvent deleted(Long id) {
+        return new CatalogEvent(DELETED, id, null, null, null);
+    }
+
+    public static CatalogEvent reload() {
+        return new CatalogEvent(RELOAD, null, null, null, null);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public CoffeeShop getShop() {
+        return shop;
+    }
+
+    public Double getRating() {
+        return rating;
+    }
+
+    public Long getRatingCount() {
+        return ratingCount;
+    }
+}
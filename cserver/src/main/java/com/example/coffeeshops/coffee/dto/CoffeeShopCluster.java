@@ -0,0 +1,38 @@
+package com.example.coffeeshops.coffee.dto;
+
+public class CoffeeShopCluster {
+    private final double lat;
+    private final double lng;
+    private final int count;
+    private final double avgRating;
+    private final Long shopId;
+
+    public CoffeeShopCluster(double lat, double lng, int count, double avgRating, Long shopId) {
+        this.lat = lat;
+        this.lng = lng;
+        this.count = count;
+        this.avgRating = avgRating;
+        this.shopId = shopId;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getAvgRating() {
+        return avgRating;
+    }
+
+    // Set only for single-shop clusters so the client can render a regular pin.
+    public Long getShopId() {
+        return shopId;
+    }
+}
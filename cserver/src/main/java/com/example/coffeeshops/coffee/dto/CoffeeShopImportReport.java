@@ -0,0 +1,64 @@
+package com.example.coffeeshops.coffee.dto;
+
+import java.util.List;
+
+public class CoffeeShopImportReport {
+    private final long imported;
+    private final long duplicates;
+    private final long failed;
+    private final long elapsedMs;
+    private final double rowsPerSecond;
+    private final List<RowError> errors;
+
+    public CoffeeShopImportReport(long imported, long duplicates, long failed, long elapsedMs, List<RowError> errors) {
+        this.imported = imported;
+        this.duplicates = duplicates;
+        this.failed = failed;
+        this.elapsedMs = elapsedMs;
+        long rows = imported + duplicates + failed;
+        this.rowsPerSecond = elapsedMs > 0 ? rows * 1000.0 / elapsedMs : rows;
+        this.errors = errors;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String message;
+
+        public RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
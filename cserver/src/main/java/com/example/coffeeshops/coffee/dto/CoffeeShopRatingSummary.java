@@ -0,0 +1,37 @@
+package com.example.coffeeshops.coffee.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CoffeeShopRatingSummary {
+    private final Long shopId;
+    private final double average;
+    private final long count;
+    private final Map<Integer, Long> distribution;
+
+    public CoffeeShopRatingSummary(Long shopId, double average, long count, long[] stars) {
+        this.shopId = shopId;
+        this.average = average;
+        this.count = count;
+        this.distribution = new LinkedHashMap<>();
+        for (int i = 0; i < stars.length; i++) {
+            distribution.put(i + 1, stars[i]);
+        }
+    }
+
+    public Long getShopId() {
+        return shopId;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Map<Integer, Long> getDistribution() {
+        return distribution;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.coffeeshops.coffee.dto;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+
+public class CoffeeShopSearchResult {
+    private final Long id;
+    private final String name;
+    private final String address;
+    private final double lat;
+    private final double lng;
+    private final double rating;
+    private final double score;
+
+    public CoffeeShopSearchResult(CoffeeShop shop, double score) {
+        this.id = shop.getId();
+        this.name = shop.getName();
+        this.address = shop.getAddress();
+        this.lat = shop.getLat();
+        this.lng = shop.getLng();
+        this.rating = shop.getRating();
+        this.score = score;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public double getRating() {
+        return rating;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.coffeeshops.coffee.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CoffeeShopStats {
+    private final long count;
+    private final double averageRating;
+    private final long votes;
+    private final Map<Integer, Long> distribution;
+
+    public CoffeeShopStats(long count, double averageRating, long votes, long[] histogram) {
+        this.count = count;
+        this.averageRating = averageRating;
+        this.votes = votes;
+        this.distribution = new LinkedHashMap<>();
+        for (int i = 0; i < histogram.length; i++) {
+            distribution.put(i, histogram[i]);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getAverageRating() {
+        return averageRating;
+    }
+
+    public long getVotes() {
+        return votes;
+    }
+
+    public Map<Integer, Long> getDistribution() {
+        return distribution;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.coffeeshops.coffee.dto;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+
+public class NearbyCoffeeShop {
+    private final Long id;
+    private final String name;
+    private final String address;
+    private final double lat;
+    private final double lng;
+    private final double rating;
+    private final double distanceKm;
+
+    public NearbyCoffeeShop(CoffeeShop shop, double distanceKm) {
+        this.id = shop.getId();
+        this.name = shop.getName();
+        this.address = shop.getAddress();
+        this.lat = shop.getLat();
+        this.lng = shop.getLng();
+        this.rating = shop.getRating();
+        this.distanceKm = distanceKm;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public double getRating() {
+        return rating;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+}
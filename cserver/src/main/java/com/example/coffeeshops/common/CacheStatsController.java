@@ -0,0 +1,90 @@
+package com.example.coffeeshops.common;
+
+import com.example.coffeeshops.user.AuthenticatedUser;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.springframework.http.HttpStatus.FORBIDDEN;
+
+/**
+ * Hit/miss/put counters of every Hibernate second-level cache region, plus evictions and size
+ * from the JCache statistics MBeans, so region bounds in ehcache.xml can be sized from real traffic.
+ */
+@RestController
+@RequestMapping("/api/cache")
+@CrossOrigin(origins = "*")
+public class CacheStatsController {
+
+    private final Statistics statistics;
+
+    public CacheStatsController(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> stats(@AuthenticationPrincipal AuthenticatedUser principal) {
+        if (principal == null || !principal.isAdmin()) {
+            throw new ResponseStatusException(FORBIDDEN, "Доступ запрещен");
+        }
+
+        Map<String, Map<String, Object>> jcache = jcacheStatistics();
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (String name : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(name);
+            if (region == null) {
+                continue;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("hits", region.getHitCount());
+            entry.put("misses", region.getMissCount());
+            entry.put("puts", region.getPutCount());
+            entry.put("hitRatio", ratio(region.getHitCount(), region.getMissCount()));
+            entry.putAll(jcache.getOrDefault(name, Map.of()));
+            regions.put(name, entry);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("regions", regions);
+        response.put("secondLevelHitRatio",
+                ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount()));
+        response.put("naturalIdHitRatio",
+                ratio(statistics.getNaturalIdCacheHitCount(), statistics.getNaturalIdCacheMissCount()));
+        response.put("since", statistics.getStart());
+        return response;
+    }
+
+    // Ehcache registers javax.cache:type=CacheStatistics,CacheManager=...,Cache=<region> per cache.
+    private static Map<String, Map<String, Object>> jcacheStatistics() {
+        Map<String, Map<String, Object>> byCache = new HashMap<>();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName("javax.cache:type=CacheStatistics,*"), null)) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("evictions", server.getAttribute(name, "CacheEvictions"));
+                entry.put("removals", server.getAttribute(name, "CacheRemovals"));
+                byCache.put(name.getKeyProperty("Cache"), entry);
+            }
+        } catch (Exception e) {
+            // Statistics MBeans are optional; the Hibernate counters are still useful on their own.
+        }
+        return byCache;
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
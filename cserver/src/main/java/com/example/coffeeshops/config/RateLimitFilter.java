@@ -0,0 +1,200 @@
+package com.example.coffeeshops.config;
+
+import com.example.coffeeshops.common.ErrorResponse;
+import com.example.coffeeshops.user.AuthenticatedUser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throttles the expensive public endpoints before they reach a controller: login and password
+ * reset (BCrypt) per client IP and per email, AI chat per user or IP. A rejected request costs a
+ * map lookup and a CAS and gets a 429 with Retry-After.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    // Enough for a login form; larger bodies are passed on but only limited by IP.
+    private static final int MAX_PEEKED_BODY = 16 * 1024;
+
+    public enum Key { IP, EMAIL, USER }
+
+    public record Rule(String method, String path, RateLimiter limiter, List<Key> keys) {}
+
+    private final List<Rule> rules;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitFilter(List<Rule> rules, ObjectMapper objectMapper) {
+        this.rules = rules;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Rule rule = match(request);
+        if (rule == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletRequest forwarded = request;
+        long wait = 0;
+        for (Key key : rule.keys()) {
+            String value = switch (key) {
+                case IP -> request.getRemoteAddr();
+                case USER -> userOrIp(request);
+                case EMAIL -> {
+                    PeekedRequest peeked = forwarded instanceof PeekedRequest p ? p : new PeekedRequest(request);
+                    forwarded = peeked;
+                    yield email(peeked.head);
+                }
+            };
+            if (value != null) {
+                wait = rule.limiter().tryAcquire(key.name() + ':' + value);
+            }
+            // Keys are ordered cheapest first; once one is over its limit the rest are not read.
+            if (wait > 0) {
+                break;
+            }
+        }
+
+        if (wait > 0) {
+            reject(request, response, wait);
+            return;
+        }
+        chain.doFilter(forwarded, response);
+    }
+
+    private Rule match(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Rule rule : rules) {
+            if (rule.method().equalsIgnoreCase(request.getMethod()) && rule.path().equals(path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    // Signed-in users get their own bucket; anonymous callers are limited by address.
+    private static String userOrIp(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return "user:" + user.id();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private String email(byte[] body) {
+        try {
+            JsonNode email = objectMapper.readTree(body).path("email");
+            return email.isTextual() ? email.asText().trim().toLowerCase(Locale.ROOT) : null;
+        } catch (IOException e) {
+            // Truncated or malformed body: the controller will reject it anyway.
+            return null;
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, long waitNanos) throws IOException {
+        HttpStatus status = HttpStatus.TOO_MANY_REQUESTS;
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(
+                status.value(), status.getReasonPhrase(), "Слишком много запросов, попробуйте позже", request.getRequestURI()));
+    }
+
+    // Reads the start of the body for the email and replays it to the controller.
+    private static final class PeekedRequest extends HttpServletRequestWrapper {
+        final byte[] head;
+        private final ServletInputStream original;
+        private final ByteArrayInputStream replay;
+
+        PeekedRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.original = request.getInputStream();
+            this.head = original.readNBytes(MAX_PEEKED_BODY);
+            this.replay = new ByteArrayInputStream(head);
+        }
+
+        // The peeked bytes first, then whatever the container still has; readiness and
+        // non-blocking reads are the container's once the peeked bytes are used up.
+        @Override
+        public ServletInputStream getInputStream() {
+            return new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                    return replay.available() > 0 ? replay.read() : original.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return replay.available() > 0 ? replay.read(b, off, len) : original.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return replay.available() == 0 && original.isFinished();
+                }
+
+                @Override
+                public boolean isReady() {
+                    return replay.available() > 0 || original.isReady();
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    original.setReadListener(new ReadListener() {
+                        @Override
+                        public void onDataAvailable() throws IOException {
+                            listener.onDataAvailable();
+                        }
+
+                        @Override
+                        public void onAllDataRead() throws IOException {
+                            // The whole body may have been peeked: let the listener read it first.
+                            if (replay.available() > 0) {
+                                listener.onDataAvailable();
+                            }
+                            listener.onAllDataRead();
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            listener.onError(t);
+                        }
+                    });
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.coffeeshops.config;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets per key, kept lock-free in GCRA form: a bucket is one AtomicLong holding the
+ * moment it will be full again, and a request is one compare-and-set on it. Buckets that have
+ * refilled are dropped when the table reaches its size limit; if it is still full, new keys share
+ * a single overflow bucket so a flood of distinct keys cannot grow memory.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE);
+    private final long sweepEveryNanos;
+    private final AtomicLong lastSweep = new AtomicLong(Long.MIN_VALUE);
+
+    public RateLimiter(int capacity, Duration period, int maxKeys, LongSupplier clock) {
+        if (capacity <= 0 || period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Rate limit needs a positive capacity and period");
+        }
+        this.intervalNanos = period.toNanos() / capacity;
+        this.burstNanos = intervalNanos * capacity;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        // A full table is swept at most this often, so a key flood cannot make every request O(n).
+        this.sweepEveryNanos = Math.min(burstNanos, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    // "10/1m": 10 requests in a burst, refilled evenly over one minute.
+    public static RateLimiter parse(String spec, int maxKeys) {
+        int slash = spec.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Rate limit must look like 10/1m: " + spec);
+        }
+        int capacity = Integer.parseInt(spec.substring(0, slash).trim());
+        Duration period = DurationStyle.detectAndParse(spec.substring(slash + 1).trim());
+        return new RateLimiter(capacity, period, maxKeys, System::nanoTime);
+    }
+
+    /**
+     * Takes a token for the key.
+     *
+     * @return 0 when the request may proceed, otherwise nanoseconds until a token is available
+     */
+    public long tryAcquire(String key) {
+        long now = clock.getAsLong();
+        AtomicLong bucket = bucket(key, now);
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys) {
+            sweep(now);
+            if (buckets.size() >= maxKeys) {
+                return overflow;
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+    }
+
+    // A bucket that is full again holds no state worth keeping.
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (last != Long.MIN_VALUE && now - last < sweepEveryNanos || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        buckets.values().removeIf(b -> b.get() <= now);
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.coffeeshops.config;
 
+import com.example.coffeeshops.user.TokenService;
+import com.example.coffeeshops.config.RateLimitFilter.Key;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -7,6 +11,9 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+
+import java.util.List;
 
 @Configuration
 public class SecurityConfig {
@@ -16,11 +23,34 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(
+            HttpSecurity http,
+            TokenService tokenService,
+            ObjectMapper objectMapper,
+            @Value("${app.rate-limit.max-keys:100000}") int maxKeys,
+            @Value("${app.rate-limit.login:10/1m}") String loginLimit,
+            @Value("${app.rate-limit.forgot-password:3/15m}") String forgotPasswordLimit,
+            @Value("${app.rate-limit.ai-chat:20/1m}") String aiChatLimit
+    ) throws Exception {
+        // Runs after token authentication so AI chat can be limited per user.
+        // Blocking and streamed chat draw from the same budget.
+        RateLimiter aiChat = RateLimiter.parse(aiChatLimit, maxKeys);
+        RateLimitFilter rateLimitFilter = new RateLimitFilter(List.of(
+                new RateLimitFilter.Rule("POST", "/api/auth/login",
+                        RateLimiter.parse(loginLimit, maxKeys), List.of(Key.IP, Key.EMAIL)),
+                new RateLimitFilter.Rule("POST", "/api/auth/forgot-password",
+                        RateLimiter.parse(forgotPasswordLimit, maxKeys), List.of(Key.IP, Key.EMAIL)),
+                new RateLimitFilter.Rule("POST", "/api/ai/chat", aiChat, List.of(Key.USER)),
+                new RateLimitFilter.Rule("POST", "/api/ai/chat/stream", aiChat, List.of(Key.USER))
+        ), objectMapper);
+
         http
                 .cors(Customizer.withDefaults())
                 .csrf(csrf -> csrf.disable())
                 .headers(headers -> headers.frameOptions(frame -> frame.sameOrigin()))
+                .addFilterBefore(new TokenAuthenticationFilter(tokenService, objectMapper),
+                        UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(rateLimitFilter, TokenAuthenticationFilter.class)
                 .authorizeHttpRequests(auth -> auth.anyRequest().permitAll());
         return http.build();
     }
@@ -0,0 +1,65 @@
+package com.example.coffeeshops.config;
+
+import com.example.coffeeshops.common.ErrorResponse;
+import com.example.coffeeshops.user.AuthenticatedUser;
+import com.example.coffeeshops.user.TokenService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Authenticates "Authorization: Bearer" requests from the signed token alone. Requests
+ * without a token pass through unchanged; an invalid, expired or revoked token is a 401.
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String PREFIX = "Bearer ";
+
+    private final TokenService tokenService;
+    private final ObjectMapper objectMapper;
+
+    public TokenAuthenticationFilter(TokenService tokenService, ObjectMapper objectMapper) {
+        this.tokenService = tokenService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.startsWith(PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Optional<AuthenticatedUser> user = tokenService.verify(header.substring(PREFIX.length()).trim());
+        if (user.isEmpty()) {
+            HttpStatus status = HttpStatus.UNAUTHORIZED;
+            response.setStatus(status.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(
+                    status.value(), status.getReasonPhrase(), "Сессия недействительна, войдите снова", request.getRequestURI()));
+            return;
+        }
+
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                user.get(), null, List.of(new SimpleGrantedAuthority("ROLE_" + user.get().role())));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.coffeeshops.user;
+
+// Caller identity taken from a verified session token; no database lookup involved.
+public record AuthenticatedUser(Long id, String email, String role) {
+
+    public boolean isAdmin() {
+        return "ADMIN".equals(role);
+    }
+}
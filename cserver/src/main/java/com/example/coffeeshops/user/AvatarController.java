@@ -0,0 +1,66 @@
+package com.example.coffeeshops.user;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+
+@RestController
+@RequestMapping("/api/avatars")
+@CrossOrigin(origins = "*")
+public class AvatarController {
+
+    // Tomcat request attributes for zero-copy file transfer (NIO connector).
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final AvatarStore avatarStore;
+
+    public AvatarController(AvatarStore avatarStore) {
+        this.avatarStore = avatarStore;
+    }
+
+    // Files are addressed by content hash and never change, so clients may cache them forever.
+    @GetMapping("/{hash}")
+    public void avatar(
+            @PathVariable String hash,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        if (size != null && !AvatarStore.THUMBNAIL_SIZES.contains(size)) {
+            throw new ResponseStatusException(BAD_REQUEST, "Доступные размеры: " + AvatarStore.THUMBNAIL_SIZES);
+        }
+        AvatarStore.StoredFile file = avatarStore.find(hash, size)
+                .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Аватар не найден"));
+
+        String etag = "\"" + hash + (size != null ? "-" + size : "") + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        if (etag.equals(ifNoneMatch)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long length = Files.size(file.path());
+        response.setContentType(file.contentType());
+        response.setContentLengthLong(length);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.path().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+        } else {
+            Files.copy(file.path(), response.getOutputStream());
+        }
+    }
+}
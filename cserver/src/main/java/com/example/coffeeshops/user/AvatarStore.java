@@ -0,0 +1,229 @@
+package com.example.coffeeshops.user;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Content-addressed avatar files on local disk: {@code <dir>/<2 hex>/<sha256>.<ext>} plus square
+ * PNG thumbnails rendered once at upload. Identical uploads share one file, and since a file
+ * never changes under its hash it can be cached by clients forever.
+ */
+@Component
+public class AvatarStore {
+
+    public static final List<Integer> THUMBNAIL_SIZES = List.of(64, 256);
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    // Images that are small on disk but huge once decoded would take seconds of CPU to read.
+    private static final long MAX_PIXELS = 40_000_000L;
+    // Only the center square is decoded, subsampled to no less than this side: twice the largest
+    // thumbnail keeps the downscale sharp while a decoded upload stays under about 4 MB.
+    private static final int DECODE_SIDE = 2 * THUMBNAIL_SIZES.get(THUMBNAIL_SIZES.size() - 1);
+    private static final long DECODE_WAIT_SECONDS = 5;
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "jpeg", "jpg", "png", "png", "gif", "gif", "bmp", "bmp");
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "jpg", "image/jpeg", "png", "image/png", "gif", "image/gif", "bmp", "image/bmp");
+
+    private final Path root;
+    private final long maxBytes;
+    // Bounds the memory and CPU that concurrent uploads spend decoding.
+    private final Semaphore decodes;
+
+    public AvatarStore(
+            @Value("${app.avatars.dir:./data/avatars}") String dir,
+            @Value("${app.avatars.max-bytes:5242880}") long maxBytes,
+            @Value("${app.avatars.max-concurrent-decodes:2}") int maxConcurrentDecodes
+    ) {
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.decodes = new Semaphore(maxConcurrentDecodes);
+    }
+
+    public record StoredFile(Path path, String contentType) {}
+
+    /**
+     * Streams the upload to disk while hashing it, validates that it is an image and writes
+     * the thumbnails. Returns the SHA-256 of the original bytes.
+     */
+    public String store(InputStream input) throws IOException {
+        Files.createDirectories(root);
+        Path temp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(input, digest);
+                 OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[64 * 1024];
+                long total = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxBytes) {
+                        throw new ResponseStatusException(PAYLOAD_TOO_LARGE, "Файл слишком большой");
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            // An identical upload was already validated and has its thumbnails.
+            if (find(hash, null).isPresent() && THUMBNAIL_SIZES.stream().allMatch(size -> find(hash, size).isPresent())) {
+                return hash;
+            }
+
+            Decoded decoded = decodeLimited(temp);
+            Path dir = root.resolve(hash.substring(0, 2));
+            Files.createDirectories(dir);
+            for (int size : THUMBNAIL_SIZES) {
+                Path thumbnail = dir.resolve(hash + "-" + size + ".png");
+                if (Files.notExists(thumbnail)) {
+                    writeAtomically(dir, thumbnail, thumbnail(decoded.image(), size));
+                }
+            }
+            Path original = dir.resolve(hash + "." + decoded.extension());
+            if (Files.notExists(original)) {
+                Files.move(temp, original, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // size == null is the original upload; otherwise one of THUMBNAIL_SIZES.
+    public Optional<StoredFile> find(String hash, Integer size) {
+        if (!HASH.matcher(hash).matches()) {
+            return Optional.empty();
+        }
+        Path dir = root.resolve(hash.substring(0, 2));
+        if (size != null) {
+            Path thumbnail = dir.resolve(hash + "-" + size + ".png");
+            return Files.exists(thumbnail) ? Optional.of(new StoredFile(thumbnail, "image/png")) : Optional.empty();
+        }
+        for (Map.Entry<String, String> type : CONTENT_TYPES.entrySet()) {
+            Path original = dir.resolve(hash + "." + type.getKey());
+            if (Files.exists(original)) {
+                return Optional.of(new StoredFile(original, type.getValue()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private record Decoded(BufferedImage image, String extension) {}
+
+    private Decoded decodeLimited(Path file) throws IOException {
+        try {
+            if (!decodes.tryAcquire(DECODE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                throw new ResponseStatusException(SERVICE_UNAVAILABLE, "Слишком много загрузок, попробуйте позже");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(SERVICE_UNAVAILABLE, "Слишком много загрузок, попробуйте позже");
+        }
+        try {
+            return decode(file);
+        } finally {
+            decodes.release();
+        }
+    }
+
+    private static Decoded decode(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new ResponseStatusException(BAD_REQUEST, "Файл не является изображением");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                String extension = EXTENSIONS.get(reader.getFormatName().toLowerCase());
+                if (extension == null) {
+                    throw new ResponseStatusException(BAD_REQUEST, "Поддерживаются JPEG, PNG, GIF и BMP");
+                }
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS) {
+                    throw new ResponseStatusException(BAD_REQUEST, "Изображение слишком большое");
+                }
+                // Thumbnails are center squares, so nothing outside it needs to be in memory.
+                int side = Math.min(width, height);
+                int step = Math.max(1, side / DECODE_SIDE);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle((width - side) / 2, (height - side) / 2, side, side));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return new Decoded(reader.read(0, param), extension);
+            } catch (IOException e) {
+                throw new ResponseStatusException(BAD_REQUEST, "Файл не является изображением");
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Center square crop scaled down to size x size (never up).
+    private static BufferedImage thumbnail(BufferedImage source, int size) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        int target = Math.min(size, side);
+        BufferedImage result = new BufferedImage(target, target, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            int x = (source.getWidth() - side) / 2;
+            int y = (source.getHeight() - side) / 2;
+            g.drawImage(source, 0, 0, target, target, x, y, x + side, y + side, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    private static void writeAtomically(Path dir, Path target, BufferedImage image) throws IOException {
+        Path temp = Files.createTempFile(dir, "thumb-", ".tmp");
+        try {
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.coffeeshops.user;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One-off move of base64 avatars from the old users.avatar LOB column into {@link AvatarStore}.
+ * Each moved avatar is cleared from its row, and the column is dropped once no row holds one,
+ * so user rows no longer carry image data. Avatars that failed to store stay where they are
+ * and are retried on the next start; ones that can never be stored are cleared with a warning.
+ */
+@Component
+public class LegacyAvatarMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyAvatarMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AvatarStore avatarStore;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public LegacyAvatarMigration(
+            JdbcTemplate jdbcTemplate,
+            AvatarStore avatarStore,
+            EntityManagerFactory entityManagerFactory
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.avatarStore = avatarStore;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        Integer columns = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = 'USERS' AND COLUMN_NAME = 'AVATAR'",
+                Integer.class);
+        if (columns == null || columns == 0) {
+            return;
+        }
+
+        // One row at a time: each LOB is read, stored and released before the next.
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM users WHERE avatar IS NOT NULL", Long.class);
+        int moved = 0;
+        int unreadable = 0;
+        int failed = 0;
+        for (Long id : ids) {
+            try {
+                String avatar = jdbcTemplate.queryForObject("SELECT avatar FROM users WHERE id = ?", String.class, id);
+                byte[] image;
+                try {
+                    // Clients sent either raw base64 or a data: URL.
+                    image = Base64.getMimeDecoder().decode(avatar.substring(avatar.indexOf(',') + 1).trim());
+                } catch (IllegalArgumentException e) {
+                    clearUnreadable(id, "not base64");
+                    unreadable++;
+                    continue;
+                }
+                String hash;
+                try {
+                    hash = avatarStore.store(new ByteArrayInputStream(image));
+                } catch (ResponseStatusException e) {
+                    // Not an image, or one the store will never accept: retrying cannot help.
+                    clearUnreadable(id, e.getReason());
+                    unreadable++;
+                    continue;
+                }
+                jdbcTemplate.update("UPDATE users SET avatar_hash = ?, avatar = NULL WHERE id = ?", hash, id);
+                moved++;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not move the avatar of user {}, will retry on next start", id, e);
+                failed++;
+            }
+        }
+        entityManagerFactory.getCache().evict(User.class);
+        log.info("Moved {} of {} avatars to the avatar store, {} unreadable, {} failed", moved, ids.size(), unreadable, failed);
+
+        if (failed > 0) {
+            log.warn("Keeping users.avatar until the remaining {} avatars are moved", failed);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE users DROP COLUMN avatar");
+    }
+
+    private void clearUnreadable(Long id, String reason) {
+        log.warn("Dropping unreadable avatar of user {}: {}", id, reason);
+        jdbcTemplate.update("UPDATE users SET avatar = NULL WHERE id = ?", id);
+    }
+}
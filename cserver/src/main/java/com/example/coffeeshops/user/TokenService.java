@@ -0,0 +1,140 @@
+package com.example.coffeeshops.user;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and verifies stateless session tokens: {@code base64url(id:role:issuedAt:email).base64url(hmac)}.
+ * Verification is a single HMAC in memory. Changing a password revokes every token the user
+ * was issued before the change; revocations are kept in memory only as long as such a token
+ * could still be valid, and reloaded from the users table on startup.
+ */
+@Service
+public class TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final UserRepository userRepository;
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    // userId -> epoch millis; tokens issued at or before it are rejected.
+    private final Map<Long, Long> revokedBefore = new ConcurrentHashMap<>();
+    private final ThreadLocal<Mac> macs;
+
+    public TokenService(
+            UserRepository userRepository,
+            @Value("${app.auth.token-secret:}") String secret,
+            @Value("${app.auth.token-ttl-hours:168}") long ttlHours
+    ) {
+        this.userRepository = userRepository;
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            log.warn("app.auth.token-secret is not set: using a random key, sessions will not survive a restart");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttl = Duration.ofHours(ttlHours);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String issue(User user) {
+        long issuedAt = System.currentTimeMillis();
+        // A token issued in the millisecond of a revocation must still outlive it.
+        Long revokedAt = user.getId() == null ? null : revokedBefore.get(user.getId());
+        if (revokedAt != null && issuedAt <= revokedAt) {
+            issuedAt = revokedAt + 1;
+        }
+        String payload = user.getId() + ":" + user.getRole() + ":" + issuedAt + ":" + user.getEmail();
+        String encoded = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return encoded + "." + ENCODER.encodeToString(sign(encoded));
+    }
+
+    public Optional<AuthenticatedUser> verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return Optional.empty();
+        }
+        String encoded = token.substring(0, dot);
+        try {
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, sign(encoded))) {
+                return Optional.empty();
+            }
+            String[] parts = new String(DECODER.decode(encoded), StandardCharsets.UTF_8).split(":", 4);
+            if (parts.length != 4) {
+                return Optional.empty();
+            }
+            long userId = Long.parseLong(parts[0]);
+            long issuedAt = Long.parseLong(parts[2]);
+            if (issuedAt + ttl.toMillis() < System.currentTimeMillis()
+                    || issuedAt <= revokedBefore.getOrDefault(userId, Long.MIN_VALUE)) {
+                return Optional.empty();
+            }
+            return Optional.of(new AuthenticatedUser(userId, parts[3], parts[1]));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Marks the user so every token issued until now, this millisecond included, is rejected; the caller saves the user.
+    public void revokeAll(User user) {
+        long now = System.currentTimeMillis();
+        // Past any earlier revocation too: a token issued since may carry the millisecond after it.
+        long revokedAt = user.getId() == null
+                ? now
+                : revokedBefore.merge(user.getId(), now, (previous, current) -> Math.max(previous + 1, current));
+        user.setTokensValidAfter(Instant.ofEpochMilli(revokedAt));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRevocations() {
+        for (UserRepository.Revocation revocation : userRepository.findRevocationsSince(Instant.now().minus(ttl))) {
+            revokedBefore.merge(revocation.getId(), revocation.getTokensValidAfter().toEpochMilli(), Math::max);
+        }
+    }
+
+    // A revocation older than the token lifetime has nothing left to reject.
+    @Scheduled(fixedDelay = 3_600_000)
+    public void purgeRevocations() {
+        long cutoff = System.currentTimeMillis() - ttl.toMillis();
+        revokedBefore.values().removeIf(revokedAt -> revokedAt < cutoff);
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC is not available", e);
+        }
+    }
+}
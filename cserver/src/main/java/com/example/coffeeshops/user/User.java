@@ -2,15 +2,26 @@ package com.example.coffeeshops.user;
 
 import jakarta.persistence.*;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
+import java.time.Instant;
 
 @Entity
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache(region = "users-by-email")
 public class User {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Lookups by email go through the natural-id cache (see UserLookupImpl).
+    @NaturalId
     @Column(unique = true, nullable = false)
     private String email;
 
@@ -22,9 +33,14 @@ public class User {
     @Column(nullable = false)
     private String role; // USER или ADMIN
 
-    @Lob
-    @Column(name = "avatar")
-    private String avatar;
+    // SHA-256 of the avatar file in AvatarStore; the image itself lives on disk.
+    @Column(name = "avatar_hash", length = 64)
+    private String avatarHash;
+
+    // Session tokens issued before this moment are revoked (set on password change).
+    @JsonIgnore
+    @Column(name = "tokens_valid_after")
+    private Instant tokensValidAfter;
 
     // 🔹 ПУСТОЙ КОНСТРУКТОР (обязателен для JPA)
     public User() {
@@ -71,11 +87,19 @@ public class User {
         this.role = role;
     }
 
-    public String getAvatar() {
-        return avatar;
+    public String getAvatarHash() {
+        return avatarHash;
+    }
+
+    public void setAvatarHash(String avatarHash) {
+        this.avatarHash = avatarHash;
+    }
+
+    public Instant getTokensValidAfter() {
+        return tokensValidAfter;
     }
 
-    public void setAvatar(String avatar) {
-        this.avatar = avatar;
+    public void setTokensValidAfter(Instant tokensValidAfter) {
+        this.tokensValidAfter = tokensValidAfter;
     }
 }
@@ -4,9 +4,16 @@ import com.example.coffeeshops.user.dto.AuthRequest;
 import com.example.coffeeshops.user.dto.NicknameChangeRequest;
 import com.example.coffeeshops.user.dto.PasswordChangeRequest;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -20,10 +27,19 @@ public class UserController {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-
-    public UserController(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    private final TokenService tokenService;
+    private final AvatarStore avatarStore;
+
+    public UserController(
+            UserRepository userRepository,
+            PasswordEncoder passwordEncoder,
+            TokenService tokenService,
+            AvatarStore avatarStore
+    ) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenService = tokenService;
+        this.avatarStore = avatarStore;
     }
 
     // 🟢 Регистрация
@@ -68,6 +84,7 @@ public class UserController {
         response.put("message", "Вход выполнен");
         response.put("email", user.getEmail());
         response.put("role", user.getRole());
+        response.put("token", tokenService.issue(user));
         return response;
     }
 
@@ -78,6 +95,7 @@ public class UserController {
                 .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Пользователь не найден"));
 
         user.setPassword(passwordEncoder.encode(request.getPassword()));
+        tokenService.revokeAll(user);
         userRepository.save(user);
 
         Map<String, Object> response = new HashMap<>();
@@ -96,7 +114,8 @@ public class UserController {
         response.put("success", true);
         response.put("email", user.getEmail());
         response.put("nickname", user.getEmail()); // пока ник = email
-        response.put("avatar", user.getAvatar());
+        response.put("avatarHash", user.getAvatarHash());
+        response.put("avatarUrl", avatarUrl(user.getAvatarHash(), 256));
         return response;
     }
 
@@ -109,6 +128,7 @@ public class UserController {
                 .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Пользователь не найден"));
 
         user.setPassword(passwordEncoder.encode(body.getPassword()));
+        tokenService.revokeAll(user);
         userRepository.save(user);
 
         Map<String, Object> response = new HashMap<>();
@@ -132,11 +152,27 @@ public class UserController {
         return response;
     }
 
-    // 🖼️ Смена аватара
+    // 🖼️ Смена аватара: multipart-файл, поток пишется на диск без буферизации в памяти
+    @PostMapping(value = "/user/{email}/avatar", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Map<String, Object> uploadAvatar(
+            @PathVariable String email,
+            @RequestParam("file") MultipartFile file) throws IOException {
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Пользователь не найден"));
+        if (file.isEmpty()) {
+            throw new ResponseStatusException(BAD_REQUEST, "Аватар не передан");
+        }
+
+        try (InputStream in = file.getInputStream()) {
+            return saveAvatar(user, avatarStore.store(in));
+        }
+    }
+
+    // Старый формат: base64 в JSON
     @PutMapping("/user/{email}/avatar")
     public Map<String, Object> changeAvatar(
             @PathVariable String email,
-            @RequestBody Map<String, String> body) {
+            @RequestBody Map<String, String> body) throws IOException {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "Пользователь не найден"));
 
@@ -145,12 +181,28 @@ public class UserController {
             throw new ResponseStatusException(BAD_REQUEST, "Аватар не передан");
         }
 
-        user.setAvatar(avatar);
+        byte[] bytes;
+        try {
+            bytes = Base64.getMimeDecoder().decode(avatar.substring(avatar.indexOf(',') + 1).trim());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(BAD_REQUEST, "Аватар должен быть в base64");
+        }
+        return saveAvatar(user, avatarStore.store(new ByteArrayInputStream(bytes)));
+    }
+
+    private Map<String, Object> saveAvatar(User user, String hash) {
+        user.setAvatarHash(hash);
         userRepository.save(user);
 
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
         response.put("message", "Аватар обновлен");
+        response.put("avatarHash", hash);
+        response.put("avatarUrl", avatarUrl(hash, 256));
         return response;
     }
+
+    private static String avatarUrl(String hash, int size) {
+        return hash == null ? null : "/api/avatars/" + hash + "?size=" + size;
+    }
 }
@@ -0,0 +1,11 @@
+package com.example.coffeeshops.user;
+
+import java.util.Optional;
+
+public interface UserLookup {
+    Optional<User> findByEmail(String email);
+
+    boolean existsByEmail(String email);
+
+    Optional<Long> findIdByEmail(String email);
+}
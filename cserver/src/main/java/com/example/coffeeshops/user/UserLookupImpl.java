@@ -0,0 +1,49 @@
+package com.example.coffeeshops.user;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Email lookups through Hibernate's natural-id API: the email resolves to an id in the
+ * users-by-email region and the row comes from the users region, so a warm lookup never
+ * reaches the database. Saves and deletes through the repository keep both regions current.
+ */
+@Transactional(readOnly = true)
+class UserLookupImpl implements UserLookup {
+
+    private final EntityManager entityManager;
+
+    UserLookupImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .loadOptional(email);
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        return findIdByEmail(email).isPresent();
+    }
+
+    @Override
+    public Optional<Long> findIdByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        // A reference is enough: its id is known without initializing the proxy.
+        User user = entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .getReference(email);
+        return Optional.ofNullable(user).map(User::getId);
+    }
+}
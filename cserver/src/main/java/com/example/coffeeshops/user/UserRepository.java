@@ -1,10 +1,19 @@
 package com.example.coffeeshops.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
-import java.util.Optional;
+import java.time.Instant;
+import java.util.List;
 
-public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByEmail(String email);
-    boolean existsByEmail(String email);
+// findByEmail, existsByEmail and findIdByEmail come from UserLookup and are served by the natural-id cache.
+public interface UserRepository extends JpaRepository<User, Long>, UserLookup {
+
+    @Query("select u.id as id, u.tokensValidAfter as tokensValidAfter from User u where u.tokensValidAfter > :since")
+    List<Revocation> findRevocationsSince(Instant since);
+
+    interface Revocation {
+        Long getId();
+        Instant getTokensValidAfter();
+    }
 }
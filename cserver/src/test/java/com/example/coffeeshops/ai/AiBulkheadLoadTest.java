@@ -0,0 +1,271 @@
+package com.example.coffeeshops.ai;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+import com.example.coffeeshops.coffee.CoffeeShopLeaderboard;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// A fixed pool stands in for Tomcat's request threads, shared by chat and catalog requests.
+class AiBulkheadLoadTest {
+
+    private static final int SERVLET_THREADS = 8;
+    private static final int CATALOG_REQUESTS = 150;
+    private static final List<Map<String, String>> MESSAGES = List.of(Map.of("role", "user", "content", "где лучший латте?"));
+
+    @Test
+    void saturatedBulkheadTurnsChatAwayWithoutHoldingRequestThreads() throws Exception {
+        CoffeeShopLeaderboard leaderboard = leaderboard();
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0)) {
+            LlmClient client = client(stub);
+            AiBulkhead bulkhead = new AiBulkhead(2, 3);
+            ThreadPoolExecutor servlet = servletPool();
+            CountDownLatch release = new CountDownLatch(1);
+            List<CompletableFuture<String>> accepted = new CopyOnWriteArrayList<>();
+
+            CountDownLatch handedOver = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                servlet.execute(() -> {
+                    bulkhead.submit(() -> {
+                        await(release);
+                        return chat(client);
+                    }).ifPresent(accepted::add);
+                    handedOver.countDown();
+                });
+            }
+            assertThat(handedOver.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // Every model call is stuck, yet the catalog is served by the free request threads.
+            CountDownLatch served = serveCatalog(servlet, leaderboard);
+            assertThat(served.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(accepted).hasSize(5);
+            assertThat(bulkhead.stats().get("rejected")).isEqualTo(5L);
+            assertThat(bulkhead.stats().get("queued")).isEqualTo(3);
+
+            release.countDown();
+            for (CompletableFuture<String> reply : accepted) {
+                assertThat(reply.get(5, TimeUnit.SECONDS)).isEqualTo("ответ от m");
+            }
+            // One warm-up call plus the five that were let in.
+            assertThat(stub.calls("m")).isEqualTo(6);
+            servlet.shutdownNow();
+            bulkhead.shutdown();
+        }
+    }
+
+    @Test
+    void chatOnRequestThreadsStallsTheCatalog() throws Exception {
+        CoffeeShopLeaderboard leaderboard = leaderboard();
+        ThreadPoolExecutor servlet = servletPool();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch holding = new CountDownLatch(SERVLET_THREADS);
+        for (int i = 0; i < SERVLET_THREADS; i++) {
+            servlet.execute(() -> {
+                holding.countDown();
+                await(release);
+            });
+        }
+        assertThat(holding.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CountDownLatch served = serveCatalog(servlet, leaderboard);
+        assertThat(servlet.getQueue().size()).isEqualTo(CATALOG_REQUESTS);
+        assertThat(served.getCount()).isEqualTo((long) CATALOG_REQUESTS);
+
+        release.countDown();
+        assertThat(served.await(5, TimeUnit.SECONDS)).isTrue();
+        servlet.shutdownNow();
+    }
+
+    @Test
+    void streamsBeyondTheLimitAreTurnedAwayWithoutAnUpstreamCall() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0).streaming(50, 20)) {
+            LlmClient client = client(stub);
+            AiBulkhead bulkhead = new AiBulkhead(2, 3);
+            AiService service = service(client, bulkhead);
+
+            service.openChatStream(new ChatRequest("где лучший латте?"));
+            service.openChatStream(new ChatRequest("где лучший капучино?"));
+            service.openChatStream(new ChatRequest("где лучший раф?"));
+            assertThat(bulkhead.stats().get("streams")).isEqualTo(2);
+            assertThat(bulkhead.stats().get("rejected")).isEqualTo(1L);
+            // One warm-up call plus the two streams that got a slot.
+            awaitCalls(stub, 3);
+
+            // The same question joins the running stream and needs no slot of its own.
+            service.openChatStream(new ChatRequest("Где лучший ЛАТТЕ?"));
+            assertThat(bulkhead.stats().get("rejected")).isEqualTo(1L);
+            Map<?, ?> coalescing = (Map<?, ?>) service.getStats().get("coalescing");
+            assertThat(((Map<?, ?>) coalescing.get("streams")).get("coalesced")).isEqualTo(1L);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!bulkhead.stats().get("streams").equals(0) && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(bulkhead.stats().get("streams")).isEqualTo(0);
+            assertThat(stub.calls("m")).isEqualTo(3);
+            service.openChatStream(new ChatRequest("где лучший раф?"));
+            awaitCalls(stub, 4);
+            bulkhead.shutdown();
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void catalogLatencyStaysFlatWhileChatIsSaturated() throws Exception {
+        CoffeeShopLeaderboard leaderboard = leaderboard();
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 400)) {
+            long[] blocking = run(leaderboard, client(stub), null);
+            AiBulkhead bulkhead = new AiBulkhead(4, 8);
+            long[] isolated = run(leaderboard, client(stub), bulkhead);
+            bulkhead.shutdown();
+
+            assertThat(percentile(isolated, 99)).isLessThan(100L);
+            assertThat(percentile(isolated, 99) * 5).isLessThan(percentile(blocking, 99));
+            assertThat((Long) bulkhead.stats().get("rejected")).isGreaterThan(0L);
+        }
+    }
+
+    // Chat arrives at ~100/s, far above what 400 ms answers allow; returns catalog latencies in ms.
+    private static long[] run(CoffeeShopLeaderboard leaderboard, LlmClient client, AiBulkhead bulkhead)
+            throws InterruptedException {
+        ExecutorService servlet = Executors.newFixedThreadPool(SERVLET_THREADS);
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        Thread chatLoad = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                servlet.execute(() -> {
+                    if (bulkhead == null) {
+                        chat(client);
+                    } else {
+                        // What the controller does: hand the call over and release the thread.
+                        bulkhead.submit(() -> chat(client));
+                    }
+                });
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        chatLoad.start();
+        Thread.sleep(200);
+
+        for (int i = 0; i < CATALOG_REQUESTS; i++) {
+            long submitted = System.nanoTime();
+            servlet.execute(() -> {
+                leaderboard.top(20);
+                latencies.add((System.nanoTime() - submitted) / 1_000_000);
+            });
+            Thread.sleep(5);
+        }
+        chatLoad.interrupt();
+        chatLoad.join();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (latencies.size() < CATALOG_REQUESTS && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        servlet.shutdownNow();
+        return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static CoffeeShopLeaderboard leaderboard() {
+        CoffeeShopLeaderboard leaderboard = new CoffeeShopLeaderboard();
+        Random random = new Random(3);
+        List<CoffeeShop> shops = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            CoffeeShop shop = new CoffeeShop("Кофейня " + i, "ул. Абая, " + i, 51.1, 71.4, random.nextDouble() * 5);
+            shop.setId(i + 1L);
+            shops.add(shop);
+        }
+        leaderboard.onReload(shops);
+        return leaderboard;
+    }
+
+    private static void awaitCalls(LlmStubServer stub, int calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stub.calls("m") < calls && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(stub.calls("m")).isEqualTo(calls);
+    }
+
+    private static AiService service(LlmClient client, AiBulkhead bulkhead) {
+        ChatIntentRouter router = mock(ChatIntentRouter.class);
+        when(router.answer(anyString())).thenReturn(Optional.empty());
+        CatalogPromptIndex promptIndex = new CatalogPromptIndex();
+        AiService service = new AiService(promptIndex, client, new ChatResponseCache(100, Duration.ofMinutes(30)),
+                new ModelCircuitBreakers(3, Duration.ofSeconds(30)), bulkhead, router,
+                new ConversationStore(100, 20, 2000, Duration.ofMinutes(30)), new ChatPromptBuilder(promptIndex, 1500));
+        ReflectionTestUtils.setField(service, "primaryModel", "m");
+        ReflectionTestUtils.setField(service, "modelsProperty", "");
+        ReflectionTestUtils.setField(service, "maxOutputTokens", 50);
+        ReflectionTestUtils.setField(service, "streamTimeout", Duration.ofSeconds(30));
+        return service;
+    }
+
+    private static ThreadPoolExecutor servletPool() {
+        return (ThreadPoolExecutor) Executors.newFixedThreadPool(SERVLET_THREADS);
+    }
+
+    private static CountDownLatch serveCatalog(ExecutorService servlet, CoffeeShopLeaderboard leaderboard) {
+        CountDownLatch served = new CountDownLatch(CATALOG_REQUESTS);
+        for (int i = 0; i < CATALOG_REQUESTS; i++) {
+            servlet.execute(() -> {
+                leaderboard.top(20);
+                served.countDown();
+            });
+        }
+        return served;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Calls still running when a run ends are interrupted; their errors are of no interest.
+    private static String chat(LlmClient client) {
+        try {
+            return client.complete(List.of("m"), MESSAGES, 50);
+        } catch (LlmException e) {
+            return null;
+        }
+    }
+
+    private static LlmClient client(LlmStubServer stub) {
+        LlmClient client = new LlmClient(stub.url(), "test-key", "http://localhost", "CoffeeApp",
+                Duration.ofSeconds(1), Duration.ofSeconds(10), LlmClient.Mode.SEQUENTIAL, 95, Duration.ofSeconds(2), 0.1,
+                new ModelCircuitBreakers(3, Duration.ofSeconds(30)), new ObjectMapper());
+        chat(client);
+        return client;
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p / 100.0 * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.coffeeshops.ai;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AiServiceTest {
+
+    private final LlmClient llmClient = mock(LlmClient.class);
+    private final ChatIntentRouter intentRouter = mock(ChatIntentRouter.class);
+    private final ConversationStore conversations = new ConversationStore(100, 20, 2000, Duration.ofMinutes(30));
+    private final AiBulkhead bulkhead = new AiBulkhead(2, 2);
+    private final AiService service;
+
+    AiServiceTest() {
+        CatalogPromptIndex promptIndex = new CatalogPromptIndex();
+        service = new AiService(promptIndex, llmClient, new ChatResponseCache(100, Duration.ofMinutes(30)),
+                new ModelCircuitBreakers(3, Duration.ofSeconds(30)), bulkhead, intentRouter, conversations,
+                new ChatPromptBuilder(promptIndex, 1500));
+        ReflectionTestUtils.setField(service, "primaryModel", "m");
+        ReflectionTestUtils.setField(service, "modelsProperty", "");
+        ReflectionTestUtils.setField(service, "streamTimeout", Duration.ofSeconds(5));
+        when(intentRouter.answer(anyString())).thenReturn(Optional.of("Лучшая кофейня — Ёлочка"));
+    }
+
+    @Test
+    void onlyTheFirstQuestionIsAnsweredLocally() throws Exception {
+        when(llmClient.isConfigured()).thenReturn(true);
+        when(llmClient.complete(anyList(), anyList(), anyInt())).thenReturn("ул. Шевченко, 29");
+
+        ChatResponse first = service.getChatResponse(new ChatRequest("какая кофейня лучшая?")).get(5, TimeUnit.SECONDS);
+        assertThat(first.getReply()).isEqualTo("Лучшая кофейня — Ёлочка");
+
+        // The router would answer the follow-up as a new question; it needs the earlier turn instead.
+        ChatResponse followUp = service.getChatResponse(new ChatRequest("а адрес?", first.getConversationId()))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(followUp.getReply()).isEqualTo("ул. Шевченко, 29");
+        verify(intentRouter, times(1)).answer(anyString());
+        verify(llmClient, times(1)).complete(anyList(), anyList(), anyInt());
+        assertThat(conversations.history(first.getConversationId())).hasSize(4);
+        bulkhead.shutdown();
+    }
+
+    @Test
+    void streamedFollowUpIsNotAnsweredLocally() throws Exception {
+        ChatResponse first = service.getChatResponse(new ChatRequest("какая кофейня лучшая?")).get(5, TimeUnit.SECONDS);
+
+        // Without an API key the follow-up fails instead of getting the router's answer.
+        service.openChatStream(new ChatRequest("а адрес?", first.getConversationId()));
+        verify(intentRouter, times(1)).answer(anyString());
+        verify(llmClient, times(0)).stream(anyList(), anyList(), anyInt(), any());
+        assertThat(conversations.history(first.getConversationId())).hasSize(2);
+        bulkhead.shutdown();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.coffeeshops.ai;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogPromptIndexTest {
+
+    private static final String[] STREETS = {"Абая", "Достык", "Сатпаева", "Манаса", "Гоголя", "Панфилова"};
+
+    @Test
+    void questionAboutAStreetPutsItsShopsFirstAndFillsUpWithBestRated() {
+        List<CoffeeShop> shops = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            shops.add(shop(i + 1L, "Кофейня " + i, "ул. " + STREETS[i % STREETS.length] + ", " + i, 3.0 + i % 20 / 10.0));
+        }
+        shops.add(shop(100L, "Ёлочка", "ул. Шевченко, 29", 5.0));
+        CatalogPromptIndex index = new CatalogPromptIndex();
+        index.onReload(shops);
+
+        List<String> lines = lines(index.context("Посоветуй кофейню на Достыке", 5));
+        assertThat(lines).hasSize(5);
+        for (String line : lines) {
+            assertThat(line).contains("Достык");
+        }
+
+        // Nothing in the question matches the catalog: best-rated shops only.
+        assertThat(lines(index.context("Как сварить эспрессо?", 3)).get(0)).startsWith("- Ёлочка | ул. Шевченко, 29");
+
+        List<String> elka = lines(index.context("елочка", 3));
+        assertThat(elka.get(0)).startsWith("- Ёлочка");
+        assertThat(elka).hasSize(3);
+    }
+
+    @Test
+    void followsCatalogChanges() {
+        CatalogPromptIndex index = new CatalogPromptIndex();
+        assertThat(index.context("латте", 5)).isEqualTo(CatalogPromptIndex.EMPTY);
+
+        CoffeeShop latte = shop(1L, "Латте Лаб", "ул. Абая, 1", 3.0);
+        index.onReload(List.of(latte, shop(2L, "Бариста", "ул. Манаса, 2", 4.5)));
+        assertThat(lines(index.context("латте", 1))).containsExactly(String.format("- Латте Лаб | ул. Абая, 1 | рейтинг %.1f", 3.0));
+
+        latte.setRating(4.8);
+        index.onUpdated(latte);
+        assertThat(index.context("латте", 1)).contains(String.format("рейтинг %.1f", 4.8));
+
+        index.onDeleted(latte);
+        assertThat(lines(index.context("латте", 5))).containsExactly(String.format("- Бариста | ул. Манаса, 2 | рейтинг %.1f", 4.5));
+    }
+
+    @Test
+    void versionMovesOnlyWhenThePromptWouldChange() {
+        CatalogPromptIndex index = new CatalogPromptIndex();
+        CoffeeShop latte = shop(1L, "Латте Лаб", "ул. Абая, 1", 4.51);
+        index.onReload(List.of(latte));
+        long version = index.version();
+
+        // A rating flush that keeps the shop at the same tenth is invisible to the model.
+        latte.setRating(4.54);
+        index.onUpdated(latte);
+        assertThat(index.version()).isEqualTo(version);
+
+        latte.setRating(4.56);
+        index.onUpdated(latte);
+        assertThat(index.version()).isGreaterThan(version);
+        version = index.version();
+
+        latte.setName("Латте Лаб 2");
+        index.onUpdated(latte);
+        assertThat(index.version()).isGreaterThan(version);
+        version = index.version();
+
+        CoffeeShop barista = shop(2L, "Бариста", "ул. Манаса, 2", 4.0);
+        index.onCreated(barista);
+        assertThat(index.version()).isGreaterThan(version);
+        version = index.version();
+
+        index.onDeleted(barista);
+        assertThat(index.version()).isGreaterThan(version);
+        version = index.version();
+
+        index.onDeleted(barista);
+        assertThat(index.version()).isEqualTo(version);
+    }
+
+    private static List<String> lines(String context) {
+        return List.of(context.split("\n"));
+    }
+
+    private static CoffeeShop shop(Long id, String name, String address, double rating) {
+        CoffeeShop shop = new CoffeeShop(name, address, 51.1, 71.4, rating);
+        shop.setId(id);
+        return shop;
+    }
+}
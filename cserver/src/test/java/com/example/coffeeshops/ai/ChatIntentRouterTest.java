@@ -0,0 +1,78 @@
+package com.example.coffeeshops.ai;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+import com.example.coffeeshops.coffee.CoffeeShopLeaderboard;
+import com.example.coffeeshops.coffee.CoffeeShopSearchIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatIntentRouterTest {
+
+    private final CoffeeShopLeaderboard leaderboard = new CoffeeShopLeaderboard();
+    private final CoffeeShopSearchIndex searchIndex = new CoffeeShopSearchIndex();
+    private final ChatIntentRouter router = new ChatIntentRouter(leaderboard, searchIndex);
+
+    ChatIntentRouterTest() {
+        List<CoffeeShop> shops = List.of(
+                shop(1L, "Ёлочка", "ул. Шевченко, 29", 4.9),
+                shop(2L, "Зерно", "ул. Достык, 5", 4.6),
+                shop(3L, "Латте Лаб", "ул. Достык, 40", 4.2),
+                shop(4L, "Бариста", "пр. Абая, 12", 3.8));
+        leaderboard.onReload(shops);
+        searchIndex.onReload(shops);
+        router.onReload(shops);
+    }
+
+    @Test
+    void answersCatalogLookupsLocally() {
+        assertThat(router.answer("Какая кофейня лучшая?"))
+                .contains("Самый высокий рейтинг у «Ёлочка» (ул. Шевченко, 29) — 4.9."
+                        + " Следом идут «Зерно» (ул. Достык, 5) — 4.6 и «Латте Лаб» (ул. Достык, 40) — 4.2.");
+        assertThat(router.answer("Где выпить кофе на Достыке?"))
+                .contains("Кофейни на этой улице, по рейтингу: «Зерно» (ул. Достык, 5) — 4.6,"
+                        + " «Латте Лаб» (ул. Достык, 40) — 4.2.");
+        assertThat(router.answer("посоветуй кофейню на проспекте Абая"))
+                .contains("Кофейни на этой улице, по рейтингу: «Бариста» (пр. Абая, 12) — 3.8.");
+        assertThat(router.answer("Какой рейтинг у Елочки?"))
+                .contains("Рейтинг «Ёлочка» (ул. Шевченко, 29) — 4.9 из 5.");
+
+        Map<String, Object> stats = router.stats();
+        assertThat(stats.get("routed")).isEqualTo(4L);
+        assertThat(stats.get("forwarded")).isEqualTo(0L);
+        assertThat(stats.get("routedByIntent")).isEqualTo(Map.of("street", 2L, "shop_rating", 1L, "best_rated", 1L));
+    }
+
+    @Test
+    void openEndedOrUnknownQuestionsGoToTheModel() {
+        assertThat(router.answer("Как сварить лучший кофе в турке?")).isEmpty();
+        assertThat(router.answer("Чем отличается латте от капучино?")).isEmpty();
+        assertThat(router.answer("Что взять на завтрак к кофе?")).isEmpty();
+        assertThat(router.answer("Какой рейтинг у Старбакса?")).isEmpty();
+        assertThat(router.answer("Привет! Как дела?")).isEmpty();
+
+        assertThat(router.stats().get("forwarded")).isEqualTo(5L);
+        assertThat(router.stats().get("routedShare")).isEqualTo(0.0);
+    }
+
+    @Test
+    void followsCatalogChanges() {
+        CoffeeShop fresh = shop(5L, "Обжарка", "ул. Шевченко, 3", 5.0);
+        leaderboard.onCreated(fresh);
+        router.onCreated(fresh);
+        assertThat(router.answer("кофейни на Шевченко").orElseThrow()).startsWith("Кофейни на этой улице, по рейтингу: «Обжарка»");
+
+        router.onDeleted(shop(4L, "Бариста", "пр. Абая, 12", 3.8));
+        assertThat(router.answer("кофейни на Абая")).isEqualTo(Optional.empty());
+    }
+
+    private static CoffeeShop shop(Long id, String name, String address, double rating) {
+        CoffeeShop shop = new CoffeeShop(name, address, 51.1, 71.4, rating);
+        shop.setId(id);
+        return shop;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.coffeeshops.ai;
+
+import com.example.coffeeshops.coffee.CoffeeShop;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatPromptBuilderTest {
+
+    private static final String[] STREETS = {"Абая", "Достык", "Сатпаева", "Манаса", "Гоголя", "Панфилова"};
+    private static final int BUDGET = 800;
+
+    @Test
+    void longConversationFitsTheBudgetWithRecentTurnsVerbatim() {
+        ChatPromptBuilder builder = new ChatPromptBuilder(catalog(), BUDGET);
+        List<ConversationStore.Turn> history = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            history.add(new ConversationStore.Turn("user", "Вопрос " + i + ": что выпить в кофейне на улице " + STREETS[i % STREETS.length] + "?"));
+            history.add(new ConversationStore.Turn("assistant", "Ответ " + i + ". " + "Попробуйте флэт уайт. ".repeat(15)));
+        }
+
+        List<Map<String, String>> messages = builder.build("А десерты там есть?", history);
+        assertThat(ChatPromptBuilder.tokens(messages)).isLessThanOrEqualTo(BUDGET);
+
+        assertThat(messages.get(messages.size() - 1)).isEqualTo(Map.of("role", "user", "content", "А десерты там есть?"));
+        // The newest turns go as they were, in order.
+        int recent = messages.size() - 2;
+        assertThat(recent).isGreaterThan(0);
+        List<ConversationStore.Turn> kept = history.subList(history.size() - recent, history.size());
+        for (int i = 0; i < recent; i++) {
+            assertThat(messages.get(i + 1)).isEqualTo(Map.of("role", kept.get(i).role(), "content", kept.get(i).content()));
+        }
+
+        // Older questions survive in the summary; the shop list follows the previous question (Достык).
+        String system = messages.get(0).get("content");
+        String olderQuestion = history.get(history.size() - recent - 2).content();
+        assertThat(system.contains("Ранее в разговоре пользователь спрашивал: ")).isTrue();
+        assertThat(system.contains(olderQuestion)).isTrue();
+        String shops = system.substring(system.indexOf("Кофейни из базы:\n") + "Кофейни из базы:\n".length());
+        assertThat(shops).startsWith("- ");
+        assertThat(shops.lines().findFirst().orElseThrow().contains("Достык")).isTrue();
+    }
+
+    @Test
+    void firstQuestionGetsTheWholeBudgetForShops() {
+        ChatPromptBuilder builder = new ChatPromptBuilder(catalog(), BUDGET);
+
+        List<Map<String, String>> messages = builder.build("Где выпить кофе?", List.of());
+        assertThat(messages).hasSize(2);
+        assertThat(ChatPromptBuilder.tokens(messages)).isLessThanOrEqualTo(BUDGET);
+        String system = messages.get(0).get("content");
+        assertThat(system.contains("Ранее в разговоре")).isFalse();
+        // All 15 prompt shops fit when there is no history to share the budget with.
+        assertThat(system.lines().filter(line -> line.startsWith("- ")).count()).isEqualTo(15L);
+    }
+
+    @Test
+    void historyAndShopsGiveWayWhenTheBudgetIsSmall() {
+        List<ConversationStore.Turn> history = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            history.add(new ConversationStore.Turn("user", "Где хороший раф на улице " + STREETS[i] + "?"));
+            history.add(new ConversationStore.Turn("assistant", "Загляните в кофейню на " + STREETS[i] + ". ".repeat(40)));
+        }
+
+        // Room for the rules, the question and a little more, but not for the whole shop list and history.
+        int budget = 200;
+        List<Map<String, String>> small = new ChatPromptBuilder(catalog(), budget).build("А десерты там есть?", history);
+        assertThat(ChatPromptBuilder.tokens(small)).isLessThanOrEqualTo(budget);
+        assertThat(shopLines(small)).isLessThan(15L);
+
+        // Below what the rules and the question need: no history and no shop, rather than going further over.
+        List<Map<String, String>> tiny = new ChatPromptBuilder(catalog(), 100).build("А десерты там есть?", history);
+        assertThat(tiny).hasSize(2);
+        assertThat(shopLines(tiny)).isEqualTo(0L);
+        assertThat(tiny.get(0).get("content").contains("Кофейни из базы")).isFalse();
+        assertThat(tiny.get(1)).isEqualTo(Map.of("role", "user", "content", "А десерты там есть?"));
+    }
+
+    private static long shopLines(List<Map<String, String>> messages) {
+        return messages.get(0).get("content").lines().filter(line -> line.startsWith("- ")).count();
+    }
+
+    private static CatalogPromptIndex catalog() {
+        List<CoffeeShop> shops = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            CoffeeShop shop = new CoffeeShop("Кофейня " + i, "ул. " + STREETS[i % STREETS.length] + ", " + i, 51.1, 71.4, 3.0 + i % 20 / 10.0);
+            shop.setId(i + 1L);
+            shops.add(shop);
+        }
+        CatalogPromptIndex index = new CatalogPromptIndex();
+        index.onReload(shops);
+        return index;
+    }
+}
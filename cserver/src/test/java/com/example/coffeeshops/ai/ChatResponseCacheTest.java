@@ -0,0 +1,46 @@
+package com.example.coffeeshops.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatResponseCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final ChatResponseCache cache = new ChatResponseCache(2, Duration.ofMinutes(30), now::get);
+
+    @Test
+    void sameQuestionInAnotherSpellingHitsUntilTheCatalogChanges() {
+        cache.put(ChatResponseCache.key("Где лучший латте?", "gpt-4o-mini", 7), "В «Зерне»", TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(cache.get(ChatResponseCache.key("где  лучший латте", "gpt-4o-mini", 7))).contains("В «Зерне»");
+        assertThat(cache.get(ChatResponseCache.key("Где лучший латте?", "gpt-4o-mini", 8))).isEmpty();
+        assertThat(cache.get(ChatResponseCache.key("Где лучший латте?", "other-model", 7))).isEmpty();
+
+        Map<String, Object> stats = cache.stats();
+        assertThat(stats.get("hits")).isEqualTo(1L);
+        assertThat(stats.get("misses")).isEqualTo(2L);
+        assertThat(stats.get("savedMs")).isEqualTo(2_000L);
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvictedAndOldAnswersExpire() {
+        cache.put(ChatResponseCache.key("a", "m", 1), "A", 0);
+        cache.put(ChatResponseCache.key("b", "m", 1), "B", 0);
+        cache.get(ChatResponseCache.key("a", "m", 1));
+        cache.put(ChatResponseCache.key("c", "m", 1), "C", 0);
+
+        assertThat(cache.get(ChatResponseCache.key("b", "m", 1))).isEmpty();
+        assertThat(cache.get(ChatResponseCache.key("a", "m", 1))).isNotEmpty();
+        assertThat(cache.stats().get("evictions")).isEqualTo(1L);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(31));
+        assertThat(cache.get(ChatResponseCache.key("c", "m", 1))).isEmpty();
+        assertThat(cache.stats().get("entries")).isEqualTo(1);
+    }
+}
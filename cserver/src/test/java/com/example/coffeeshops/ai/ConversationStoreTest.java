@@ -0,0 +1,64 @@
+package com.example.coffeeshops.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void dropsLeastRecentlyUsedAndIdleConversations() {
+        ConversationStore store = new ConversationStore(2, 20, 2000, Duration.ofMinutes(30), now::get);
+        String first = store.open(null);
+        String second = store.open(null);
+        assertThat(store.open(first)).isEqualTo(first);
+
+        // The second conversation is now the least recently used one.
+        String third = store.open(null);
+        assertThat(store.stats().get("evicted")).isEqualTo(1L);
+        assertThat(store.open(first)).isEqualTo(first);
+        assertThat(store.history(second)).isEmpty();
+
+        // Unknown ids are never adopted.
+        assertThat(store.open("made-up")).isNotEqualTo("made-up");
+
+        now.addAndGet(Duration.ofMinutes(31).toNanos());
+        assertThat(store.open(third)).isNotEqualTo(third);
+        Map<String, Object> stats = store.stats();
+        assertThat(stats.get("sessions")).isEqualTo(1);
+        assertThat(stats.get("expired")).isEqualTo(2L);
+    }
+
+    @Test
+    void keepsOnlyTheLastTurnsAndCountsTheirMemory() {
+        ConversationStore store = new ConversationStore(10, 4, 10, Duration.ofMinutes(30), now::get);
+        String id = store.open(null);
+        store.append(id, "вопрос 1", "ответ 1");
+        store.append(id, "вопрос 2", "ответ 2");
+        store.append(id, "очень длинный вопрос 3", "ответ 3");
+
+        List<ConversationStore.Turn> history = store.history(id);
+        assertThat(history).containsExactly(
+                new ConversationStore.Turn("user", "вопрос 2"),
+                new ConversationStore.Turn("assistant", "ответ 2"),
+                new ConversationStore.Turn("user", "очень длин"),
+                new ConversationStore.Turn("assistant", "ответ 3"));
+
+        long chars = history.stream().mapToLong(t -> t.content().length()).sum();
+        Map<String, Object> stats = store.stats();
+        assertThat(stats.get("turns")).isEqualTo(4L);
+        assertThat(stats.get("bytes")).isEqualTo(200 + 4 * 64 + chars * 2);
+        assertThat(stats.get("maxBytesPerSession")).isEqualTo(stats.get("bytes"));
+
+        // A conversation dropped while the model was answering is not brought back.
+        store.append("gone", "вопрос", "ответ");
+        assertThat(store.stats().get("sessions")).isEqualTo(1);
+    }
+}
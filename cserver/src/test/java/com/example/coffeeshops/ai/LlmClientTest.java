@@ -0,0 +1,113 @@
+package com.example.coffeeshops.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmClientTest {
+
+    private static final List<Map<String, String>> MESSAGES = List.of(Map.of("role", "user", "content", "где лучший латте?"));
+
+    private final AtomicLong now = new AtomicLong();
+    private final ModelCircuitBreakers breakers = new ModelCircuitBreakers(3, Duration.ofSeconds(30), now::get);
+
+    @Test
+    void slowModelTimesOutAndTheNextOneAnswers() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("slow", 200, 2_000).model("fast", 200, 20)) {
+            LlmClient client = client(stub, Duration.ofMillis(300));
+
+            long t0 = System.nanoTime();
+            String reply = client.complete(List.of("slow", "fast"), MESSAGES, 50);
+            long elapsedMs = (System.nanoTime() - t0) / 1_000_000;
+
+            assertThat(reply).isEqualTo("ответ от fast");
+            assertThat(elapsedMs < 1_500).isTrue();
+        }
+    }
+
+    @Test
+    void openBreakerFailsFastUntilProbeSucceeds() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("primary", 500, 0)) {
+            LlmClient client = client(stub, Duration.ofSeconds(2));
+
+            for (int i = 0; i < 8; i++) {
+                assertThat(error(client, List.of("primary"))).isNotNull();
+            }
+            // Three failures in a row open the breaker; the other five requests never reach the upstream.
+            assertThat(stub.calls("primary")).isEqualTo(3);
+            assertThat(error(client, List.of("primary"))).isEqualTo("AI временно недоступен, попробуйте позже");
+
+            // After the cool-down the recovered model gets a probe, which closes the breaker.
+            stub.model("primary", 200, 0);
+            now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+            assertThat(client.complete(List.of("primary"), MESSAGES, 50)).isEqualTo("ответ от primary");
+            assertThat(client.complete(List.of("primary"), MESSAGES, 50)).isEqualTo("ответ от primary");
+            assertThat(((Map<?, ?>) breakers.snapshot().get("primary")).get("state")).isEqualTo("closed");
+        }
+    }
+
+    @Test
+    void failedProbeReopensImmediately() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("primary", 503, 0)) {
+            LlmClient client = client(stub, Duration.ofSeconds(2));
+            for (int i = 0; i < 3; i++) {
+                error(client, List.of("primary"));
+            }
+
+            now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+            assertThat(error(client, List.of("primary"))).isEqualTo("primary недоступна");
+            assertThat(error(client, List.of("primary"))).isEqualTo("AI временно недоступен, попробуйте позже");
+
+            assertThat(stub.calls("primary")).isEqualTo(4);
+            assertThat(((Map<?, ?>) breakers.snapshot().get("primary")).get("state")).isEqualTo("open");
+        }
+    }
+
+    @Test
+    void healthierModelIsTriedFirst() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("flaky", 200, 0).model("steady", 200, 0)) {
+            LlmClient client = client(stub, Duration.ofSeconds(2));
+            // One failure lowers the success rate without opening the breaker.
+            stub.model("flaky", 500, 0);
+            client.complete(List.of("flaky", "steady"), MESSAGES, 50);
+            stub.model("flaky", 200, 0);
+
+            assertThat(breakers.order(List.of("flaky", "steady"))).isEqualTo(List.of("steady", "flaky"));
+            assertThat(client.complete(List.of("flaky", "steady"), MESSAGES, 50)).isEqualTo("ответ от steady");
+            assertThat(stub.calls("flaky")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void connectionsAreReusedAcrossRequests() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0)) {
+            LlmClient client = client(stub, Duration.ofSeconds(2));
+            for (int i = 0; i < 50; i++) {
+                client.complete(List.of("m"), MESSAGES, 50);
+            }
+            assertThat(stub.connections() <= 2).isTrue();
+        }
+    }
+
+    private static String error(LlmClient client, List<String> models) {
+        try {
+            client.complete(models, MESSAGES, 50);
+            return null;
+        } catch (LlmException e) {
+            return e.getMessage();
+        }
+    }
+
+    private LlmClient client(LlmStubServer stub, Duration requestTimeout) {
+        return new LlmClient(stub.url(), "test-key", "http://localhost", "CoffeeApp",
+                Duration.ofSeconds(1), requestTimeout, LlmClient.Mode.SEQUENTIAL, 95, Duration.ofSeconds(2), 0.1,
+                breakers, new ObjectMapper());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.coffeeshops.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmHedgingTest {
+
+    private static final List<Map<String, String>> MESSAGES = List.of(Map.of("role", "user", "content", "где лучший латте?"));
+    private static final List<String> MODELS = List.of("primary", "backup");
+    private static final int REQUESTS = 60;
+
+    @Test
+    @Tag("benchmark")
+    void hedgingCutsTheTailOfASlowPrimary() throws Exception {
+        long[] sequential = latencies(LlmClient.Mode.SEQUENTIAL);
+        long[] hedged = latencies(LlmClient.Mode.HEDGED);
+
+        assertThat(percentile(hedged, 99)).isLessThan(percentile(sequential, 99) / 2);
+        assertThat(percentile(hedged, 50)).isLessThan(percentile(sequential, 50) + 30);
+    }
+
+    @Test
+    void failingPrimaryStartsBackupEvenWithoutHedgeBudget() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("primary", 500, 0).model("backup", 200, 20)) {
+            // No hedges allowed: the backup can only be reached as a failover.
+            LlmClient client = client(stub, LlmClient.Mode.HEDGED,
+                    new ModelCircuitBreakers(100, Duration.ofSeconds(30), System::nanoTime), Duration.ofSeconds(2), 0);
+
+            assertThat(client.complete(MODELS, MESSAGES, 50)).isEqualTo("ответ от backup");
+            assertThat(stub.calls("primary")).isEqualTo(1);
+            assertThat(stub.calls("backup")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void hedgesAreCappedAtTheConfiguredShareOfRequests() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("primary", 200, 300).model("backup", 200, 10)) {
+            ModelCircuitBreakers breakers = new ModelCircuitBreakers(3, Duration.ofSeconds(30), System::nanoTime);
+            LlmClient client = client(stub, LlmClient.Mode.HEDGED, breakers, Duration.ofMillis(50), 0.25);
+
+            for (int i = 0; i < 8; i++) {
+                client.complete(MODELS, MESSAGES, 50);
+            }
+            // Every call outlives the hedge delay, but only every fourth may start a hedge.
+            assertThat(stub.calls("primary")).isEqualTo(8);
+            assertThat(stub.calls("backup")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void cancelledLosersStillFeedTheHedgePercentile() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("primary", 200, 1_000).model("backup", 200, 10)) {
+            ModelCircuitBreakers breakers = new ModelCircuitBreakers(3, Duration.ofSeconds(30), System::nanoTime);
+            LlmClient client = client(stub, LlmClient.Mode.HEDGED, breakers, Duration.ofMillis(50), 1);
+
+            for (int i = 0; i < 20; i++) {
+                assertThat(client.complete(MODELS, MESSAGES, 50)).isEqualTo("ответ от backup");
+            }
+            // The primary never answered, yet its percentile reflects that it is slower than the delay.
+            assertThat(breakers.latencyPercentile("primary", 90)).isGreaterThanOrEqualTo(50L);
+        }
+    }
+
+    @Test
+    void cancelledLoserIsNotCountedAsFailure() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("primary", 200, 1_000).model("backup", 200, 10)) {
+            ModelCircuitBreakers breakers = new ModelCircuitBreakers(1, Duration.ofSeconds(30), System::nanoTime);
+            LlmClient client = client(stub, LlmClient.Mode.HEDGED, breakers, Duration.ofMillis(50), 1);
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(client.complete(MODELS, MESSAGES, 50)).isEqualTo("ответ от backup");
+            }
+            Map<?, ?> primary = (Map<?, ?>) breakers.snapshot().get("primary");
+            assertThat(primary.get("state")).isEqualTo("closed");
+            assertThat(primary.get("consecutiveFailures")).isEqualTo(0);
+        }
+    }
+
+    // Every 20th primary call stalls for 800 ms; the backup always answers in about 60 ms.
+    private long[] latencies(LlmClient.Mode mode) throws Exception {
+        AtomicInteger primaryCalls = new AtomicInteger();
+        try (LlmStubServer stub = new LlmStubServer()
+                .model("primary", 200, () -> primaryCalls.incrementAndGet() % 20 == 0 ? 800 : 30)
+                .model("backup", 200, 60)) {
+            ModelCircuitBreakers breakers = new ModelCircuitBreakers(3, Duration.ofSeconds(30), System::nanoTime);
+            LlmClient client = client(stub, mode, breakers, Duration.ofMillis(150), 1);
+
+            long[] latencies = new long[REQUESTS];
+            for (int i = 0; i < REQUESTS; i++) {
+                long t0 = System.nanoTime();
+                client.complete(MODELS, MESSAGES, 50);
+                latencies[i] = (System.nanoTime() - t0) / 1_000_000;
+            }
+            Arrays.sort(latencies);
+            return latencies;
+        }
+    }
+
+    private static LlmClient client(LlmStubServer stub, LlmClient.Mode mode, ModelCircuitBreakers breakers,
+                                    Duration initialDelay, double hedgeMaxRate) {
+        return new LlmClient(stub.url(), "test-key", "http://localhost", "CoffeeApp",
+                Duration.ofSeconds(1), Duration.ofSeconds(5), mode, 90, initialDelay, hedgeMaxRate, breakers, new ObjectMapper());
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+}
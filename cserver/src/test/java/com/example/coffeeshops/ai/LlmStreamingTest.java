@@ -0,0 +1,106 @@
+package com.example.coffeeshops.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmStreamingTest {
+
+    private static final List<Map<String, String>> MESSAGES = List.of(Map.of("role", "user", "content", "где лучший латте?"));
+
+    private final ModelCircuitBreakers breakers = new ModelCircuitBreakers(3, Duration.ofSeconds(30), System::nanoTime);
+
+    @Test
+    void deltasArriveWhileTheModelIsStillWriting() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0).streaming(10, 60)) {
+            List<String> deltas = new CopyOnWriteArrayList<>();
+            int[] wordsWrittenAtFirstDelta = {-1};
+
+            LlmClient.StreamingReply reply = client(stub).stream(List.of("m"), MESSAGES, 50, delta -> {
+                if (deltas.isEmpty()) {
+                    wordsWrittenAtFirstDelta[0] = stub.streamedWords();
+                }
+                deltas.add(delta);
+            });
+            String text = reply.result().get(5, TimeUnit.SECONDS);
+
+            assertThat(text).isEqualTo("ответ от m" + " кофе".repeat(10));
+            assertThat(String.join("", deltas)).isEqualTo(text);
+            assertThat(deltas).hasSize(13);
+            assertThat(wordsWrittenAtFirstDelta[0]).isLessThan(10);
+            assertThat(stub.calls("m")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void firstDeltaArrivesLongBeforeTheWholeAnswer() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0).streaming(10, 60)) {
+            LlmClient client = client(stub);
+            // Warm-up: class loading and the first connection are not what is measured.
+            client.stream(List.of("m"), MESSAGES, 50, delta -> {}).result().get(5, TimeUnit.SECONDS);
+
+            long[] firstDeltaAt = {0};
+            long t0 = System.nanoTime();
+            client.stream(List.of("m"), MESSAGES, 50, delta -> {
+                if (firstDeltaAt[0] == 0) {
+                    firstDeltaAt[0] = System.nanoTime();
+                }
+            }).result().get(5, TimeUnit.SECONDS);
+            long totalNanos = System.nanoTime() - t0;
+
+            assertThat((firstDeltaAt[0] - t0) * 3).isLessThan(totalNanos);
+        }
+    }
+
+    @Test
+    void failingModelFallsBackBeforeAnythingWasStreamed() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("broken", 503, 0).model("backup", 200, 0)) {
+            List<String> deltas = new CopyOnWriteArrayList<>();
+            LlmClient.StreamingReply reply = client(stub).stream(List.of("broken", "backup"), MESSAGES, 50, deltas::add);
+
+            assertThat(reply.result().get(5, TimeUnit.SECONDS)).isEqualTo("ответ от backup");
+            assertThat(String.join("", deltas)).isEqualTo("ответ от backup");
+            assertThat(stub.calls("broken")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void readerThatGoesAwayCancelsTheUpstreamStream() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0).streaming(100, 20)) {
+            List<String> deltas = new CopyOnWriteArrayList<>();
+            LlmClient.StreamingReply reply = client(stub).stream(List.of("m"), MESSAGES, 50, delta -> {
+                deltas.add(delta);
+                if (deltas.size() == 5) {
+                    throw new IOException("Broken pipe");
+                }
+            });
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (stub.abortedStreams() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(stub.abortedStreams()).isEqualTo(1);
+            assertThat(stub.streamedWords()).isLessThan(20);
+            assertThat(deltas).hasSize(5);
+            assertThat(reply.result().isCancelled()).isTrue();
+            // A cancelled stream is not held against the model.
+            assertThat(((Map<?, ?>) breakers.snapshot().get("m")).get("state")).isEqualTo("closed");
+        }
+    }
+
+    private LlmClient client(LlmStubServer stub) {
+        return new LlmClient(stub.url(), "test-key", "http://localhost", "CoffeeApp",
+                Duration.ofSeconds(1), Duration.ofSeconds(2), LlmClient.Mode.SEQUENTIAL, 95, Duration.ofSeconds(2), 0.1,
+                breakers, new ObjectMapper());
+    }
+}
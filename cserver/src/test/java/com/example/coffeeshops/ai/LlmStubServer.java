@@ -0,0 +1,146 @@
+package com.example.coffeeshops.ai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Local chat-completions endpoint whose models answer after an injected delay or with an error status.
+// Streamed requests get the answer word by word as server-sent events, followed by filler words.
+class LlmStubServer implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Behavior> behaviors = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger streamedWords = new AtomicInteger();
+    private final AtomicInteger abortedStreams = new AtomicInteger();
+    private volatile int fillerWords;
+    private volatile long wordDelayMs;
+
+    record Behavior(int status, LongSupplier delayMs) {}
+
+    LlmStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    LlmStubServer model(String model, int status, long delayMs) {
+        return model(model, status, () -> delayMs);
+    }
+
+    LlmStubServer model(String model, int status, LongSupplier delayMs) {
+        behaviors.put(model, new Behavior(status, delayMs));
+        return this;
+    }
+
+    LlmStubServer streaming(int fillerWords, long wordDelayMs) {
+        this.fillerWords = fillerWords;
+        this.wordDelayMs = wordDelayMs;
+        return this;
+    }
+
+    int streamedWords() {
+        return streamedWords.get();
+    }
+
+    int abortedStreams() {
+        return abortedStreams.get();
+    }
+
+    int calls(String model) {
+        AtomicInteger count = calls.get(model);
+        return count == null ? 0 : count.get();
+    }
+
+    int connections() {
+        return clientPorts.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        String model = request.path("model").asText();
+        calls.computeIfAbsent(model, m -> new AtomicInteger()).incrementAndGet();
+        Behavior behavior = behaviors.getOrDefault(model, new Behavior(404, () -> 0));
+
+        try {
+            Thread.sleep(behavior.delayMs().getAsLong());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (behavior.status() == 200 && request.path("stream").asBoolean()) {
+            stream(exchange, model);
+            return;
+        }
+
+        String body = behavior.status() == 200
+                ? objectMapper.writeValueAsString(Map.of("choices", new Object[]{
+                        Map.of("message", Map.of("role", "assistant", "content", "ответ от " + model))}))
+                : objectMapper.writeValueAsString(Map.of("error", Map.of("message", model + " недоступна")));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders(behavior.status(), bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // The client gave up (timeout or cancelled hedge).
+        }
+    }
+
+    private void stream(HttpExchange exchange, String model) {
+        List<String> words = new ArrayList<>(List.of("ответ", " от", " " + model));
+        for (int i = 0; i < fillerWords; i++) {
+            words.add(" кофе");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 0);
+            out.write(": keep-alive\n\n".getBytes(StandardCharsets.UTF_8));
+            for (String word : words) {
+                String chunk = objectMapper.writeValueAsString(Map.of("choices", new Object[]{
+                        Map.of("delta", Map.of("content", word))}));
+                out.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                streamedWords.incrementAndGet();
+                Thread.sleep(wordDelayMs);
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            abortedStreams.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
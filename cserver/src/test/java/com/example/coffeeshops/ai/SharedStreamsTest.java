@@ -0,0 +1,108 @@
+package com.example.coffeeshops.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedStreamsTest {
+
+    private static final List<Map<String, String>> MESSAGES = List.of(Map.of("role", "user", "content", "где лучший латте?"));
+    private static final String ANSWER = "ответ от m" + " кофе".repeat(10);
+    private static final ChatResponseCache.Key KEY = ChatResponseCache.key("Где лучший латте?", "m", 1);
+
+    @Test
+    void readersOfTheSameQuestionShareOneUpstreamStream() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0).streaming(10, 30)) {
+            LlmClient client = client(stub);
+            SharedStreams<ChatResponseCache.Key> streams = new SharedStreams<>();
+            List<String> first = new CopyOnWriteArrayList<>();
+            CountDownLatch started = new CountDownLatch(3);
+
+            SharedStreams<ChatResponseCache.Key>.Subscription leader = streams.join(KEY,
+                    listener -> client.stream(List.of("m"), MESSAGES, 50, listener), delta -> {
+                        first.add(delta);
+                        started.countDown();
+                    });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // Joins mid-answer: the text so far arrives as one delta, then the rest as it comes.
+            List<String> late = new CopyOnWriteArrayList<>();
+            SharedStreams<ChatResponseCache.Key>.Subscription follower = streams.join(
+                    ChatResponseCache.key("где  лучший ЛАТТЕ", "m", 1),
+                    listener -> {
+                        throw new AssertionError("a second upstream stream was started");
+                    }, late::add);
+
+            assertThat(leader.result().get(5, TimeUnit.SECONDS)).isEqualTo(ANSWER);
+            assertThat(follower.result().get(5, TimeUnit.SECONDS)).isEqualTo(ANSWER);
+            assertThat(String.join("", first)).isEqualTo(ANSWER);
+            assertThat(String.join("", late)).isEqualTo(ANSWER);
+            assertThat(late.size()).isLessThan(first.size());
+            assertThat(stub.calls("m")).isEqualTo(1);
+
+            Map<String, Object> stats = streams.stats();
+            assertThat(stats.get("upstreamCalls")).isEqualTo(1L);
+            assertThat(stats.get("coalesced")).isEqualTo(1L);
+            assertThat(stats.get("coalescingRatio")).isEqualTo(0.5);
+            assertThat(stats.get("inFlight")).isEqualTo(0);
+        }
+    }
+
+    @Test
+    void upstreamIsCancelledOnlyWhenTheLastReaderGoes() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 0).streaming(100, 20)) {
+            LlmClient client = client(stub);
+            SharedStreams<ChatResponseCache.Key> streams = new SharedStreams<>();
+            List<String> stays = new CopyOnWriteArrayList<>();
+            List<String> breaks = new ArrayList<>();
+            CountDownLatch started = new CountDownLatch(2);
+
+            SharedStreams<ChatResponseCache.Key>.Subscription leaving = streams.join(KEY,
+                    listener -> client.stream(List.of("m"), MESSAGES, 50, listener), delta -> started.countDown());
+            SharedStreams<ChatResponseCache.Key>.Subscription broken = streams.join(KEY, listener -> null, delta -> {
+                breaks.add(delta);
+                throw new IOException("Broken pipe");
+            });
+            SharedStreams<ChatResponseCache.Key>.Subscription staying = streams.join(KEY, listener -> null, stays::add);
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            leaving.cancel();
+            assertThat(leaving.result().isCancelled()).isTrue();
+            assertThat(broken.result().isCancelled()).isTrue();
+            assertThat(breaks).hasSize(1);
+            // Somebody still reads: the stream goes on.
+            int words = stub.streamedWords();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (stub.streamedWords() < words + 5 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(stub.abortedStreams()).isEqualTo(0);
+
+            staying.cancel();
+            while (stub.abortedStreams() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(stub.abortedStreams()).isEqualTo(1);
+            assertThat(stub.streamedWords()).isLessThan(100);
+            assertThat(staying.result().isCancelled()).isTrue();
+            assertThat(stub.calls("m")).isEqualTo(1);
+            assertThat(streams.stats().get("inFlight")).isEqualTo(0);
+        }
+    }
+
+    private static LlmClient client(LlmStubServer stub) {
+        return new LlmClient(stub.url(), "test-key", "http://localhost", "CoffeeApp",
+                Duration.ofSeconds(1), Duration.ofSeconds(5), LlmClient.Mode.SEQUENTIAL, 95, Duration.ofSeconds(2), 0.1,
+                new ModelCircuitBreakers(3, Duration.ofSeconds(30)), new ObjectMapper());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.coffeeshops.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    private static final List<Map<String, String>> MESSAGES = List.of(Map.of("role", "user", "content", "где лучший латте?"));
+    private static final int CALLERS = 50;
+
+    @Test
+    void identicalConcurrentQuestionsShareOneUpstreamCall() throws Exception {
+        try (LlmStubServer stub = new LlmStubServer().model("m", 200, 300)) {
+            LlmClient client = new LlmClient(stub.url(), "test-key", "http://localhost", "CoffeeApp",
+                    Duration.ofSeconds(1), Duration.ofSeconds(5), LlmClient.Mode.SEQUENTIAL, 95, Duration.ofSeconds(2), 0.1,
+                    new ModelCircuitBreakers(3, Duration.ofSeconds(30)), new ObjectMapper());
+            AiBulkhead bulkhead = new AiBulkhead(4, 8);
+            SingleFlight<ChatResponseCache.Key, String> flight = new SingleFlight<>();
+            ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+            CountDownLatch start = new CountDownLatch(1);
+
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                // Different spellings of the same question end up with the same key.
+                String question = i % 2 == 0 ? "Где лучший латте?" : "где  лучший ЛАТТЕ";
+                answers.add(callers.submit(() -> {
+                    start.await();
+                    ChatResponseCache.Key key = ChatResponseCache.key(question, "m", 1);
+                    return flight.run(key, () -> bulkhead.submit(() -> client.complete(List.of("m"), MESSAGES, 50)).get())
+                            .get(5, TimeUnit.SECONDS);
+                }));
+            }
+            start.countDown();
+            for (Future<String> answer : answers) {
+                assertThat(answer.get()).isEqualTo("ответ от m");
+            }
+
+            assertThat(stub.calls("m")).isEqualTo(1);
+            Map<String, Object> stats = flight.stats();
+            assertThat(stats.get("upstreamCalls")).isEqualTo(1L);
+            assertThat(stats.get("coalesced")).isEqualTo((long) CALLERS - 1);
+            assertThat(stats.get("coalescingRatio")).isEqualTo(0.98);
+            assertThat(stats.get("inFlight")).isEqualTo(0);
+
+            // Finished flights are forgotten: the next question goes upstream again.
+            flight.run(ChatResponseCache.key("Где лучший латте?", "m", 1),
+                    () -> bulkhead.submit(() -> client.complete(List.of("m"), MESSAGES, 50)).get()).get(5, TimeUnit.SECONDS);
+            assertThat(stub.calls("m")).isEqualTo(2);
+
+            callers.shutdownNow();
+            bulkhead.shutdown();
+        }
+    }
+
+    @Test
+    void failureReachesEveryWaiterAndOneCallerGivingUpCancelsNothing() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flight.run("q", () -> upstream);
+        CompletableFuture<String> second = flight.run("q", () -> {
+            throw new AssertionError("must join the running call");
+        });
+        first.cancel(true);
+        assertThat(upstream.isCancelled()).isFalse();
+
+        upstream.completeExceptionally(new LlmException("AI не ответил вовремя"));
+        try {
+            second.get(1, TimeUnit.SECONDS);
+            throw new AssertionError("expected a failure");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage()).isEqualTo("AI не ответил вовремя");
+        }
+        assertThat(flight.stats().get("inFlight")).isEqualTo(0);
+
+        // A call that throws before returning a future fails its flight instead of leaving it stuck.
+        CompletableFuture<String> broken = flight.run("q", () -> {
+            throw new IllegalStateException("bulkhead closed");
+        });
+        assertThat(broken.isCompletedExceptionally()).isTrue();
+        assertThat(flight.stats().get("inFlight")).isEqualTo(0);
+    }
+}
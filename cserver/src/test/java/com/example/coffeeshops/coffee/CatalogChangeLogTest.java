@@ -0,0 +1,209 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CatalogChanges;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CatalogChangeLogTest {
+
+    private final CatalogChangeRepository changeRepository = mock(CatalogChangeRepository.class);
+    private final CoffeeShopRepository shopRepository = mock(CoffeeShopRepository.class);
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final CatalogChangeLog log = new CatalogChangeLog(changeRepository, shopRepository, jdbc, 30);
+    private final TransactionTemplate transactions = new TransactionTemplate(new InMemoryTransactionManager());
+
+    // Every batch insert, as (shop id, type) rows.
+    private final List<List<String>> batches = new ArrayList<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong versions = new AtomicLong(100);
+
+    CatalogChangeLogTest() throws Exception {
+        doAnswer(invocation -> {
+            BatchPreparedStatementSetter setter = invocation.getArgument(1);
+            KeyHolder keys = invocation.getArgument(2);
+            List<String> rows = new ArrayList<>();
+            for (int i = 0; i < setter.getBatchSize(); i++) {
+                PreparedStatement ps = mock(PreparedStatement.class);
+                List<Object> values = new ArrayList<>();
+                doAnswer(a -> values.add(a.getArgument(1))).when(ps).setLong(anyInt(), anyLong());
+                doAnswer(a -> values.add(a.getArgument(1))).when(ps).setString(anyInt(), anyString());
+                setter.setValues(ps, i);
+                rows.add(values.get(0) + ":" + values.get(1));
+            }
+            if (failures.getAndDecrement() > 0) {
+                throw new QueryTimeoutException("lock timeout");
+            }
+            batches.add(rows);
+            rows.forEach(r -> keys.getKeyList().add(Map.of("version", versions.incrementAndGet())));
+            return new int[rows.size()];
+        }).when(jdbc).batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class));
+    }
+
+    @Test
+    void importBatchIsWrittenWithOneInsert() {
+        transactions.executeWithoutResult(tx ->
+                log.record(LongStream.rangeClosed(1, 500).mapToObj(CatalogChangeLogTest::shop).toList(), CatalogChange.UPSERT));
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(500);
+        assertThat(batches.get(0).get(0)).isEqualTo("1:UPSERT");
+        assertThat(log.latestVersion()).isEqualTo(600L);
+    }
+
+    @Test
+    void changeIsRecordedOnlyInsideTheMutatingTransaction() {
+        try {
+            log.record(List.of(shop(1L)), CatalogChange.UPSERT);
+            throw new AssertionError("recorded outside a transaction");
+        } catch (IllegalStateException expected) {
+            assertThat(batches).isEmpty();
+        }
+
+        // The mutation fails after the entry was written: both roll back, the version stays.
+        try {
+            transactions.executeWithoutResult(tx -> {
+                log.record(List.of(shop(1L)), CatalogChange.DELETE);
+                throw new QueryTimeoutException("lock timeout");
+            });
+        } catch (QueryTimeoutException expected) {
+            assertThat(log.latestVersion()).isEqualTo(0L);
+        }
+
+        failures.set(1);
+        try {
+            transactions.executeWithoutResult(tx -> log.record(List.of(shop(2L)), CatalogChange.UPSERT));
+            throw new AssertionError("a failed insert must fail the mutation");
+        } catch (QueryTimeoutException expected) {
+            assertThat(log.latestVersion()).isEqualTo(0L);
+        }
+
+        transactions.executeWithoutResult(tx -> log.record(List.of(shop(3L)), CatalogChange.UPSERT));
+        assertThat(log.latestVersion()).isEqualTo(102L);
+    }
+
+    @Test
+    void laterWriterWaitsForTheEarlierCommit() throws Exception {
+        CountDownLatch recorded = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        Thread first = new Thread(() -> transactions.executeWithoutResult(tx -> {
+            log.record(List.of(shop(1L)), CatalogChange.UPSERT);
+            recorded.countDown();
+            await(commit);
+        }));
+        first.start();
+        assertThat(recorded.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread second = new Thread(() -> transactions.executeWithoutResult(tx -> log.record(List.of(shop(2L)), CatalogChange.UPSERT)));
+        second.start();
+        second.join(200);
+        // Version 102 must not become visible while 101 is still uncommitted.
+        assertThat(second.isAlive()).isTrue();
+        assertThat(batches).hasSize(1);
+
+        commit.countDown();
+        first.join(5_000);
+        second.join(5_000);
+        assertThat(batches).containsExactly(List.of("1:UPSERT"), List.of("2:UPSERT"));
+        assertThat(log.latestVersion()).isEqualTo(102L);
+    }
+
+    @Test
+    void changesCollapsePerShopAndReportDeletedUpserts() {
+        when(changeRepository.findLatestVersion()).thenReturn(14L);
+        when(changeRepository.findOldestVersion()).thenReturn(10L);
+        when(changeRepository.findByVersionGreaterThanOrderByVersionAsc(10L, Limit.of(4))).thenReturn(List.of(
+                change(11L, 1L, CatalogChange.UPSERT),
+                change(12L, 2L, CatalogChange.UPSERT),
+                change(13L, 1L, CatalogChange.UPSERT),
+                change(14L, 3L, CatalogChange.DELETE)));
+        // Shop 2 is gone, deleted by a change past this page.
+        when(shopRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(shop(1L)));
+
+        CatalogChanges changes = log.changesSince(10L, 3);
+        assertThat(changes.getVersion()).isEqualTo(13L);
+        assertThat(changes.isHasMore()).isTrue();
+        assertThat(changes.isResyncRequired()).isFalse();
+        assertThat(changes.getUpserts()).extracting(CoffeeShop::getId).containsExactly(1L);
+        assertThat(changes.getDeletes()).containsExactly(2L);
+    }
+
+    @Test
+    void clientsBehindTheCompactedLogMustResync() {
+        when(changeRepository.findLatestVersion()).thenReturn(50L);
+        when(changeRepository.findOldestVersion()).thenReturn(20L);
+
+        assertThat(log.changesSince(5L, 100).isResyncRequired()).isTrue();
+        assertThat(log.changesSince(51L, 100).isResyncRequired()).isTrue();
+        assertThat(log.changesSince(-1L, 100).isResyncRequired()).isTrue();
+        assertThat(log.changesSince(5L, 100).getVersion()).isEqualTo(50L);
+        verify(changeRepository, never()).findByVersionGreaterThanOrderByVersionAsc(anyLong(), any());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs the synchronization callbacks as a real transaction manager would, without a database.
+    private static final class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {}
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {}
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {}
+    }
+
+    private static CoffeeShop shop(Long id) {
+        CoffeeShop shop = new CoffeeShop("Кофейня " + id, "ул. Абая, " + id, 51.1, 71.4, 4.5);
+        shop.setId(id);
+        return shop;
+    }
+
+    private static CatalogChange change(Long version, Long shopId, String type) {
+        CatalogChange change = new CatalogChange(shopId, type);
+        ReflectionTestUtils.setField(change, "version", version);
+        return change;
+    }
+}
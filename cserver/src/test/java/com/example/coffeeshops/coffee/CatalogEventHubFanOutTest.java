@@ -0,0 +1,259 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CatalogEvent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogEventHubFanOutTest {
+
+    private static final int SUBSCRIBERS = 5_000;
+    private static final int EVENTS = 20;
+
+    @Test
+    void fansOutEveryEventInOrderToThousandsOfSubscribersWithFourThreads() throws Exception {
+        CatalogEventHub hub = hub(256, 10_000, 4);
+        List<List<Long>> received = new ArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(SUBSCRIBERS * EVENTS);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+            received.add(ids);
+            hub.subscribe(new TestSink() {
+                @Override
+                public void send(CatalogEvent event) {
+                    ids.add(event.getId());
+                    delivered.countDown();
+                }
+            });
+        }
+        assertThat(hub.subscriberCount()).isEqualTo(SUBSCRIBERS);
+
+        List<Long> published = new ArrayList<>();
+        for (long e = 0; e < EVENTS; e++) {
+            hub.publish(CatalogEvent.deleted(e));
+            published.add(e);
+        }
+        assertThat(delivered.await(30, TimeUnit.SECONDS)).isTrue();
+        hub.shutdown();
+
+        for (List<Long> ids : received) {
+            assertThat(ids).containsExactlyElementsOf(published);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void fanOutP99StaysUnderASecond() throws Exception {
+        CatalogEventHub hub = hub(256, 10_000, 4);
+        long[] latencies = new long[SUBSCRIBERS * EVENTS];
+        AtomicInteger recorded = new AtomicInteger();
+        long[] publishedAt = new long[1];
+        CountDownLatch[] delivered = new CountDownLatch[1];
+
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            hub.subscribe(new TestSink() {
+                @Override
+                public void send(CatalogEvent event) {
+                    latencies[recorded.getAndIncrement()] = System.nanoTime() - publishedAt[0];
+                    delivered[0].countDown();
+                }
+            });
+        }
+        for (int e = 0; e < EVENTS; e++) {
+            delivered[0] = new CountDownLatch(SUBSCRIBERS);
+            publishedAt[0] = System.nanoTime();
+            hub.publish(CatalogEvent.deleted((long) e));
+            assertThat(delivered[0].await(10, TimeUnit.SECONDS)).isTrue();
+        }
+        hub.shutdown();
+
+        long[] sorted = Arrays.copyOf(latencies, recorded.get());
+        Arrays.sort(sorted);
+        assertThat(sorted[(int) (sorted.length * 0.99)]).isLessThan(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void largeBatchGoesOutAsOneReloadEvent() throws Exception {
+        CatalogEventHub hub = hub(8, 100, 1);
+        List<String> types = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch delivered = new CountDownLatch(4);
+        hub.subscribe(new TestSink() {
+            @Override
+            public void send(CatalogEvent event) {
+                types.add(event.getType());
+                delivered.countDown();
+            }
+        });
+
+        List<CoffeeShop> imported = new ArrayList<>();
+        for (long i = 1; i <= 1_000; i++) {
+            imported.add(shop(i));
+        }
+        hub.onCreatedAll(imported);
+        hub.onUpdatedAll(List.of(shop(1L), shop(2L)));
+        hub.onCreatedAll(imported);
+
+        assertThat(delivered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(types).containsExactly(CatalogEvent.RELOAD, CatalogEvent.RATING_UPDATED,
+                CatalogEvent.RATING_UPDATED, CatalogEvent.RELOAD);
+        // Far more shops than queue slots, and the subscriber is still connected.
+        assertThat(hub.subscriberCount()).isEqualTo(1);
+        hub.shutdown();
+    }
+
+    @Test
+    void stalledSendIsInterruptedAndFreesThePoolThread() throws Exception {
+        CatalogEventHub hub = new CatalogEventHub(8, 100, 20, 1, 60_000, 50);
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        hub.subscribe(new TestSink() {
+            @Override
+            public void send(CatalogEvent event) throws IOException {
+                sending.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new InterruptedIOException();
+                }
+            }
+        });
+        CountDownLatch otherReceived = new CountDownLatch(1);
+        hub.subscribe(new TestSink() {
+            @Override
+            public void send(CatalogEvent event) {
+                otherReceived.countDown();
+            }
+        });
+
+        hub.publish(CatalogEvent.deleted(1L));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+        hub.dropStalledSubscribers();
+        // Not stuck for longer than the send timeout yet.
+        assertThat(hub.subscriberCount()).isEqualTo(2);
+
+        Thread.sleep(100);
+        hub.dropStalledSubscribers();
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(hub.subscriberCount()).isEqualTo(1);
+        // The only pool thread is free again for the remaining subscriber.
+        assertThat(otherReceived.await(5, TimeUnit.SECONDS)).isTrue();
+        hub.shutdown();
+    }
+
+    @Test
+    void slowConsumerIsDroppedWithoutBlockingOthers() throws Exception {
+        CatalogEventHub hub = hub(8, 100, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch slowClosed = new CountDownLatch(1);
+        hub.subscribe(new TestSink() {
+            @Override
+            public void send(CatalogEvent event) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+
+            @Override
+            public void close() {
+                slowClosed.countDown();
+            }
+        });
+        CountDownLatch fastReceived = new CountDownLatch(50);
+        hub.subscribe(new TestSink() {
+            @Override
+            public void send(CatalogEvent event) {
+                fastReceived.countDown();
+            }
+        });
+
+        for (int i = 0; i < 50; i++) {
+            hub.publish(CatalogEvent.deleted((long) i));
+            Thread.sleep(1);
+        }
+
+        assertThat(fastReceived.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(slowClosed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(hub.subscriberCount()).isEqualTo(1);
+        release.countDown();
+        hub.shutdown();
+    }
+
+    @Test
+    void rejectsSubscribersOverTheLimit() {
+        CatalogEventHub hub = hub(8, 2, 1);
+        assertThat(hub.subscribe(new TestSink())).isNotNull();
+        assertThat(hub.subscribe(new TestSink())).isNotNull();
+        assertThat(hub.subscribe(new TestSink())).isNull();
+
+        // Disconnected subscribers free their slots.
+        hub.shutdown();
+        assertThat(hub.subscribe(new TestSink())).isNotNull();
+    }
+
+    @Test
+    void concurrentSubscribesNeverExceedTheLimit() throws Exception {
+        CatalogEventHub hub = hub(8, 100, 1);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        for (int i = 0; i < 1_000; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (hub.subscribe(new TestSink()) != null) {
+                    accepted.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(accepted.get()).isEqualTo(100);
+        assertThat(hub.subscriberCount()).isEqualTo(100);
+        hub.shutdown();
+    }
+
+    private static CatalogEventHub hub(int queueCapacity, int maxSubscribers, int threads) {
+        return new CatalogEventHub(queueCapacity, maxSubscribers, 20, threads, 60_000, 60_000);
+    }
+
+    private static CoffeeShop shop(Long id) {
+        CoffeeShop shop = new CoffeeShop("Shop " + id, "Street " + id, 51.1, 71.4, 4.0);
+        shop.setId(id);
+        return shop;
+    }
+
+    private static class TestSink implements EventSink {
+        @Override
+        public void send(CatalogEvent event) throws IOException {
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.coffeeshops.coffee;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CatalogSnapshotTest {
+
+    private final CatalogSnapshot snapshot = new CatalogSnapshot(
+            "[]".getBytes(StandardCharsets.UTF_8), new byte[]{31, -117}, "abc");
+
+    @Test
+    void revalidatesOnlyTheTagOfTheServedRepresentation() {
+        assertThat(snapshot.matches("\"abc\"", false)).isTrue();
+        assertThat(snapshot.matches("\"abc\"", true)).isFalse();
+        assertThat(snapshot.matches("\"abc-gzip\"", true)).isTrue();
+        assertThat(snapshot.matches("\"abc-gzip\"", false)).isFalse();
+        assertThat(snapshot.matches("\"old\", W/\"abc-gzip\"", true)).isTrue();
+        assertThat(snapshot.matches("*", false)).isTrue();
+        assertThat(snapshot.matches(null, true)).isFalse();
+    }
+
+    @Test
+    void honoursAcceptEncodingQualityValues() {
+        assertThat(CatalogSnapshot.acceptsGzip("gzip, deflate, br")).isTrue();
+        assertThat(CatalogSnapshot.acceptsGzip("br;q=1.0, GZIP;q=0.5")).isTrue();
+        assertThat(CatalogSnapshot.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(CatalogSnapshot.acceptsGzip("gzip; q=0.000, *")).isFalse();
+        assertThat(CatalogSnapshot.acceptsGzip("*;q=0.1")).isTrue();
+        assertThat(CatalogSnapshot.acceptsGzip("*;q=0")).isFalse();
+        assertThat(CatalogSnapshot.acceptsGzip("identity")).isFalse();
+        assertThat(CatalogSnapshot.acceptsGzip(null)).isFalse();
+    }
+
+    @Test
+    void identityTagDoesNotRevalidateAGzipResponse() {
+        CoffeeShopService service = mock(CoffeeShopService.class);
+        when(service.getCatalogSnapshot()).thenReturn(snapshot);
+        when(service.getCatalogVersion()).thenReturn(42L);
+        CoffeeShopController controller = new CoffeeShopController(service, null, null, false);
+
+        ResponseEntity<byte[]> gzip = controller.getAll("\"abc\"", "gzip");
+        assertThat(gzip.getStatusCode().value()).isEqualTo(200);
+        assertThat(gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzip.getHeaders().getETag()).isEqualTo("\"abc-gzip\"");
+
+        ResponseEntity<byte[]> refused = controller.getAll("\"abc\"", "gzip;q=0");
+        assertThat(refused.getStatusCode().value()).isEqualTo(304);
+        assertThat(refused.getHeaders().getETag()).isEqualTo("\"abc\"");
+    }
+}
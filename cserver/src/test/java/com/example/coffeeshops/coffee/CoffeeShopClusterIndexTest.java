@@ -0,0 +1,86 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoffeeShopClusterIndexTest {
+
+    @Test
+    void groupsShopsPerCellAndKeepsSingleShopsAsPins() {
+        CoffeeShopClusterIndex index = new CoffeeShopClusterIndex();
+        index.onReload(List.of(
+                shop(1L, 43.2380, 76.9450, 4.0),
+                shop(2L, 43.2390, 76.9460, 5.0),
+                shop(3L, 51.1280, 71.4300, 3.0)));
+
+        // Zoomed out, Almaty's two shops share a cell and Astana's shop is a pin.
+        List<CoffeeShopCluster> world = sorted(index.clusters(-180, -85, 180, 85, 3));
+        assertThat(world).hasSize(2);
+        assertThat(world.get(0).getCount()).isEqualTo(2);
+        assertThat(world.get(0).getAvgRating()).isEqualTo(4.5);
+        assertThat(world.get(0).getLat()).isBetween(43.2380, 43.2390);
+        assertThat(world.get(0).getShopId()).isNull();
+        assertThat(world.get(1).getShopId()).isEqualTo(3L);
+
+        // A viewport across the antimeridian still finds shops on its eastern side.
+        assertThat(index.clusters(170, -85, 80, 85, 3)).hasSize(2);
+        assertThat(index.clusters(170, -85, -170, 85, 3)).isEmpty();
+
+        index.onDeleted(shop(3L, 51.1280, 71.4300, 3.0));
+        assertThat(index.clusters(-180, -85, 180, 85, 15)).hasSize(2);
+    }
+
+    @Test
+    void cellsDoNotDriftUnderLongRunningUpdates() {
+        Random random = new Random(7);
+        List<CoffeeShop> shops = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            shops.add(shop(i + 1L, 43.2 + random.nextDouble() * 0.1, 76.9 + random.nextDouble() * 0.1, 1 + random.nextDouble() * 4));
+        }
+        CoffeeShopClusterIndex live = new CoffeeShopClusterIndex();
+        live.onReload(shops);
+
+        // Rating flushes and moves, as over weeks of uptime.
+        for (int i = 0; i < 200_000; i++) {
+            CoffeeShop shop = shops.get(random.nextInt(shops.size()));
+            shop.setRating(1 + random.nextDouble() * 4);
+            if (i % 10 == 0) {
+                shop.setLat(43.2 + random.nextDouble() * 0.1);
+            }
+            live.onUpdated(shop);
+        }
+
+        CoffeeShopClusterIndex fresh = new CoffeeShopClusterIndex();
+        fresh.onReload(shops);
+        for (int zoom : new int[]{0, 8, 12, 15}) {
+            List<CoffeeShopCluster> expected = sorted(fresh.clusters(76.8, 43.1, 77.1, 43.4, zoom));
+            List<CoffeeShopCluster> actual = sorted(live.clusters(76.8, 43.1, 77.1, 43.4, zoom));
+            assertThat(actual).hasSize(expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(actual.get(i).getCount()).isEqualTo(expected.get(i).getCount());
+                assertThat(actual.get(i).getLat()).isEqualTo(expected.get(i).getLat());
+                assertThat(actual.get(i).getLng()).isEqualTo(expected.get(i).getLng());
+                assertThat(actual.get(i).getAvgRating()).isEqualTo(expected.get(i).getAvgRating());
+            }
+        }
+    }
+
+    private static List<CoffeeShopCluster> sorted(List<CoffeeShopCluster> clusters) {
+        List<CoffeeShopCluster> copy = new ArrayList<>(clusters);
+        copy.sort(Comparator.comparingDouble(CoffeeShopCluster::getLat).thenComparingDouble(CoffeeShopCluster::getLng));
+        return copy;
+    }
+
+    private static CoffeeShop shop(Long id, double lat, double lng, double rating) {
+        CoffeeShop shop = new CoffeeShop("Кофейня " + id, "ул. Абая, " + id, lat, lng, rating);
+        shop.setId(id);
+        return shop;
+    }
+}
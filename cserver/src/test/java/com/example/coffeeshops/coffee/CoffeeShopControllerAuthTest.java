@@ -0,0 +1,73 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopRateRequest;
+import com.example.coffeeshops.user.AuthenticatedUser;
+import com.example.coffeeshops.user.User;
+import com.example.coffeeshops.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopControllerAuthTest {
+
+    private final CoffeeShopService service = mock(CoffeeShopService.class);
+    private final UserRepository users = mock(UserRepository.class);
+
+    @Test
+    void emailParametersAreIgnoredByDefault() {
+        CoffeeShopController controller = new CoffeeShopController(service, null, users, false);
+
+        assertStatus(() -> controller.delete(null, 1L, "admin@admin.com"), 403);
+        assertStatus(() -> controller.rateCoffeeShop(null, 1L, "user@mail.com", rating(5.0)), 401);
+        verifyNoInteractions(users, service);
+    }
+
+    @Test
+    void tokenAuthorizesWhateverTheParametersSay() {
+        CoffeeShopController controller = new CoffeeShopController(service, null, users, false);
+        when(service.deleteShop(1L)).thenReturn(true);
+        when(service.rateShop(1L, 8L, 4.0)).thenReturn(Optional.of(new CoffeeShop("Зерно", "ул. Абая, 1", 51.1, 71.4, 4.0)));
+
+        assertStatus(() -> controller.delete(new AuthenticatedUser(8L, "user@mail.com", "USER"), 1L, "admin@admin.com"), 403);
+        assertThat(controller.delete(new AuthenticatedUser(7L, "admin@admin.com", "ADMIN"), 1L, null).get("success")).isEqualTo(true);
+        assertThat(controller.rateCoffeeShop(new AuthenticatedUser(8L, "user@mail.com", "USER"), 1L, "other@mail.com", rating(4.0))
+                .get("success")).isEqualTo(true);
+        verifyNoInteractions(users);
+    }
+
+    @Test
+    void emailParametersWorkWhenLegacyClientsAreEnabled() {
+        CoffeeShopController controller = new CoffeeShopController(service, null, users, true);
+        when(users.findByEmail("admin@admin.com")).thenReturn(Optional.of(new User(7L, "admin@admin.com", "hash", "ADMIN")));
+        when(users.findByEmail("user@mail.com")).thenReturn(Optional.of(new User(8L, "user@mail.com", "hash", "USER")));
+        when(users.findIdByEmail("user@mail.com")).thenReturn(Optional.of(8L));
+        when(service.deleteShop(1L)).thenReturn(true);
+
+        assertThat(controller.delete(null, 1L, "admin@admin.com").get("success")).isEqualTo(true);
+        assertStatus(() -> controller.delete(null, 1L, "user@mail.com"), 403);
+        assertStatus(() -> controller.rateCoffeeShop(null, 1L, "user@mail.com", rating(5.0)), 404);
+        verify(service).rateShop(1L, 8L, 5.0);
+    }
+
+    private static CoffeeShopRateRequest rating(double value) {
+        CoffeeShopRateRequest request = new CoffeeShopRateRequest();
+        request.setRating(value);
+        return request;
+    }
+
+    private static void assertStatus(Runnable call, int status) {
+        try {
+            call.run();
+            throw new AssertionError("expected " + status);
+        } catch (ResponseStatusException e) {
+            assertThat(e.getStatusCode().value()).isEqualTo(status);
+        }
+    }
+}
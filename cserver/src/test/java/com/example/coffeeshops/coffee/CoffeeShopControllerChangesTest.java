@@ -0,0 +1,66 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CatalogChanges;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopControllerChangesTest {
+
+    private final CoffeeShopService service = mock(CoffeeShopService.class);
+    private final CoffeeShopController controller = new CoffeeShopController(service, null, null, false);
+
+    @Test
+    void catalogCarriesTheVersionToSyncFrom() {
+        when(service.getCatalogVersion()).thenReturn(42L);
+        when(service.getCatalogSnapshot()).thenReturn(new CatalogSnapshot(
+                "[]".getBytes(StandardCharsets.UTF_8), new byte[]{31, -117}, "abc"));
+
+        ResponseEntity<byte[]> full = controller.getAll(null, null);
+        assertThat(full.getHeaders().getFirst("X-Catalog-Version")).isEqualTo("42");
+
+        ResponseEntity<byte[]> notModified = controller.getAll("\"abc\"", null);
+        assertThat(notModified.getStatusCode().value()).isEqualTo(304);
+        assertThat(notModified.getHeaders().getFirst("X-Catalog-Version")).isEqualTo("42");
+
+        // The version is read first, so a change landing in between is replayed rather than missed.
+        InOrder order = inOrder(service);
+        order.verify(service).getCatalogVersion();
+        order.verify(service).getCatalogSnapshot();
+    }
+
+    @Test
+    void changesAreServedFromTheLog() {
+        CatalogChanges changes = new CatalogChanges(7L, false, true, List.of(), List.of(3L));
+        when(service.getChanges(5L, 1000)).thenReturn(changes);
+
+        assertThat(controller.changes(5L, 1000)).isEqualTo(changes);
+    }
+
+    @Test
+    void changesRejectsLimitsOutOfRange() {
+        for (int limit : new int[]{0, 5_001}) {
+            try {
+                controller.changes(5L, limit);
+                throw new AssertionError("expected a rejected limit " + limit);
+            } catch (ResponseStatusException e) {
+                assertThat(e.getStatusCode().value()).isEqualTo(400);
+                assertThat(e.getReason()).isEqualTo("Лимит должен быть от 1 до 5000");
+            }
+        }
+        verify(service, never()).getChanges(anyLong(), anyInt());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopCluster;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopControllerClustersTest {
+
+    private final CoffeeShopService service = mock(CoffeeShopService.class);
+    private final CoffeeShopController controller = new CoffeeShopController(service, null, null, false);
+
+    @Test
+    void returnsClustersForAValidViewport() {
+        List<CoffeeShopCluster> clusters = List.of(new CoffeeShopCluster(43.2, 76.9, 2, 4.5, null));
+        when(service.countClusterCells(76.8, 43.1, 77.1, 43.4, 12)).thenReturn(16L);
+        when(service.findClusters(76.8, 43.1, 77.1, 43.4, 12)).thenReturn(clusters);
+
+        assertThat(controller.clusters(Arrays.asList(76.8, 43.1, 77.1, 43.4), 12)).isEqualTo(clusters);
+    }
+
+    @Test
+    void rejectsMalformedOrTooLargeViewports() {
+        assertRejected(Arrays.asList(76.8, 43.1, 77.1), 12, "bbox должен содержать minLng,minLat,maxLng,maxLat");
+        assertRejected(Arrays.asList(76.8, 43.4, 77.1, 43.1), 12, "Некорректные координаты bbox");
+        assertRejected(Arrays.asList(76.8, 43.1, 77.1, 43.4), 23, "zoom должен быть от 0 до 22");
+
+        when(service.countClusterCells(-180, -85, 180, 85, 15)).thenReturn(1L << 30);
+        assertRejected(Arrays.asList(-180.0, -85.0, 180.0, 85.0), 15, "Слишком большая область для этого масштаба");
+    }
+
+    // Arrays.asList like Spring's binding: List.of rejects contains(null).
+    private void assertRejected(List<Double> bbox, int zoom, String reason) {
+        try {
+            controller.clusters(bbox, zoom);
+            throw new AssertionError("expected " + reason);
+        } catch (ResponseStatusException e) {
+            assertThat(e.getStatusCode().value()).isEqualTo(400);
+            assertThat(e.getReason()).isEqualTo(reason);
+        }
+    }
+}
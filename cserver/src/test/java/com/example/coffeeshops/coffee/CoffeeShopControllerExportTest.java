@@ -0,0 +1,93 @@
+package com.example.coffeeshops.coffee;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopControllerExportTest {
+
+    private static final int SHOPS = 1_000;
+
+    private final CoffeeShopRepository repository = mock(CoffeeShopRepository.class);
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CoffeeShopController controller = new CoffeeShopController(
+            new CoffeeShopService(repository, null, null, mock(PlatformTransactionManager.class),
+                    entityManager, objectMapper, null, null, null, null, null, null, null, null, List.of()),
+            null, null, false);
+    private final AtomicBoolean cursorClosed = new AtomicBoolean();
+
+    CoffeeShopControllerExportTest() {
+        when(repository.streamAllByOrderByIdAsc()).thenAnswer(invocation -> LongStream.rangeClosed(1, SHOPS)
+                .mapToObj(CoffeeShopControllerExportTest::shop)
+                .onClose(() -> cursorClosed.set(true)));
+    }
+
+    @Test
+    void catalogIsOneJsonObjectPerLineInIdOrder() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = controller.export(null);
+
+        assertThat(response.getHeaders().getContentType().toString()).isEqualTo("application/x-ndjson");
+        assertThat(response.getHeaders().getFirst("Content-Encoding")).isNull();
+        assertThat(response.getHeaders().getVary()).containsExactly("Accept-Encoding");
+        assertRows(new String(body(response), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void catalogIsGzippedWhenTheClientAcceptsIt() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = controller.export("br;q=1.0, gzip;q=0.8");
+
+        assertThat(response.getHeaders().getFirst("Content-Encoding")).isEqualTo("gzip");
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body(response)))) {
+            assertRows(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void assertRows(String ndjson) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (String line : ndjson.split("\n")) {
+            JsonNode row = objectMapper.readTree(line);
+            assertThat(row.isObject()).isTrue();
+            ids.add(row.get("id").asLong());
+        }
+        assertThat(ids).containsExactlyElementsOf(LongStream.rangeClosed(1, SHOPS).boxed().toList());
+        assertThat(objectMapper.readTree(ndjson.split("\n")[0]).get("name").asText()).isEqualTo("Кофейня 1");
+        // Rows come off the cursor, which is closed, each detached once written.
+        verify(repository, times(1)).streamAllByOrderByIdAsc();
+        verify(entityManager, times(SHOPS)).detach(any(CoffeeShop.class));
+        assertThat(cursorClosed.get()).isTrue();
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static CoffeeShop shop(long id) {
+        CoffeeShop shop = new CoffeeShop("Кофейня " + id, "ул. Абая, " + id, 51.1, 71.4, 4.5);
+        shop.setId(id);
+        return shop;
+    }
+}
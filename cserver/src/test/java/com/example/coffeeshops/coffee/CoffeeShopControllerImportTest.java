@@ -0,0 +1,53 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopImportReport;
+import com.example.coffeeshops.user.AuthenticatedUser;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopControllerImportTest {
+
+    private static final AuthenticatedUser ADMIN = new AuthenticatedUser(1L, "admin@admin.com", "ADMIN");
+    private static final AuthenticatedUser USER = new AuthenticatedUser(2L, "user@mail.com", "USER");
+
+    private final CoffeeShopImporter importer = mock(CoffeeShopImporter.class);
+    private final CoffeeShopController controller = new CoffeeShopController(mock(CoffeeShopService.class), importer, null, false);
+    private final InputStream body = new ByteArrayInputStream(new byte[0]);
+
+    @Test
+    void adminImportReturnsTheReport() {
+        CoffeeShopImportReport report = new CoffeeShopImportReport(3, 1, 0, 10, List.of());
+        when(importer.importShops(any(), any())).thenReturn(report);
+
+        Map<String, Object> response = controller.importShops(ADMIN, null, "NDJSON", body);
+        assertThat(response.get("success")).isEqualTo(true);
+        assertThat(response.get("report")).isEqualTo(report);
+    }
+
+    @Test
+    void rejectsNonAdminsAndUnknownFormats() {
+        assertStatus(() -> controller.importShops(USER, null, "csv", body), 403);
+        assertStatus(() -> controller.importShops(ADMIN, null, "xlsx", body), 400);
+        verifyNoInteractions(importer);
+    }
+
+    private static void assertStatus(Runnable call, int status) {
+        try {
+            call.run();
+            throw new AssertionError("expected " + status);
+        } catch (ResponseStatusException e) {
+            assertThat(e.getStatusCode().value()).isEqualTo(status);
+        }
+    }
+}
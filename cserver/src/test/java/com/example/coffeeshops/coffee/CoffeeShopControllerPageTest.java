@@ -0,0 +1,74 @@
+package com.example.coffeeshops.coffee;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopControllerPageTest {
+
+    private final CoffeeShopService service = mock(CoffeeShopService.class);
+    private final CoffeeShopController controller = new CoffeeShopController(service, null, null, false);
+
+    @Test
+    void everyFieldCombinationIsServedFromAProjection() {
+        when(service.getPage(10L, 3)).thenReturn(LongStream.rangeClosed(11, 13).mapToObj(this::row).toList());
+
+        Map<String, Object> page = controller.getPage(10L, 2, List.of("address", "rating"));
+        assertThat(page.get("items")).isEqualTo(List.of(
+                Map.of("address", "ул. Абая, 11", "rating", 4.5),
+                Map.of("address", "ул. Абая, 12", "rating", 4.5)));
+        assertThat(page.get("nextAfter")).isEqualTo(12L);
+
+        // Without fields every listing field is returned, still without loading entities.
+        when(service.getPage(0L, 3)).thenReturn(List.of(row(1L)));
+        Map<String, Object> all = controller.getPage(0L, 2, null);
+        assertThat(all.get("items")).isEqualTo(List.of(Map.of(
+                "id", 1L, "name", "Кофейня 1", "address", "ул. Абая, 1", "lat", 51.1, "lng", 71.4, "rating", 4.5)));
+        assertThat(all.get("nextAfter")).isNull();
+        verify(service, never()).getPinPage(anyLong(), anyInt());
+    }
+
+    @Test
+    void mapPinsUseTheNarrowerProjection() {
+        CoffeeShopPin pin = new CoffeeShopPin() {
+            public Long getId() { return 7L; }
+            public String getName() { return "Ёлочка"; }
+            public double getLat() { return 51.1; }
+            public double getLng() { return 71.4; }
+        };
+        when(service.getPinPage(0L, 11)).thenReturn(List.of(pin));
+
+        Map<String, Object> page = controller.getPage(0L, 10, List.of("id", "lat", "lng"));
+        assertThat(page.get("items")).isEqualTo(List.of(Map.of("id", 7L, "lat", 51.1, "lng", 71.4)));
+        verify(service, never()).getPage(anyLong(), anyInt());
+
+        try {
+            controller.getPage(0L, 10, List.of("stars"));
+            throw new AssertionError("expected a rejected field");
+        } catch (ResponseStatusException e) {
+            assertThat(e.getReason()).isEqualTo("Неизвестное поле: stars");
+        }
+    }
+
+    private CoffeeShopListItem row(long id) {
+        return new CoffeeShopListItem() {
+            public Long getId() { return id; }
+            public String getName() { return "Кофейня " + id; }
+            public String getAddress() { return "ул. Абая, " + id; }
+            public double getLat() { return 51.1; }
+            public double getLng() { return 71.4; }
+            public double getRating() { return 4.5; }
+        };
+    }
+}
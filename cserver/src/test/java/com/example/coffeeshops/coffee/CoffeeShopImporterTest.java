@@ -0,0 +1,141 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopImportReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class CoffeeShopImporterTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final CoffeeShopChangeListener listener = mock(CoffeeShopChangeListener.class);
+    private final CatalogChangeLog changeLog = mock(CatalogChangeLog.class);
+    private final CoffeeShopImporter importer = new CoffeeShopImporter(jdbc, mock(PlatformTransactionManager.class),
+            Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(), changeLog, List.of(listener), 2);
+
+    @Test
+    void rowsOfAFailedBatchCanStillBeImportedLater() {
+        failFirstBatch();
+
+        CoffeeShopImportReport report = importCsv("""
+                name,address,lat,lng,rating
+                Бариста,"ул. Абая, 1",43.2,76.9,4.5
+                Латте Лаб,"ул. Абая, 2",43.2,76.9,4.0
+                Зерно,ул. Манаса 3,43.2,76.9,3.5
+                Бариста,"ул. Абая, 1",43.2,76.9,4.5
+                Зерно,ул. Манаса 3,43.2,76.9,3.5
+                """);
+
+        assertThat(report.getFailed()).isEqualTo(2L);
+        assertThat(report.getErrors()).extracting(CoffeeShopImportReport.RowError::getLine).containsExactly(2L, 3L);
+        // The second Бариста is a retry of a row that never reached the table, not a duplicate.
+        assertThat(report.getImported()).isEqualTo(2L);
+        assertThat(report.getDuplicates()).isEqualTo(1L);
+        assertThat(created()).extracting(CoffeeShop::getName).containsExactly("Зерно", "Бариста");
+        // The failed batch never reached the change log.
+        verify(changeLog, times(1)).record(anyList(), eq(CatalogChange.UPSERT));
+    }
+
+    @Test
+    void quotedCsvFieldsMaySpanLines() {
+        succeedEveryBatch();
+
+        CoffeeShopImportReport report = importCsv("""
+                name,address,lat,lng,rating
+                "Кофейня ""Ёлочка""\","ул. Шевченко, 29
+                второй этаж",43.2,76.9,5
+                Зерно,ул. Манаса 3,43.2,76.9,3.5
+                Обжарка,"ул. Достык, 5,43.2,76.9,3.5
+                """);
+
+        List<CoffeeShop> created = created();
+        assertThat(created).hasSize(2);
+        assertThat(created.get(0).getName()).isEqualTo("Кофейня \"Ёлочка\"");
+        assertThat(created.get(0).getAddress()).isEqualTo("ул. Шевченко, 29\nвторой этаж");
+        assertThat(created.get(1).getName()).isEqualTo("Зерно");
+        // A quote still open at the end of the file is reported at the line it opened on.
+        assertThat(report.getFailed()).isEqualTo(1L);
+        assertThat(report.getErrors().get(0).getLine()).isEqualTo(5L);
+        assertThat(report.getErrors().get(0).getMessage()).isEqualTo("Незакрытая кавычка");
+    }
+
+    @Test
+    void strayQuoteFailsOnlyItsOwnRow() {
+        succeedEveryBatch();
+        StringBuilder csv = new StringBuilder("name,address,lat,lng,rating\n");
+        csv.append("Зерно,ул. Манаса 3,43.2,76.9,3.5\n");
+        csv.append("Обжарка \"Люкс,ул. Достык 5,43.2,76.9,3.5\n");
+        csv.append("Латте Лаб,ул. Абая 2,43.2,76.9,9\n");
+        for (int i = 0; i < 2_000; i++) {
+            csv.append("Кофейня ").append(i).append(",ул. Абая ").append(i).append(",43.2,76.9,4\n");
+        }
+
+        CoffeeShopImportReport report = importCsv(csv.toString());
+
+        assertThat(report.getImported()).isEqualTo(2_001L);
+        // The lines read while looking for the closing quote are parsed again, at their own numbers.
+        assertThat(report.getErrors()).extracting(CoffeeShopImportReport.RowError::getLine).containsExactly(3L, 4L);
+        assertThat(report.getErrors().get(0).getMessage()).isEqualTo("Незакрытая кавычка");
+        assertThat(created().get(1).getName()).isEqualTo("Кофейня 0");
+    }
+
+    private CoffeeShopImportReport importCsv(String csv) {
+        return importer.importShops(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), CoffeeShopImporter.Format.CSV);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CoffeeShop> created() {
+        ArgumentCaptor<List<CoffeeShop>> batches = ArgumentCaptor.forClass(List.class);
+        verify(listener, atLeastOnce()).onCreatedAll(batches.capture());
+        return batches.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
+    private void failFirstBatch() {
+        AtomicLong calls = new AtomicLong();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            return insert(invocation.getArgument(1), invocation.getArgument(2));
+        }).when(jdbc).batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class));
+    }
+
+    private void succeedEveryBatch() {
+        doAnswer(invocation -> insert(invocation.getArgument(1), invocation.getArgument(2)))
+                .when(jdbc).batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class));
+    }
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private int[] insert(BatchPreparedStatementSetter setter, KeyHolder keys) {
+        int[] counts = new int[setter.getBatchSize()];
+        for (int i = 0; i < counts.length; i++) {
+            keys.getKeyList().add(Map.of("id", ids.incrementAndGet()));
+            counts[i] = 1;
+        }
+        return counts;
+    }
+}
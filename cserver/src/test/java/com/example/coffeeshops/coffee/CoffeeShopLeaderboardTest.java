@@ -0,0 +1,70 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoffeeShopLeaderboardTest {
+
+    private final CoffeeShopLeaderboard leaderboard = new CoffeeShopLeaderboard();
+
+    @Test
+    void topFollowsUpdatesAndDeletes() {
+        leaderboard.onReload(List.of(shop(1L, 4.5, 2), shop(2L, 4.8, 3), shop(3L, 3.9, 1)));
+        assertThat(leaderboard.top(2)).extracting(CoffeeShop::getId).containsExactly(2L, 1L);
+
+        leaderboard.onUpdated(shop(3L, 4.9, 2));
+        leaderboard.onCreated(shop(4L, 4.5, 0));
+        // Equal ratings are ordered by id.
+        assertThat(leaderboard.top(10)).extracting(CoffeeShop::getId).containsExactly(3L, 2L, 1L, 4L);
+
+        leaderboard.onDeleted(shop(2L, 4.8, 3));
+        leaderboard.onUpdated(shop(1L, 1.2, 3));
+        assertThat(leaderboard.top(10)).extracting(CoffeeShop::getId).containsExactly(3L, 4L, 1L);
+        assertThat(leaderboard.top(1)).extracting(CoffeeShop::getRating).containsExactly(4.9);
+
+        CoffeeShopStats stats = leaderboard.stats();
+        assertThat(stats.getCount()).isEqualTo(3L);
+        assertThat(stats.getVotes()).isEqualTo(5L);
+        assertThat(stats.getDistribution()).isEqualTo(Map.of(0, 0L, 1, 1L, 2, 0L, 3, 0L, 4, 0L, 5, 2L));
+    }
+
+    @Test
+    void statsStayExactAfterManyIncrementalUpdates() {
+        List<CoffeeShop> shops = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            shops.add(shop(id, 3 + id % 20 / 10.0, 1));
+        }
+        leaderboard.onReload(shops);
+        CoffeeShopStats before = leaderboard.stats();
+
+        // Running means are rarely round numbers; every shop goes through many of them and back.
+        for (int round = 1; round <= 2_000; round++) {
+            for (CoffeeShop shop : shops) {
+                leaderboard.onUpdated(shop(shop.getId(), 1 + (shop.getId() * round % 97) / 24.25, 1));
+            }
+        }
+        shops.forEach(leaderboard::onUpdated);
+
+        CoffeeShopStats after = leaderboard.stats();
+        assertThat(after.getAverageRating()).isEqualTo(before.getAverageRating());
+        assertThat(after.getVotes()).isEqualTo(100L);
+        assertThat(after.getDistribution()).isEqualTo(before.getDistribution());
+        CoffeeShopLeaderboard reloaded = new CoffeeShopLeaderboard();
+        reloaded.onReload(shops);
+        assertThat(leaderboard.top(100)).extracting(CoffeeShop::getId)
+                .containsExactlyElementsOf(reloaded.top(100).stream().map(CoffeeShop::getId).toList());
+    }
+
+    private static CoffeeShop shop(Long id, double rating, long votes) {
+        CoffeeShop shop = new CoffeeShop("Shop " + id, "Street " + id, 51.1, 71.4, rating);
+        shop.setId(id);
+        shop.setRatingCount(votes);
+        return shop;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.CoffeeShopSearchResult;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoffeeShopSearchIndexBenchmarkTest {
+
+    private static final String[] NAME_WORDS = {
+            "Кофе", "Бариста", "Эспрессо", "Зерно", "Латте", "Капучино", "Обжарка", "Уголок",
+            "Brew", "Bean", "Roast", "Cup", "Drip", "Mug", "Lab", "Point"
+    };
+    private static final String[] STREETS = {
+            "Абая", "Достык", "Назарбаева", "Сатпаева", "Жибек Жолы", "Толе би", "Кабанбай батыра",
+            "Аль-Фараби", "Байтурсынова", "Манаса", "Ауэзова", "Гоголя", "Панфилова", "Курмангазы"
+    };
+
+    private final List<CoffeeShop> shops = shops();
+    private final CoffeeShopSearchIndex index = new CoffeeShopSearchIndex();
+
+    CoffeeShopSearchIndexBenchmarkTest() {
+        index.onReload(shops);
+    }
+
+    @Test
+    void findsTyposPrefixesAndFoldedCyrillicAt100kShops() {
+        assertThat(topId(index, "елочка ")).isEqualTo(200_000L);
+        assertThat(topId(index, "ЁЛОЧКА ")).isEqualTo(200_000L);
+        assertThat(topId(index, "елочко ")).isEqualTo(200_000L);
+        assertThat(topId(index, "ёлоч")).isEqualTo(200_000L);
+        assertThat(topId(index, "шевченко 29 ")).isEqualTo(200_000L);
+
+        index.onDeleted(shops.get(shops.size() - 1));
+        assertThat(index.search("ёлочка", 10)).isEmpty();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void prefixSearchIsFasterThanScanningEveryName() {
+        String[] queries = {"лат", "капуч", "brew", "достык", "обжарк"};
+        for (int i = 0; i < 20; i++) {
+            index.search(queries[i % queries.length], 10);
+            scan(queries[i % queries.length]);
+        }
+
+        int runs = 50;
+        long indexNanos = 0;
+        long scanNanos = 0;
+        for (int i = 0; i < runs; i++) {
+            String query = queries[i % queries.length];
+            long t0 = System.nanoTime();
+            index.search(query, 10);
+            long t1 = System.nanoTime();
+            scan(query);
+            scanNanos += System.nanoTime() - t1;
+            indexNanos += t1 - t0;
+        }
+
+        assertThat(indexNanos).isLessThan(scanNanos);
+    }
+
+    // What a search without the index has to do: normalize and match every shop.
+    private int scan(String query) {
+        int found = 0;
+        for (CoffeeShop shop : shops) {
+            if (CatalogText.normalize(shop.getName() + " " + shop.getAddress()).contains(query)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static List<CoffeeShop> shops() {
+        Random random = new Random(7);
+        List<CoffeeShop> shops = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            String name = NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " "
+                    + NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " " + i;
+            String address = "ул. " + STREETS[random.nextInt(STREETS.length)] + ", " + random.nextInt(300);
+            shops.add(shop(i + 1L, name, address, random.nextDouble() * 5));
+        }
+        shops.add(shop(200_000L, "Ёлочка", "ул. Шевченко, 29", 4.9));
+        return shops;
+    }
+
+    private static Long topId(CoffeeShopSearchIndex index, String query) {
+        List<CoffeeShopSearchResult> results = index.search(query, 5);
+        return results.isEmpty() ? null : results.get(0).getId();
+    }
+
+    private static CoffeeShop shop(Long id, String name, String address, double rating) {
+        CoffeeShop shop = new CoffeeShop(name, address, 51.1, 71.4, rating);
+        shop.setId(id);
+        return shop;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.coffeeshops.coffee;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopServiceRatingFlushTest {
+
+    @Test
+    void failedBatchIsWrittenOnTheNextFlush() {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.batchUpdate(anyString(), anyList()))
+                .thenThrow(new QueryTimeoutException("database unavailable"))
+                .thenReturn(new int[]{1});
+        RatingEngine engine = new RatingEngine();
+        CoffeeShop shop = new CoffeeShop("Ёлочка", "ул. Шевченко, 29", 51.1, 71.4, 0);
+        shop.setId(7L);
+        engine.onReload(List.of(shop));
+        CatalogChangeLog changeLog = mock(CatalogChangeLog.class);
+        CoffeeShopService service = new CoffeeShopService(null, null, jdbc, mock(PlatformTransactionManager.class),
+                mock(EntityManager.class, RETURNS_DEEP_STUBS), null, engine, null, null, null, null, null, null, changeLog, List.of());
+
+        engine.rate(7L, 4);
+        service.flushRatings();
+        // No vote in between: only the retry can bring the shop back.
+        service.flushRatings();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbc, times(2)).batchUpdate(anyString(), batches.capture());
+        List<Object[]> retried = batches.getAllValues().get(1);
+        assertThat(retried).hasSize(1);
+        // rating, rating_sum, rating_count, stars_1..5, id
+        assertThat(retried.get(0)[0]).isEqualTo(4.0);
+        assertThat(retried.get(0)[2]).isEqualTo(1L);
+        assertThat(retried.get(0)[8]).isEqualTo(7L);
+
+        service.flushRatings();
+        verify(jdbc, times(2)).batchUpdate(anyString(), anyList());
+        // The failed flush rolled back before its change was recorded.
+        verify(changeLog, times(1)).record(anyList(), anyString());
+    }
+
+    @Test
+    void votesMissingFromTheFlushedAggregateAreRestoredOnLoad() throws Exception {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        // Seed 4 and a vote of 5 were flushed; a vote of 3 came in just before a crash.
+        CoffeeShop crashed = new CoffeeShop("Ёлочка", "ул. Шевченко, 29", 51.1, 71.4, 4.5);
+        crashed.setId(7L);
+        crashed.setSeedRating(4.0);
+        crashed.setRatingSum(9.0);
+        crashed.setRatingCount(2);
+        crashed.setStars(new long[]{0, 0, 0, 1, 1});
+        // A data.sql row loaded for the first time: no votes, the rating is its seed.
+        CoffeeShop fresh = new CoffeeShop("Зерно", "ул. Манаса 3", 51.1, 71.4, 4.8);
+        fresh.setId(8L);
+        CoffeeShopRepository repository = mock(CoffeeShopRepository.class);
+        when(repository.findAll()).thenReturn(List.of(crashed, fresh));
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("shop_id")).thenReturn(7L, 7L);
+        when(rs.getDouble("star")).thenReturn(5.0, 3.0);
+        when(rs.getLong("votes")).thenReturn(1L, 1L);
+        when(rs.getLong("milli")).thenReturn(5000L, 3000L);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class));
+        RatingEngine engine = new RatingEngine();
+        CoffeeShopService service = new CoffeeShopService(repository, null, jdbc, mock(PlatformTransactionManager.class),
+                mock(EntityManager.class, RETURNS_DEEP_STUBS), null, engine, null, null, null, null, null, null,
+                mock(CatalogChangeLog.class), List.of(engine));
+
+        service.loadCatalog();
+
+        CoffeeShop restored = engine.get(7L).orElseThrow();
+        assertThat(restored.getRatingCount()).isEqualTo(3L);
+        assertThat(restored.getRatingSum()).isEqualTo(12.0);
+        assertThat(restored.getRating()).isEqualTo(4.0);
+        assertThat(restored.getStars()).containsExactly(0L, 0L, 1L, 1L, 1L);
+        CoffeeShop seeded = engine.get(8L).orElseThrow();
+        assertThat(seeded.getRatingCount()).isEqualTo(1L);
+        assertThat(seeded.getRating()).isEqualTo(4.8);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbc, times(2)).batchUpdate(anyString(), batches.capture());
+        // seed_rating, id
+        assertThat(batches.getAllValues().get(0)).hasSize(1);
+        assertThat(batches.getAllValues().get(0).get(0)[0]).isEqualTo(4.8);
+        assertThat(batches.getAllValues().get(0).get(0)[1]).isEqualTo(8L);
+        // Both shops are written: the crashed one with the lost vote, the fresh one with its seed as a vote.
+        assertThat(batches.getAllValues().get(1)).hasSize(2);
+        assertThat(batches.getAllValues().get(1).get(0)[2]).isEqualTo(3L);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.coffeeshops.coffee;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CoffeeShopServiceVotingTest {
+
+    private final CoffeeShopRepository repository = mock(CoffeeShopRepository.class);
+    private final CoffeeShopRatingRepository ratingRepository = mock(CoffeeShopRatingRepository.class);
+    private final PlatformTransactionManager transactions = mock(PlatformTransactionManager.class);
+    private final CoffeeShopChangeListener listener = mock(CoffeeShopChangeListener.class);
+    private final CatalogChangeLog changeLog = mock(CatalogChangeLog.class);
+    private final RatingEngine engine = new RatingEngine();
+    private final CoffeeShop shop = shop();
+    private final CoffeeShopService service = new CoffeeShopService(repository, ratingRepository, null, transactions,
+            null, null, engine, null, null, null, null, null, null, changeLog, List.of(engine, listener));
+
+    @Test
+    void voteOnAShopDeletedMeanwhileIsNotStored() {
+        engine.onReload(List.of(shop));
+        when(ratingRepository.findByUserIdAndShopId(1L, 7L)).thenReturn(Optional.empty());
+        when(ratingRepository.save(any(CoffeeShopRating.class)))
+                .thenThrow(new DataIntegrityViolationException("FK_RATING_SHOP"));
+        when(repository.existsById(7L)).thenReturn(false);
+
+        assertThat(service.rateShop(7L, 1L, 5)).isEmpty();
+        verify(ratingRepository, times(1)).save(any(CoffeeShopRating.class));
+        assertThat(engine.get(7L).orElseThrow().getRatingCount()).isEqualTo(0L);
+    }
+
+    @Test
+    void concurrentVoteOfTheSameUserIsRetried() {
+        engine.onReload(List.of(shop));
+        CoffeeShopRating earlier = new CoffeeShopRating(1L, 7L, 3);
+        when(ratingRepository.findByUserIdAndShopId(1L, 7L)).thenReturn(Optional.empty(), Optional.of(earlier));
+        when(ratingRepository.save(any(CoffeeShopRating.class)))
+                .thenThrow(new DataIntegrityViolationException("UK_RATING_USER_SHOP"))
+                .thenReturn(earlier);
+        when(repository.existsById(7L)).thenReturn(true);
+
+        assertThat(service.rateShop(7L, 1L, 5)).isNotEmpty();
+        // The second attempt found the vote the first one raced with and replaced it.
+        assertThat(earlier.getValue()).isEqualTo(5.0);
+        verify(ratingRepository, times(2)).save(any(CoffeeShopRating.class));
+    }
+
+    @Test
+    void voteTakesNoLockOnTheShop() {
+        engine.onReload(List.of(shop));
+        when(ratingRepository.findByUserIdAndShopId(1L, 7L)).thenReturn(Optional.empty());
+
+        assertThat(service.rateShop(7L, 1L, 5).orElseThrow().getRating()).isEqualTo(5.0);
+        InOrder order = inOrder(transactions, ratingRepository);
+        order.verify(transactions).getTransaction(any());
+        order.verify(ratingRepository).save(any(CoffeeShopRating.class));
+        order.verify(transactions).commit(any());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void shopVotesAndChangeAreDeletedInOneTransactionBeforeListenersHear() {
+        engine.onReload(List.of(shop));
+        when(repository.lockForDelete(7L)).thenReturn(Optional.of(shop));
+
+        assertThat(service.deleteShop(7L)).isTrue();
+        InOrder order = inOrder(transactions, repository, ratingRepository, changeLog, listener);
+        order.verify(transactions).getTransaction(any());
+        order.verify(repository).lockForDelete(7L);
+        order.verify(ratingRepository).deleteByShopId(7L);
+        order.verify(repository).delete(shop);
+        order.verify(changeLog).record(List.of(shop), CatalogChange.DELETE);
+        order.verify(transactions).commit(any());
+        order.verify(listener).onDeleted(shop);
+        assertThat(engine.contains(7L)).isFalse();
+
+        when(repository.lockForDelete(8L)).thenReturn(Optional.empty());
+        assertThat(service.deleteShop(8L)).isFalse();
+    }
+
+    private static CoffeeShop shop() {
+        CoffeeShop shop = new CoffeeShop("Ёлочка", "ул. Шевченко, 29", 51.1, 71.4, 0);
+        shop.setId(7L);
+        return shop;
+    }
+}
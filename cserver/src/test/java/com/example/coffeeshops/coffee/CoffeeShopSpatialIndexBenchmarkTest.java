@@ -0,0 +1,127 @@
+package com.example.coffeeshops.coffee;
+
+import com.example.coffeeshops.coffee.dto.NearbyCoffeeShop;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoffeeShopSpatialIndexBenchmarkTest {
+
+    private static final int SHOPS = 100_000;
+    private static final int QUERIES = 300;
+    private static final double RADIUS_KM = 10;
+    private static final int LIMIT = 20;
+
+    private final Random random = new Random(42);
+    private final List<CoffeeShop> shops = shops();
+    private final CoffeeShopSpatialIndex index = new CoffeeShopSpatialIndex();
+    private final double[][] queries = queries();
+
+    CoffeeShopSpatialIndexBenchmarkTest() {
+        index.onReload(shops);
+    }
+
+    @Test
+    void nearestMatchesFullScan() {
+        for (double[] q : queries) {
+            assertThat(index.nearest(q[0], q[1], RADIUS_KM, LIMIT))
+                    .extracting(NearbyCoffeeShop::getId)
+                    .containsExactlyElementsOf(fullScan(shops, q[0], q[1]));
+        }
+    }
+
+    @Test
+    void nearestMatchesFullScanNearThePolesAndAcrossTheAntimeridian() {
+        List<CoffeeShop> edges = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            double lat = i % 2 == 0 ? 89.0 + random.nextDouble() : -89.0 - random.nextDouble();
+            edges.add(shop(i + 1L, lat, random.nextDouble() * 360 - 180));
+        }
+        for (int i = 0; i < 2_000; i++) {
+            edges.add(shop(10_000L + i, random.nextDouble() * 2 - 1, 179.9 + random.nextDouble() * 0.2 - (i % 2) * 360));
+        }
+        CoffeeShopSpatialIndex edgeIndex = new CoffeeShopSpatialIndex();
+        edgeIndex.onReload(edges);
+
+        double[][] points = {{89.5, 0}, {89.99, 120}, {-89.99, -45}, {90, 0}, {-90, 180}, {0, 180}, {0.5, -179.99}, {-0.5, 179.99}};
+        for (double[] q : points) {
+            for (double radius : new double[]{RADIUS_KM, 500}) {
+                assertThat(edgeIndex.nearest(q[0], q[1], radius, LIMIT))
+                        .extracting(NearbyCoffeeShop::getId)
+                        .containsExactlyElementsOf(fullScan(edges, q[0], q[1], radius));
+            }
+        }
+        // Nothing near the poles in the main catalog: the answer is empty and the search still ends.
+        assertThat(index.nearest(89.99, 0, RADIUS_KM, LIMIT)).isEmpty();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void nearestIsFasterThanFullScan() {
+        // Warm up both paths so the JIT does not skew the first measurements.
+        for (double[] q : queries) {
+            index.nearest(q[0], q[1], RADIUS_KM, LIMIT);
+            fullScan(shops, q[0], q[1]);
+        }
+
+        long indexNanos = 0;
+        long scanNanos = 0;
+        for (double[] q : queries) {
+            long t0 = System.nanoTime();
+            index.nearest(q[0], q[1], RADIUS_KM, LIMIT);
+            long t1 = System.nanoTime();
+            fullScan(shops, q[0], q[1]);
+            long t2 = System.nanoTime();
+            indexNanos += t1 - t0;
+            scanNanos += t2 - t1;
+        }
+
+        assertThat(indexNanos).isLessThan(scanNanos);
+        // The target: sub-millisecond kNN at 100k shops.
+        assertThat(indexNanos / QUERIES).isLessThan(1_000_000L);
+    }
+
+    private List<CoffeeShop> shops() {
+        List<CoffeeShop> shops = new ArrayList<>(SHOPS);
+        for (int i = 0; i < SHOPS; i++) {
+            shops.add(shop((long) i + 1, 51.0 + random.nextDouble() * 0.3, 71.2 + random.nextDouble() * 0.4));
+        }
+        return shops;
+    }
+
+    private CoffeeShop shop(Long id, double lat, double lng) {
+        CoffeeShop shop = new CoffeeShop("Shop " + id, "Street " + id, lat, lng, random.nextDouble() * 5);
+        shop.setId(id);
+        return shop;
+    }
+
+    private double[][] queries() {
+        double[][] queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = new double[]{51.0 + random.nextDouble() * 0.3, 71.2 + random.nextDouble() * 0.4};
+        }
+        return queries;
+    }
+
+    private static List<Long> fullScan(List<CoffeeShop> shops, double lat, double lng) {
+        return fullScan(shops, lat, lng, RADIUS_KM);
+    }
+
+    private static List<Long> fullScan(List<CoffeeShop> shops, double lat, double lng, double radiusKm) {
+        List<NearbyCoffeeShop> all = new ArrayList<>();
+        for (CoffeeShop shop : shops) {
+            double d = CoffeeShopSpatialIndex.distanceKm(lat, lng, shop.getLat(), shop.getLng());
+            if (d <= radiusKm) {
+                all.add(new NearbyCoffeeShop(shop, d));
+            }
+        }
+        all.sort(Comparator.comparingDouble(NearbyCoffeeShop::getDistanceKm));
+        return all.stream().limit(LIMIT).map(NearbyCoffeeShop::getId).toList();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.coffeeshops.coffee;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RatingEngineConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int VOTES_PER_THREAD = 50_000;
+
+    @Test
+    void concurrentVotesAreNeverLost() throws Exception {
+        RatingEngine engine = new RatingEngine();
+        engine.onReload(List.of(shop(1L), shop(2L)));
+
+        // A flusher keeps draining while votes arrive, like the scheduled flush does.
+        AtomicBoolean running = new AtomicBoolean(true);
+        Map<Long, CoffeeShop> lastFlushed = new ConcurrentHashMap<>();
+        Thread flusher = new Thread(() -> {
+            while (running.get()) {
+                engine.drain().forEach(s -> lastFlushed.put(s.getId(), s));
+            }
+        });
+        flusher.start();
+
+        runVoters(() -> {
+            for (int i = 0; i < VOTES_PER_THREAD; i++) {
+                engine.rate(1L, 1 + i % 5);
+                engine.rate(2L, 5);
+            }
+        });
+
+        running.set(false);
+        flusher.join();
+        engine.drain().forEach(s -> lastFlushed.put(s.getId(), s));
+
+        long expectedCount = (long) THREADS * VOTES_PER_THREAD;
+        CoffeeShop hot = engine.get(1L).orElseThrow();
+        assertThat(hot.getRatingCount()).isEqualTo(expectedCount);
+        assertThat(hot.getRating()).isEqualTo(3.0);
+        assertThat(engine.get(2L).orElseThrow().getRating()).isEqualTo(5.0);
+
+        // The last flushed state of each shop is what ends up in the table.
+        assertThat(lastFlushed.get(1L).getRatingCount()).isEqualTo(expectedCount);
+        assertThat(lastFlushed.get(2L).getRatingCount()).isEqualTo(expectedCount);
+    }
+
+    @Test
+    void sumStaysExactAcrossManyFlushes() {
+        RatingEngine engine = new RatingEngine();
+        engine.onReload(List.of(shop(1L)));
+
+        for (int i = 0; i < 100_000; i++) {
+            engine.rate(1L, 4.7);
+            engine.drain();
+        }
+
+        // Folding 4.7 into a double sum a hundred thousand times would be off in the last digits.
+        CoffeeShop shop = engine.get(1L).orElseThrow();
+        assertThat(shop.getRatingSum()).isEqualTo(470_000.0);
+        assertThat(shop.getRating()).isEqualTo(4.7);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void hotShopOutpacesLockedReadModifyWrite() throws Exception {
+        RatingEngine engine = new RatingEngine();
+        engine.onReload(List.of(shop(1L)));
+        long engineNanos = runVoters(() -> {
+            for (int i = 0; i < VOTES_PER_THREAD; i++) {
+                engine.rate(1L, 4);
+            }
+        });
+
+        // Stand-in for the previous findById -> average -> save path, serialized on the row
+        // (which is the best case: without the lock it loses updates).
+        CoffeeShop row = shop(1L);
+        long legacyNanos = runVoters(() -> {
+            for (int i = 0; i < VOTES_PER_THREAD; i++) {
+                synchronized (row) {
+                    CoffeeShop loaded = new CoffeeShop(row.getName(), row.getAddress(), row.getLat(), row.getLng(), row.getRating());
+                    loaded.setRating((loaded.getRating() + 4) / 2.0);
+                    row.setRating(loaded.getRating());
+                }
+            }
+        });
+
+        assertThat(engine.get(1L).orElseThrow().getRatingCount()).isEqualTo((long) THREADS * VOTES_PER_THREAD);
+        assertThat(engineNanos).isLessThan(legacyNanos);
+    }
+
+    @Test
+    void shopsOfAFailedWriteAreDrainedAgain() {
+        RatingEngine engine = new RatingEngine();
+        engine.onReload(List.of(shop(1L), shop(2L)));
+        engine.rate(1L, 4);
+        engine.rate(2L, 5);
+
+        List<CoffeeShop> failed = engine.drain();
+        assertThat(failed).hasSize(2);
+        engine.retry(failed);
+
+        // No new votes: the folded totals still have to be written.
+        List<CoffeeShop> again = engine.drain();
+        assertThat(again).extracting(CoffeeShop::getId).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(again.get(0).getRatingCount()).isEqualTo(1L);
+        assertThat(engine.drain()).isEmpty();
+
+        // A vote on top of a retried shop goes out once, with both.
+        engine.retry(List.of(again.get(0)));
+        engine.rate(again.get(0).getId(), 3);
+        List<CoffeeShop> merged = engine.drain();
+        assertThat(merged).hasSize(1);
+        assertThat(merged.get(0).getRatingCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void replacedVoteMovesHistogramWithoutCountingTwice() {
+        RatingEngine engine = new RatingEngine();
+        engine.onReload(List.of(shop(1L)));
+
+        engine.rate(1L, null, 2);
+        engine.rate(1L, null, 4);
+        engine.rate(1L, 2.0, 5);
+        engine.drain();
+
+        CoffeeShop shop = engine.get(1L).orElseThrow();
+        assertThat(shop.getRatingCount()).isEqualTo(2L);
+        assertThat(shop.getRating()).isEqualTo(4.5);
+        assertThat(engine.summary(1L).orElseThrow().getDistribution())
+                .isEqualTo(Map.of(1, 0L, 2, 0L, 3, 0L, 4, 1L, 5, 1L));
+    }
+
+    private static long runVoters(Runnable voter) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    voter.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+        long elapsed = System.nanoTime() - t0;
+        pool.shutdown();
+        return elapsed;
+    }
+
+    private static CoffeeShop shop(Long id) {
+        CoffeeShop shop = new CoffeeShop("Shop " + id, "Street " + id, 51.1, 71.4, 0);
+        shop.setId(id);
+        return shop;
+    }
+}
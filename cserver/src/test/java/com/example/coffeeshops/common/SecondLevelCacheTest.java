@@ -0,0 +1,116 @@
+package com.example.coffeeshops.common;
+
+import com.example.coffeeshops.coffee.CatalogChangeLog;
+import com.example.coffeeshops.coffee.CoffeeShop;
+import com.example.coffeeshops.coffee.CoffeeShopRatingRepository;
+import com.example.coffeeshops.coffee.CoffeeShopRepository;
+import com.example.coffeeshops.coffee.CoffeeShopService;
+import com.example.coffeeshops.coffee.RatingEngine;
+import com.example.coffeeshops.user.AuthenticatedUser;
+import com.example.coffeeshops.user.User;
+import com.example.coffeeshops.user.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Every repository call runs in its own transaction and session, so repeated reads can only be
+// served by the second-level cache.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SecondLevelCacheTest {
+
+    @Autowired
+    private UserRepository users;
+    @Autowired
+    private CoffeeShopRepository shops;
+    @Autowired
+    private CoffeeShopRatingRepository ratings;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void emailLookupIsServedFromTheNaturalIdCache() {
+        Long id = users.save(new User(null, "cache-test@mail.com", "hash", "USER")).getId();
+        users.findByEmail("cache-test@mail.com");
+        Statistics statistics = statistics();
+        long statements = statistics.getPrepareStatementCount();
+        long naturalIdHits = statistics.getNaturalIdCacheHitCount();
+
+        assertThat(users.findByEmail("cache-test@mail.com").orElseThrow().getId()).isEqualTo(id);
+        assertThat(users.findIdByEmail("cache-test@mail.com")).contains(id);
+
+        assertThat(statistics.getNaturalIdCacheHitCount()).isGreaterThan(naturalIdHits);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+    }
+
+    @Test
+    void ratingFlushEvictsTheCachedShop() {
+        CoffeeShop shop = shops.save(new CoffeeShop("Кэш", "ул. Кэша, 1", 51.1, 71.4, 5.0));
+        shops.findById(shop.getId());
+        assertThat(entityManagerFactory.getCache().contains(CoffeeShop.class, shop.getId())).isTrue();
+
+        RatingEngine engine = new RatingEngine();
+        engine.onReload(List.of(shop));
+        CoffeeShopService service = new CoffeeShopService(shops, ratings, jdbcTemplate, transactionManager,
+                entityManager, null, engine, null, null, null, null, null, null, mock(CatalogChangeLog.class),
+                List.of(engine));
+        engine.rate(shop.getId(), 1.0);
+        service.flushRatings();
+
+        // The batch went around Hibernate; without the eviction this read would return the old 5.0.
+        assertThat(entityManagerFactory.getCache().contains(CoffeeShop.class, shop.getId())).isFalse();
+        CoffeeShop reloaded = shops.findById(shop.getId()).orElseThrow();
+        assertThat(reloaded.getRating()).isEqualTo(3.0);
+        assertThat(reloaded.getRatingCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void statsAreForAdminsOnly() {
+        CacheStatsController controller = new CacheStatsController(entityManagerFactory);
+
+        assertForbidden(() -> controller.stats(null));
+        assertForbidden(() -> controller.stats(new AuthenticatedUser(8L, "user@mail.com", "USER")));
+
+        Map<String, Object> stats = controller.stats(new AuthenticatedUser(7L, "admin@admin.com", "ADMIN"));
+        assertThat(stats.get("success")).isEqualTo(true);
+        assertThat(stats.get("since")).isEqualTo(statistics().getStart());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> regions = (Map<String, Object>) stats.get("regions");
+        assertThat(regions.keySet()).contains("users", "users-by-email", "coffee-shops");
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private static void assertForbidden(Runnable call) {
+        try {
+            call.run();
+        } catch (ResponseStatusException e) {
+            assertThat(e.getStatusCode().value()).isEqualTo(403);
+            return;
+        }
+        throw new AssertionError("expected 403");
+    }
+}
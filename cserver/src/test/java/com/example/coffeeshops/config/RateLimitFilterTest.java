@@ -0,0 +1,253 @@
+package com.example.coffeeshops.config;
+
+import com.example.coffeeshops.config.RateLimitFilter.Key;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+    private static final int ATTACKERS = 4;
+    private static final int LEGIT_REQUESTS = 150;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(6);
+    private final String hash = encoder.encode("secret-password");
+
+    @Test
+    void bucketRefillsAtTheConfiguredRate() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = new RateLimiter(3, Duration.ofSeconds(3), 100, now::get);
+
+        assertThat(limiter.tryAcquire("a")).isEqualTo(0L);
+        assertThat(limiter.tryAcquire("a")).isEqualTo(0L);
+        assertThat(limiter.tryAcquire("a")).isEqualTo(0L);
+        assertThat(limiter.tryAcquire("a")).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(limiter.tryAcquire("b")).isEqualTo(0L);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(limiter.tryAcquire("a")).isEqualTo(0L);
+        assertThat(limiter.tryAcquire("a") > 0).isTrue();
+    }
+
+    @Test
+    void keyTableStaysBoundedUnderKeyFlood() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = new RateLimiter(2, Duration.ofMinutes(1), 1_000, now::get);
+
+        for (int i = 0; i < 50_000; i++) {
+            limiter.tryAcquire("flood-" + i);
+        }
+        assertThat(limiter.size() <= 1_000).isTrue();
+
+        // Once the flooded buckets have refilled they are swept and new keys get their own bucket again.
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(limiter.tryAcquire("late")).isEqualTo(0L);
+        assertThat(limiter.size()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsWith429AndRetryAfterAndKeepsTheBody() throws Exception {
+        RateLimitFilter filter = loginFilter("2/1m");
+        AtomicLong passed = new AtomicLong();
+        FilterChain chain = (req, res) -> {
+            assertThat(objectMapper.readTree(req.getInputStream()).path("email").asText()).isEqualTo("victim@mail.com");
+            passed.incrementAndGet();
+        };
+
+        // Same account from different addresses is still limited by email.
+        for (int i = 0; i < 2; i++) {
+            filter.doFilter(login("10.0.0." + i, "victim@mail.com"), new MockHttpServletResponse(), chain);
+        }
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(login("10.0.0.9", "Victim@Mail.com"), rejected, chain);
+
+        assertThat(passed.get()).isEqualTo(2L);
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("30");
+    }
+
+    @Test
+    void abusiveBurstGetsNoMoreThanTheLimitWhileLegitimateLoginsAllPass() throws Exception {
+        Run run = run(loginFilter("5/1m"), true);
+
+        assertThat(run.attackerAttempts()).isGreaterThan(5L);
+        assertThat(run.attackerPassed()).isLessThanOrEqualTo(5L);
+        assertThat(run.legitimateRejected()).isEqualTo(0L);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void legitimateLoginLatencyStaysFlatUnderAbusiveBurst() throws Exception {
+        long[] baseline = run(loginFilter("5/1m"), false).latencies();
+        long[] limited = run(loginFilter("5/1m"), true).latencies();
+        long[] unlimited = run(loginFilter("1000000/1s"), true).latencies();
+
+        assertThat(ms(limited, 50)).isLessThan(ms(baseline, 50) * 2 + 1);
+        assertThat(ms(limited, 50)).isLessThan(ms(unlimited, 50));
+    }
+
+    @Test
+    void peekedBodyIsReplayedToANonBlockingReader() throws Exception {
+        RateLimitFilter filter = loginFilter("5/1m");
+        byte[] content = loginBody("async@mail.com");
+        ReadListener[] containerListener = new ReadListener[1];
+        // What the container hands out in async mode: a stream that accepts a listener.
+        MockHttpServletRequest asyncRequest = new MockHttpServletRequest("POST", "/api/auth/login") {
+            @Override
+            public ServletInputStream getInputStream() {
+                ByteArrayInputStream in = new ByteArrayInputStream(content);
+                return new ServletInputStream() {
+                    @Override
+                    public int read() {
+                        return in.read();
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return in.available() == 0;
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener listener) {
+                        containerListener[0] = listener;
+                    }
+                };
+            }
+        };
+        asyncRequest.setRemoteAddr("10.0.0.1");
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        AtomicBoolean allRead = new AtomicBoolean();
+        filter.doFilter(asyncRequest, new MockHttpServletResponse(), (req, res) -> {
+            ServletInputStream in = req.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    while (in.isReady() && !in.isFinished()) {
+                        int b = in.read();
+                        if (b >= 0) {
+                            received.write(b);
+                        }
+                    }
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    allRead.set(true);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    throw new AssertionError(t);
+                }
+            });
+        });
+
+        // The filter already drained the container's stream, so the container reports end of body.
+        assertThat(containerListener[0]).isNotNull();
+        containerListener[0].onAllDataRead();
+        assertThat(allRead.get()).isTrue();
+        assertThat(received.toString(StandardCharsets.UTF_8)).isEqualTo(new String(content, StandardCharsets.UTF_8));
+    }
+
+    // Every legitimate user logs in once from their own address while attackers hammer one account.
+    private Run run(RateLimitFilter filter, boolean underAttack) throws Exception {
+        FilterChain checkPassword = (req, res) -> encoder.matches("secret-password", hash);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong attackerAttempts = new AtomicLong();
+        AtomicLong attackerPassed = new AtomicLong();
+        Thread[] attackers = new Thread[underAttack ? ATTACKERS : 0];
+        for (int t = 0; t < attackers.length; t++) {
+            attackers[t] = new Thread(() -> {
+                while (running.get()) {
+                    // Bursts of 20 every 20 ms per thread: roughly 4k requests/s in total.
+                    for (int i = 0; i < 20; i++) {
+                        MockHttpServletResponse response = new MockHttpServletResponse();
+                        try {
+                            filter.doFilter(login("203.0.113.7", "admin@admin.com"), response, checkPassword);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                        attackerAttempts.incrementAndGet();
+                        if (response.getStatus() != 429) {
+                            attackerPassed.incrementAndGet();
+                        }
+                    }
+                    LockSupport.parkNanos(20_000_000);
+                }
+            });
+            attackers[t].start();
+        }
+
+        long[] latencies = new long[LEGIT_REQUESTS];
+        long legitimateRejected = 0;
+        try {
+            Thread.sleep(underAttack ? 200 : 0);
+            for (int i = 0; i < LEGIT_REQUESTS; i++) {
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                long t0 = System.nanoTime();
+                filter.doFilter(login("198.51.100." + (i % 250), "user" + i + "@mail.com"), response, checkPassword);
+                latencies[i] = System.nanoTime() - t0;
+                if (response.getStatus() != 200) {
+                    legitimateRejected++;
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread attacker : attackers) {
+                attacker.join();
+            }
+        }
+        Arrays.sort(latencies);
+        return new Run(latencies, attackerAttempts.get(), attackerPassed.get(), legitimateRejected);
+    }
+
+    private record Run(long[] latencies, long attackerAttempts, long attackerPassed, long legitimateRejected) {}
+
+    private RateLimitFilter loginFilter(String limit) {
+        return new RateLimitFilter(List.of(new RateLimitFilter.Rule("POST", "/api/auth/login",
+                RateLimiter.parse(limit, 10_000), List.of(Key.IP, Key.EMAIL))), objectMapper);
+    }
+
+    private static MockHttpServletRequest login(String ip, String email) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setRemoteAddr(ip);
+        request.setContentType("application/json");
+        request.setContent(loginBody(email));
+        return request;
+    }
+
+    private static byte[] loginBody(String email) {
+        return ("{\"email\":\"" + email + "\",\"password\":\"guess\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double ms(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1e6;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.coffeeshops.user;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvatarControllerTest {
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesTheFileWithLongLivedCacheHeaders() throws Exception {
+        AvatarStore store = new AvatarStore(dir.toString(), 1_000_000, 2);
+        String hash = store.store(new ByteArrayInputStream(AvatarStoreTest.png(300, 300)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new AvatarController(store).avatar(hash, 64, null, new MockHttpServletRequest(), response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getHeader("ETag")).isEqualTo("\"" + hash + "-64\"");
+        assertThat(response.getHeader("Cache-Control")).isEqualTo(IMMUTABLE);
+        assertThat(response.getContentAsByteArray())
+                .isEqualTo(Files.readAllBytes(store.find(hash, 64).orElseThrow().path()));
+    }
+
+    @Test
+    void matchingETagIsAnsweredWithNotModified() throws Exception {
+        AvatarStore store = new AvatarStore(dir.toString(), 1_000_000, 2);
+        String hash = store.store(new ByteArrayInputStream(AvatarStoreTest.png(300, 300)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new AvatarController(store).avatar(hash, null, "\"" + hash + "\"", new MockHttpServletRequest(), response);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeader("Cache-Control")).isEqualTo(IMMUTABLE);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void badHashesAndSizesAreRejected() {
+        AvatarController controller = new AvatarController(new AvatarStore(dir.toString(), 1_000_000, 2));
+
+        assertStatus(controller, "not-a-hash", null, 404);
+        assertStatus(controller, "a".repeat(64), null, 404);
+        assertStatus(controller, "a".repeat(64), 100, 400);
+    }
+
+    private static void assertStatus(AvatarController controller, String hash, Integer size, int status) {
+        try {
+            controller.avatar(hash, size, null, new MockHttpServletRequest(), new MockHttpServletResponse());
+        } catch (ResponseStatusException e) {
+            assertThat(e.getStatusCode().value()).isEqualTo(status);
+            return;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        throw new AssertionError("expected " + status);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.coffeeshops.user;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvatarStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void identicalUploadReusesTheStoredFiles() throws Exception {
+        AvatarStore store = new AvatarStore(dir.toString(), 1_000_000, 2);
+        byte[] png = png(300, 200);
+
+        String hash = store.store(new ByteArrayInputStream(png));
+        Path original = store.find(hash, null).orElseThrow().path();
+        long written = Files.getLastModifiedTime(original).toMillis();
+        assertThat(store.store(new ByteArrayInputStream(png))).isEqualTo(hash);
+
+        assertThat(hash).matches("[0-9a-f]{64}");
+        assertThat(Files.readAllBytes(original)).isEqualTo(png);
+        assertThat(Files.getLastModifiedTime(original).toMillis()).isEqualTo(written);
+        // The original and one thumbnail per size, no leftover temp files.
+        assertThat(files()).containsExactlyInAnyOrder(
+                hash.substring(0, 2) + "/" + hash + ".png",
+                hash.substring(0, 2) + "/" + hash + "-64.png",
+                hash.substring(0, 2) + "/" + hash + "-256.png");
+    }
+
+    @Test
+    void nonImagesAndOversizeUploadsAreRejected() throws Exception {
+        AvatarStore store = new AvatarStore(dir.toString(), 10_000, 2);
+
+        assertStatus(() -> store.store(new ByteArrayInputStream("<svg/>".getBytes())), 400);
+        assertStatus(() -> store.store(new ByteArrayInputStream(new byte[10_001])), 413);
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void thumbnailsAreCenterSquaresNeverScaledUp() throws Exception {
+        AvatarStore store = new AvatarStore(dir.toString(), 10_000_000, 2);
+
+        // Wide enough to be decoded subsampled; the side bands fall outside the center square.
+        String large = store.store(new ByteArrayInputStream(png(3000, 1800)));
+        for (int size : AvatarStore.THUMBNAIL_SIZES) {
+            BufferedImage thumbnail = ImageIO.read(store.find(large, size).orElseThrow().path().toFile());
+            assertThat(thumbnail.getWidth()).isEqualTo(size);
+            assertThat(thumbnail.getHeight()).isEqualTo(size);
+            assertThat(new Color(thumbnail.getRGB(0, 0))).isEqualTo(Color.BLUE);
+            assertThat(new Color(thumbnail.getRGB(size - 1, size / 2))).isEqualTo(Color.BLUE);
+        }
+
+        String small = store.store(new ByteArrayInputStream(png(100, 40)));
+        BufferedImage thumbnail = ImageIO.read(store.find(small, 256).orElseThrow().path().toFile());
+        assertThat(thumbnail.getWidth()).isEqualTo(40);
+        assertThat(thumbnail.getHeight()).isEqualTo(40);
+    }
+
+    @Test
+    void malformedHashesAreNotLookedUp() {
+        AvatarStore store = new AvatarStore(dir.toString(), 10_000, 2);
+
+        assertThat(store.find("../../etc/passwd", null)).isEmpty();
+        assertThat(store.find("A".repeat(64), null)).isEmpty();
+        assertThat(store.find("a".repeat(63), 64)).isEmpty();
+        assertThat(store.find("a".repeat(64), null)).isEmpty();
+    }
+
+    // Blue with red side bands: a centered square crop contains only blue.
+    static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        int band = (width - Math.min(width, height)) / 2;
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(band, 0, width - 2 * band, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).map(path -> dir.relativize(path).toString()).toList();
+        }
+    }
+
+    private interface Upload {
+        void run() throws Exception;
+    }
+
+    private static void assertStatus(Upload upload, int status) throws Exception {
+        try {
+            upload.run();
+        } catch (ResponseStatusException e) {
+            assertThat(e.getStatusCode().value()).isEqualTo(status);
+            return;
+        }
+        throw new AssertionError("expected " + status);
+    }
+}
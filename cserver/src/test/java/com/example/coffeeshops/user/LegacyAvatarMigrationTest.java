@@ -0,0 +1,90 @@
+package com.example.coffeeshops.user;
+
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+class LegacyAvatarMigrationTest {
+
+    private static final String PNG = "data:image/png;base64," + Base64.getEncoder().encodeToString(new byte[]{1, 2, 3});
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final AvatarStore store = mock(AvatarStore.class);
+    private final EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+    private final LegacyAvatarMigration migration = new LegacyAvatarMigration(jdbc, store, entityManagerFactory);
+
+    LegacyAvatarMigrationTest() {
+        when(entityManagerFactory.getCache()).thenReturn(mock(Cache.class));
+        when(jdbc.queryForObject(anyString(), eq(Integer.class))).thenReturn(1);
+    }
+
+    @Test
+    void dropsTheColumnOnceEveryAvatarIsMovedOrUnreadable() throws Exception {
+        avatars(1L, PNG, 2L, "%%% not base64 %%%", 3L, PNG);
+        when(store.store(any()))
+                .thenReturn("a".repeat(64))
+                .thenThrow(new ResponseStatusException(BAD_REQUEST, "Файл не является изображением"));
+
+        migration.migrate();
+
+        verify(jdbc).update("UPDATE users SET avatar_hash = ?, avatar = NULL WHERE id = ?", "a".repeat(64), 1L);
+        verify(jdbc).update("UPDATE users SET avatar = NULL WHERE id = ?", 2L);
+        verify(jdbc).update("UPDATE users SET avatar = NULL WHERE id = ?", 3L);
+        verify(jdbc).execute("ALTER TABLE users DROP COLUMN avatar");
+        // The corrupt blob never reached the store.
+        verify(store, times(2)).store(any());
+    }
+
+    @Test
+    void keepsTheColumnWhenTheStoreFails() throws Exception {
+        avatars(1L, PNG, 2L, PNG);
+        when(store.store(any()))
+                .thenThrow(new IOException("No space left on device"))
+                .thenReturn("b".repeat(64));
+
+        migration.migrate();
+
+        // The failed avatar stays in its row for the next start; the other one is moved.
+        verify(jdbc, never()).update("UPDATE users SET avatar = NULL WHERE id = ?", 1L);
+        verify(jdbc).update("UPDATE users SET avatar_hash = ?, avatar = NULL WHERE id = ?", "b".repeat(64), 2L);
+        verify(jdbc, never()).execute("ALTER TABLE users DROP COLUMN avatar");
+    }
+
+    @Test
+    void doesNothingOnceTheColumnIsGone() {
+        when(jdbc.queryForObject(anyString(), eq(Integer.class))).thenReturn(0);
+
+        migration.migrate();
+
+        verify(jdbc, never()).queryForList(anyString(), eq(Long.class));
+        verify(jdbc, never()).execute(anyString());
+    }
+
+    // Alternating user id and stored avatar.
+    private void avatars(Object... rows) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < rows.length; i += 2) {
+            Long id = (Long) rows[i];
+            ids.add(id);
+            when(jdbc.queryForObject("SELECT avatar FROM users WHERE id = ?", String.class, id)).thenReturn((String) rows[i + 1]);
+        }
+        when(jdbc.queryForList("SELECT id FROM users WHERE avatar IS NOT NULL", Long.class)).thenReturn(ids);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.coffeeshops.user;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenServiceBenchmarkTest {
+
+    private static final int USERS = 1_000;
+    private static final int REQUESTS = 200_000;
+
+    @Test
+    void verifiesTokensAndRejectsTamperedOrRevokedOnes() {
+        TokenService tokens = new TokenService(null, "test-secret", 1);
+        User admin = new User(7L, "admin@admin.com", "hash", "ADMIN");
+        String token = tokens.issue(admin);
+
+        Optional<AuthenticatedUser> verified = tokens.verify(token);
+        assertThat(verified.isPresent()).isTrue();
+        assertThat(verified.get().id()).isEqualTo(7L);
+        assertThat(verified.get().isAdmin()).isTrue();
+
+        // A user's signature glued to a payload that claims ADMIN.
+        String userToken = tokens.issue(new User(8L, "user@mail.com", "hash", "USER"));
+        String claim = "8:ADMIN:" + System.currentTimeMillis() + ":user@mail.com";
+        String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(claim.getBytes(StandardCharsets.UTF_8))
+                + userToken.substring(userToken.indexOf('.'));
+        assertThat(tokens.verify(forged).isPresent()).isFalse();
+        assertThat(tokens.verify("garbage").isPresent()).isFalse();
+        assertThat(new TokenService(null, "other-secret", 1).verify(token).isPresent()).isFalse();
+
+        tokens.revokeAll(admin);
+        assertThat(tokens.verify(token).isPresent()).isFalse();
+        assertThat(tokens.verify(tokens.issue(admin)).isPresent()).isTrue();
+    }
+
+    @Test
+    void revocationCoversTokensIssuedInTheSameMillisecond() {
+        TokenService tokens = new TokenService(null, "test-secret", 1);
+        User user = new User(8L, "user@mail.com", "hash", "USER");
+        // No sleeps: issue, revoke and re-issue all land in one millisecond more often than not.
+        for (int i = 0; i < 1_000; i++) {
+            String before = tokens.issue(user);
+            tokens.revokeAll(user);
+            String after = tokens.issue(user);
+            assertThat(tokens.verify(before).isPresent()).isFalse();
+            assertThat(tokens.verify(after).isPresent()).isTrue();
+        }
+    }
+
+    // Admin/rate authorization before (user row looked up by the email parameter) and after (token in memory).
+    @Test
+    @Tag("benchmark")
+    void tokenCheckIsFasterThanUserLookupPerRequest() throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:token-bench;DB_CLOSE_DELAY=-1", "sa", "")) {
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, email VARCHAR(255) UNIQUE NOT NULL,"
+                        + " password VARCHAR(255) NOT NULL, role VARCHAR(255) NOT NULL, avatar CLOB)");
+            }
+            String avatar = "A".repeat(64 * 1024);
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO users VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < USERS; i++) {
+                    insert.setLong(1, i);
+                    insert.setString(2, "user" + i + "@mail.com");
+                    insert.setString(3, "$2a$10$hash");
+                    insert.setString(4, i == 0 ? "ADMIN" : "USER");
+                    insert.setString(5, avatar);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            long lookups = 0;
+            long t0 = System.nanoTime();
+            try (PreparedStatement select = connection.prepareStatement("SELECT * FROM users WHERE email = ?")) {
+                for (int i = 0; i < REQUESTS / 10; i++) {
+                    select.setString(1, "user" + (i % USERS) + "@mail.com");
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (rs.next() && rs.getString("role") != null && rs.getString("avatar") != null) {
+                            lookups++;
+                        }
+                    }
+                }
+            }
+            double lookupsPerSecond = lookups / ((System.nanoTime() - t0) / 1e9);
+
+            TokenService tokens = new TokenService(null, "bench-secret", 1);
+            String[] issued = new String[USERS];
+            for (int i = 0; i < USERS; i++) {
+                issued[i] = tokens.issue(new User((long) i, "user" + i + "@mail.com", "hash", i == 0 ? "ADMIN" : "USER"));
+            }
+            long verified = 0;
+            t0 = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i++) {
+                if (tokens.verify(issued[i % USERS]).isPresent()) {
+                    verified++;
+                }
+            }
+            double verificationsPerSecond = verified / ((System.nanoTime() - t0) / 1e9);
+
+            assertThat(verified).isEqualTo((long) REQUESTS);
+            assertThat(verificationsPerSecond).isGreaterThan(lookupsPerSecond);
+        }
+    }
+}